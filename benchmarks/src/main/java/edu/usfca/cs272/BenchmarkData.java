@@ -0,0 +1,161 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the inputs of the benchmarks from a fixed seed, so every run measures
+ * the same text. Words are built from syllables and common suffixes, so stemming has
+ * real work to do, and are drawn with a skew towards the first words of the
+ * vocabulary, like the words of natural text.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class BenchmarkData {
+	/** The seed of every generated input */
+	public static final long SEED = 272;
+
+	/** Number of distinct words that text is drawn from */
+	public static final int VOCABULARY_SIZE = 20000;
+
+	/** Syllables that words are built from */
+	private static final String[] SYLLABLES = {
+		"ra", "ten", "lo", "qui", "ver", "sto", "pa", "ca", "mi", "der",
+		"on", "bel", "tu", "gra", "fen", "al", "mor", "si", "ko", "ple"
+	};
+
+	/** Suffixes that the stemmer removes */
+	private static final String[] SUFFIXES = {
+		"", "", "", "s", "ing", "ed", "ly", "ment", "tion", "ness", "er", "able"
+	};
+
+	/** The words, most common first */
+	private final String[] vocabulary;
+
+	/** The generator of every choice */
+	private final Random random;
+
+	/**
+	 * Constructs a generator with the default seed
+	 */
+	public BenchmarkData() {
+		this(SEED);
+	}
+
+	/**
+	 * Constructs a generator
+	 * @param seed The seed of the generated inputs
+	 */
+	public BenchmarkData(long seed) {
+		this.random = new Random(seed);
+		this.vocabulary = new String[VOCABULARY_SIZE];
+
+		for (int i = 0; i < VOCABULARY_SIZE; i++) {
+			StringBuilder word = new StringBuilder();
+			int syllables = 1 + this.random.nextInt(4);
+			for (int j = 0; j < syllables; j++) {
+				word.append(SYLLABLES[this.random.nextInt(SYLLABLES.length)]);
+			}
+
+			word.append(SUFFIXES[this.random.nextInt(SUFFIXES.length)]);
+			this.vocabulary[i] = word.toString();
+		}
+	}
+
+	/**
+	 * Returns a word, most often one of the first words of the vocabulary
+	 * @return The word
+	 */
+	public String word() {
+		double skewed = Math.pow(this.random.nextDouble(), 3);
+		return this.vocabulary[(int) (skewed * VOCABULARY_SIZE)];
+	}
+
+	/**
+	 * Returns plain text with capitals, punctuation, and digits for the cleaner to remove
+	 * @param words The number of words
+	 * @return The text
+	 */
+	public String text(int words) {
+		StringBuilder text = new StringBuilder(words * 8);
+		for (int i = 0; i < words; i++) {
+			String word = word();
+			if (i % 12 == 0) {
+				text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+			} else {
+				text.append(word);
+			}
+
+			text.append(switch (i % 20) {
+				case 7 -> ", ";
+				case 13 -> " 42 ";
+				case 19 -> ".\n";
+				default -> " ";
+			});
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Returns the words of a document, already cleaned and stemmed
+	 * @param words The number of words
+	 * @return The stems
+	 */
+	public List<String> stems(int words) {
+		return FileStemmer.listStems(text(words));
+	}
+
+	/**
+	 * Returns an HTML page with a head, comments, entities, block elements to strip,
+	 * and a relative link in every paragraph
+	 * @param words The number of words of visible text
+	 * @return The HTML
+	 */
+	public String html(int words) {
+		StringBuilder html = new StringBuilder(words * 12);
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n<title>").append(word()).append("</title>\n");
+		html.append("<style>\nbody { font-family: sans-serif; }\n</style>\n");
+		html.append("<script>\nconsole.log(\"<a href='script.html'>\");\n</script>\n</head>\n<body>\n");
+
+		for (int i = 0; i < words; i += 40) {
+			html.append("<!-- paragraph ").append(i).append(" -->\n<p>");
+			for (int j = i; j < Math.min(words, i + 40); j++) {
+				if (j == i + 20) {
+					html.append("<a href=\"page/").append(j).append(".html#top\">").append(word()).append("</a> ");
+				} else {
+					html.append(word()).append(j % 17 == 0 ? " &amp; " : " ");
+				}
+			}
+
+			html.append("</p>\n");
+		}
+
+		html.append("</body>\n</html>\n");
+		return html.toString();
+	}
+
+	/**
+	 * Returns queries of one to three words
+	 * @param count The number of queries
+	 * @param partial Whether to shorten the words to prefixes for partial search
+	 * @return The queries
+	 */
+	public List<String> queries(int count, boolean partial) {
+		List<String> queries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder query = new StringBuilder();
+			int words = 1 + this.random.nextInt(3);
+			for (int j = 0; j < words; j++) {
+				String word = word();
+				query.append(j > 0 ? " " : "").append(partial ? word.substring(0, Math.min(word.length(), 3)) : word);
+			}
+
+			queries.add(query.toString());
+		}
+
+		return queries;
+	}
+}
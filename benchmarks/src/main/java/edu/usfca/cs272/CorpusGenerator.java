@@ -0,0 +1,372 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Generates text corpora and query files that can be shared instead of real data.
+ * The same settings and seed always generate the same files.
+ *
+ * <p>Word frequencies follow Zipf's law: the word of rank {@code k} is drawn with
+ * probability proportional to {@code 1 / k^s}. Word lengths follow a log-normal
+ * distribution close to that of English dictionary words, some words end with common
+ * suffixes for the stemmer to remove, and the most frequent words are the shortest,
+ * as in natural text. The number of words per file follows a configurable
+ * distribution, and the text has capitals, punctuation, and line breaks for the
+ * cleaner to handle.</p>
+ *
+ * <p>Queries have one to three words drawn from the same distribution. A percentage
+ * of the words are shortened to prefixes, so the same file exercises both exact and
+ * partial search.</p>
+ *
+ * <pre>
+ * java edu.usfca.cs272.CorpusGenerator -output corpus -files 1000 -words 1000 -sizes lognormal -queries queries.txt
+ * </pre>
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class CorpusGenerator {
+	/** {@code -output} flag. Next argument is the directory to write the corpus to. */
+	public static final String OUTPUT = "-output";
+
+	/** Directory to use if no value after the {@code -output} flag was provided */
+	public static final Path DEFAULT_OUTPUT = Path.of("corpus");
+
+	/** {@code -files} flag. Next argument is the number of text files. */
+	public static final String FILES = "-files";
+
+	/** Number of text files if no value after the {@code -files} flag was provided */
+	public static final int DEFAULT_FILES = 1000;
+
+	/** {@code -words} flag. Next argument is the mean number of words per file. */
+	public static final String WORDS = "-words";
+
+	/** Mean number of words per file if no value after the {@code -words} flag was provided */
+	public static final int DEFAULT_WORDS = 1000;
+
+	/** {@code -sizes} flag. Next argument is the distribution of the number of words per file. */
+	public static final String SIZES = "-sizes";
+
+	/** {@code -vocabulary} flag. Next argument is the number of distinct words. */
+	public static final String VOCABULARY = "-vocabulary";
+
+	/** Number of distinct words if no value after the {@code -vocabulary} flag was provided */
+	public static final int DEFAULT_VOCABULARY = 50000;
+
+	/** {@code -zipf} flag. Next argument is the exponent of Zipf's law, such as {@code 1.0}. */
+	public static final String ZIPF = "-zipf";
+
+	/** Exponent of Zipf's law if no value after the {@code -zipf} flag was provided */
+	public static final double DEFAULT_ZIPF = 1.0;
+
+	/** {@code -seed} flag. Next argument is the seed of every random choice. */
+	public static final String SEED = "-seed";
+
+	/** Seed to use if no value after the {@code -seed} flag was provided */
+	public static final int DEFAULT_SEED = 272;
+
+	/** {@code -queries} flag. Next argument is the query file to write. */
+	public static final String QUERIES = "-queries";
+
+	/** Query file to write if no value after the {@code -queries} flag was provided */
+	public static final Path DEFAULT_QUERIES = Path.of("queries.txt");
+
+	/** {@code -querycount} flag. Next argument is the number of queries. */
+	public static final String QUERY_COUNT = "-querycount";
+
+	/** Number of queries if no value after the {@code -querycount} flag was provided */
+	public static final int DEFAULT_QUERY_COUNT = 1000;
+
+	/** {@code -prefixes} flag. Next argument is the percentage of query words shortened to prefixes. */
+	public static final String PREFIXES = "-prefixes";
+
+	/** Percentage of query words shortened to prefixes if no value after the {@code -prefixes} flag was provided */
+	public static final int DEFAULT_PREFIXES = 30;
+
+	/** Number of files in each subdirectory of the corpus */
+	private static final int FILES_PER_DIRECTORY = 100;
+
+	/** Consonants, repeated by how often they appear in English */
+	private static final String CONSONANTS = "tttttttttnnnnnnnsssssshhhhhhrrrrrrdddddlllllccccmmmwwffggyyppbbvkjxqz";
+
+	/** Vowels, repeated by how often they appear in English */
+	private static final String VOWELS = "eeeeeeeeeeeeaaaaaaaaooooooooiiiiiiiuuuy";
+
+	/** Suffixes the stemmer removes */
+	private static final String[] SUFFIXES = {"s", "es", "ed", "ing", "ly", "er", "tion", "ment", "ness", "able"};
+
+	/** Distributions of the number of words per file */
+	public enum Sizes {
+		/** Every file has the mean number of words */
+		FIXED,
+
+		/** Files have from half to one and a half times the mean */
+		UNIFORM,
+
+		/** Most files are near the median with a moderate tail of long files */
+		LOGNORMAL,
+
+		/** A few files are much longer than the rest */
+		PARETO;
+
+		/**
+		 * Returns the distribution with the given name, ignoring case
+		 * @param name The name of the distribution, such as {@code pareto}
+		 * @param backup The distribution to return if {@code name} is {@code null}
+		 * @return The distribution with the given name, or {@code backup} if {@code name} is {@code null}
+		 * @throws IllegalArgumentException If there is no distribution with the given name
+		 */
+		public static Sizes of(String name, Sizes backup) {
+			return name == null ? backup : valueOf(name.strip().toUpperCase());
+		}
+	}
+
+	/** The words, most frequent first */
+	private final String[] vocabulary;
+
+	/** The cumulative probability of the words up to each rank */
+	private final double[] cumulative;
+
+	/** The seed of the generator */
+	private final long seed;
+
+	/**
+	 * Constructs a generator and its vocabulary
+	 * @param seed The seed of every random choice
+	 * @param vocabularySize The number of distinct words
+	 * @param exponent The exponent of Zipf's law
+	 */
+	public CorpusGenerator(long seed, int vocabularySize, double exponent) {
+		this.seed = seed;
+		Random random = new Random(seed);
+
+		// Longer words are rarer, so the words are ranked by length with a little noise
+		LinkedHashSet<String> words = new LinkedHashSet<>();
+		while (words.size() < vocabularySize) {
+			words.add(newWord(random));
+		}
+
+		double[] noise = random.doubles(vocabularySize).toArray();
+		String[] unranked = words.toArray(String[]::new);
+		Integer[] order = new Integer[vocabularySize];
+		Arrays.setAll(order, i -> i);
+		Arrays.sort(order, Comparator.comparingDouble(i -> unranked[i].length() + 4 * noise[i]));
+
+		this.vocabulary = new String[vocabularySize];
+		this.cumulative = new double[vocabularySize];
+		double total = 0;
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			this.vocabulary[rank] = unranked[order[rank]];
+			total += 1 / Math.pow(rank + 1, exponent);
+			this.cumulative[rank] = total;
+		}
+
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			this.cumulative[rank] /= total;
+		}
+	}
+
+	/**
+	 * Builds a pronounceable word with a log-normal length, sometimes with a suffix
+	 * @param random The generator of every choice
+	 * @return The word
+	 */
+	private static String newWord(Random random) {
+		int length = Math.clamp(Math.round(Math.exp(Math.log(6) + 0.4 * random.nextGaussian())), 2, 20);
+		StringBuilder word = new StringBuilder(length + 4);
+		boolean vowel = random.nextInt(3) == 0;
+
+		while (word.length() < length) {
+			String letters = vowel ? VOWELS : CONSONANTS;
+			word.append(letters.charAt(random.nextInt(letters.length())));
+
+			// Consonants sometimes come in pairs
+			if (vowel || random.nextInt(4) != 0) {
+				vowel = !vowel;
+			}
+		}
+
+		if (length > 3 && random.nextInt(10) < 3) {
+			word.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+		}
+
+		return word.toString();
+	}
+
+	/**
+	 * Returns a word drawn by Zipf's law
+	 * @param random The generator of every choice
+	 * @return The word
+	 */
+	public String word(Random random) {
+		int rank = Arrays.binarySearch(this.cumulative, random.nextDouble());
+		rank = rank < 0 ? -rank - 1 : rank;
+		return this.vocabulary[Math.min(rank, this.vocabulary.length - 1)];
+	}
+
+	/**
+	 * Returns the number of words of a file
+	 * @param random The generator of every choice
+	 * @param sizes The distribution of the number of words
+	 * @param mean The mean number of words
+	 * @return The number of words, at least 1
+	 */
+	public static int fileWords(Random random, Sizes sizes, int mean) {
+		double words = switch (sizes) {
+			case FIXED -> mean;
+			case UNIFORM -> mean * (0.5 + random.nextDouble());
+			case LOGNORMAL -> mean * Math.exp(random.nextGaussian() - 0.5);
+			case PARETO -> Math.min(100.0 * mean, mean / 3.0 / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+		};
+
+		return (int) Math.max(1, Math.round(words));
+	}
+
+	/**
+	 * Writes text with sentences of capitalized and punctuated words
+	 * @param random The generator of every choice
+	 * @param words The number of words
+	 * @param writer The writer to use
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeText(Random random, int words, BufferedWriter writer) throws IOException {
+		int sentence = 0;
+		for (int i = 0; i < words; i++) {
+			String word = word(random);
+			if (sentence == 0) {
+				writer.write(Character.toUpperCase(word.charAt(0)));
+				writer.write(word, 1, word.length() - 1);
+				sentence = 5 + random.nextInt(15);
+			} else {
+				writer.write(word);
+			}
+
+			sentence--;
+			if (i == words - 1 || sentence == 0) {
+				writer.write(random.nextInt(4) == 0 ? ".\n" : ". ");
+			} else if (random.nextInt(12) == 0) {
+				writer.write(", ");
+			} else {
+				writer.write(' ');
+			}
+		}
+	}
+
+	/**
+	 * Writes a corpus of text files in subdirectories of {@value #FILES_PER_DIRECTORY} files
+	 * @param directory The directory to write the corpus to
+	 * @param files The number of files
+	 * @param meanWords The mean number of words per file
+	 * @param sizes The distribution of the number of words per file
+	 * @return The total number of words written
+	 * @throws IOException If an IO error occurs
+	 */
+	public long writeCorpus(Path directory, int files, int meanWords, Sizes sizes) throws IOException {
+		Random random = new Random(this.seed + 1);
+		long total = 0;
+
+		for (int i = 0; i < files; i++) {
+			Path subdirectory = directory.resolve(String.format("d%04d", i / FILES_PER_DIRECTORY));
+			Files.createDirectories(subdirectory);
+
+			int words = fileWords(random, sizes, meanWords);
+			try (BufferedWriter writer = Files.newBufferedWriter(subdirectory.resolve(String.format("f%06d.txt", i)), UTF_8)) {
+				writeText(random, words, writer);
+			}
+
+			total += words;
+		}
+
+		return total;
+	}
+
+	/**
+	 * Writes a query file with one query of one to three words per line
+	 * @param path The query file to write
+	 * @param count The number of queries
+	 * @param prefixPercent The percentage of words shortened to a prefix of at least 3 letters
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeQueries(Path path, int count, int prefixPercent) throws IOException {
+		Random random = new Random(this.seed + 2);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			for (int i = 0; i < count; i++) {
+				int words = 1 + random.nextInt(3);
+				for (int j = 0; j < words; j++) {
+					String word = word(random);
+					if (word.length() > 3 && random.nextInt(100) < prefixPercent) {
+						word = word.substring(0, 3 + random.nextInt(word.length() - 3));
+					}
+
+					if (j > 0) {
+						writer.write(' ');
+					}
+
+					writer.write(random.nextInt(10) == 0 ? word.toUpperCase() : word);
+				}
+
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Generates a corpus and optionally a query file with the settings in the command-line arguments
+	 * @param args flag/value pairs used to start the generator
+	 */
+	public static void main(String[] args) {
+		ArgumentParser argParser = new ArgumentParser(args);
+
+		Sizes sizes;
+		double exponent;
+		try {
+			sizes = Sizes.of(argParser.getString(SIZES), Sizes.LOGNORMAL);
+			exponent = Double.parseDouble(argParser.getString(ZIPF, String.valueOf(DEFAULT_ZIPF)));
+		} catch (IllegalArgumentException e) {
+			System.err.printf("Invalid -sizes or -zipf value: %s\n", e.getMessage());
+			return;
+		}
+
+		CorpusGenerator generator = new CorpusGenerator(
+			argParser.getInteger(SEED, DEFAULT_SEED),
+			Math.max(1, argParser.getInteger(VOCABULARY, DEFAULT_VOCABULARY)),
+			exponent
+		);
+
+		Path output = argParser.getPath(OUTPUT, DEFAULT_OUTPUT);
+		try {
+			long words = generator.writeCorpus(
+				output,
+				Math.max(0, argParser.getInteger(FILES, DEFAULT_FILES)),
+				Math.max(1, argParser.getInteger(WORDS, DEFAULT_WORDS)),
+				sizes
+			);
+			System.out.printf("Wrote %d words to %s\n", words, output);
+		} catch (IOException e) {
+			System.err.printf("Unable to write the corpus to: %s\n", output);
+			return;
+		}
+
+		if (argParser.hasFlag(QUERIES)) {
+			Path queries = argParser.getPath(QUERIES, DEFAULT_QUERIES);
+			try {
+				generator.writeQueries(
+					queries,
+					Math.max(0, argParser.getInteger(QUERY_COUNT, DEFAULT_QUERY_COUNT)),
+					Math.clamp(argParser.getInteger(PREFIXES, DEFAULT_PREFIXES), 0, 100)
+				);
+			} catch (IOException e) {
+				System.err.printf("Unable to write the queries to: %s\n", queries);
+			}
+		}
+	}
+}
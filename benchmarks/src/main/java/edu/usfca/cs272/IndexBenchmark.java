@@ -0,0 +1,185 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of building the inverted index: adding every word position with
+ * {@link InvertedIndex#addWordPosition(String, String, int)}, merging one small index
+ * per document with {@link InvertedIndex#addAll(InvertedIndex)}, and indexing text
+ * files with a work queue of each number of threads.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IndexBenchmark {
+	/** Number of words in each document */
+	public static final int DOCUMENT_WORDS = 1000;
+
+	/** Number of documents */
+	@Param({"100", "1000"})
+	public int documents;
+
+	/** The stems of each document */
+	private List<List<String>> stems;
+
+	/** The directory of the text files */
+	private Path directory;
+
+	/** The text files, one per document */
+	private List<Path> files;
+
+	/** The work queue used by parallel indexing */
+	@State(Scope.Benchmark)
+	public static class Parallel {
+		/** Number of work queue threads */
+		@Param({"1", "2", "4", "8"})
+		public int threads;
+
+		/** The work queue */
+		private WorkQueue queue;
+
+		/**
+		 * Starts the work queue
+		 */
+		@Setup
+		public void setup() {
+			this.queue = new WorkQueue(this.threads);
+		}
+
+		/**
+		 * Stops the work queue
+		 */
+		@TearDown
+		public void tearDown() {
+			this.queue.join();
+		}
+	}
+
+	/** One inverted index per document, rebuilt before every merge because merging shares their postings */
+	@State(Scope.Thread)
+	public static class Partials {
+		/** The inverted index of each document */
+		private List<InvertedIndex> indexes;
+
+		/**
+		 * Builds one inverted index per document
+		 * @param benchmark The documents
+		 */
+		@Setup(Level.Invocation)
+		public void setup(IndexBenchmark benchmark) {
+			this.indexes = new ArrayList<>(benchmark.documents);
+			for (int i = 0; i < benchmark.documents; i++) {
+				InvertedIndex partial = new InvertedIndex();
+				partial.addWords(benchmark.stems.get(i), benchmark.files.get(i).toString(), 1);
+				this.indexes.add(partial);
+			}
+		}
+	}
+
+	/**
+	 * Generates the documents and writes them as text files
+	 * @throws IOException If the files cannot be written
+	 */
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkData data = new BenchmarkData();
+		this.stems = new ArrayList<>(this.documents);
+		this.directory = Files.createTempDirectory("index-benchmark");
+		this.files = new ArrayList<>(this.documents);
+
+		for (int i = 0; i < this.documents; i++) {
+			String text = data.text(DOCUMENT_WORDS);
+			Path file = this.directory.resolve("document" + i + ".txt");
+			Files.writeString(file, text);
+
+			this.files.add(file);
+			this.stems.add(FileStemmer.listStems(text));
+		}
+	}
+
+	/**
+	 * Deletes the text files
+	 * @throws IOException If the files cannot be deleted
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(this.directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Adds every word position of every document
+	 * @return The inverted index
+	 */
+	@Benchmark
+	public InvertedIndex addWordPosition() {
+		InvertedIndex index = new InvertedIndex();
+		for (int i = 0; i < this.documents; i++) {
+			String location = this.files.get(i).toString();
+			int position = 1;
+			for (String stem : this.stems.get(i)) {
+				index.addWordPosition(stem, location, position++);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Merges the inverted index of every document, as the multithreaded indexer does
+	 * @param partials The inverted index of each document
+	 * @return The merged inverted index
+	 */
+	@Benchmark
+	public InvertedIndex addAll(Partials partials) {
+		InvertedIndex index = new InvertedIndex();
+		for (InvertedIndex partial : partials.indexes) {
+			index.addAll(partial);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Reads, stems, and indexes the text files with a work queue
+	 * @param parallel The work queue
+	 * @return The inverted index
+	 * @throws IOException If a file cannot be read
+	 */
+	@Benchmark
+	public InvertedIndex parallelIndexFiles(Parallel parallel) throws IOException {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		new ThreadSafeTextFileIndexer(index, parallel.queue).indexFiles(this.files);
+		return index;
+	}
+}
@@ -0,0 +1,280 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the {@link Driver} pipeline on generated corpora of several sizes with several
+ * {@code -threads} values and prints a table of indexing throughput, scaling
+ * efficiency, search throughput, and peak heap, to show where indexing stops scaling.
+ *
+ * <p>Every run is a fresh JVM with the same maximum heap as this one, so runs do not
+ * share warmed-up code or garbage. Each configuration is run twice: once to only index
+ * the corpus, and once to index it and answer the queries, so the search time is the
+ * difference. The speedup of a configuration is relative to the first {@code -threads}
+ * value of the same corpus, and its efficiency is the speedup divided by how many times
+ * more threads it used. With {@code -repeat}, the fastest of the repeated runs is kept.</p>
+ *
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar edu.usfca.cs272.ScalingSuite -sizes 100,1000,10000 -threads 1,2,4,8 -csv scaling.csv
+ * </pre>
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class ScalingSuite {
+	/** {@code -output} flag. Next argument is the directory the corpora and queries are generated in. */
+	public static final String OUTPUT = "-output";
+
+	/** Directory to use if no value after the {@code -output} flag was provided */
+	public static final Path DEFAULT_OUTPUT = Path.of("scaling");
+
+	/** {@code -sizes} flag. Next argument is a comma-separated list of the number of files of each corpus. */
+	public static final String SIZES = "-sizes";
+
+	/** Corpus sizes to use if no value after the {@code -sizes} flag was provided */
+	public static final String DEFAULT_SIZES = "100,1000,10000";
+
+	/** {@code -words} flag. Next argument is the mean number of words per file. */
+	public static final String WORDS = "-words";
+
+	/** {@code -threads} flag. Next argument is a comma-separated list of the {@code -threads} values to run. */
+	public static final String THREADS = "-threads";
+
+	/** Thread counts to use if no value after the {@code -threads} flag was provided */
+	public static final String DEFAULT_THREADS = "1,2,4,8";
+
+	/** {@code -repeat} flag. Next argument is the number of times each configuration is run. */
+	public static final String REPEAT = "-repeat";
+
+	/** {@code -partial} flag. Answers the queries with partial search instead of exact search. */
+	public static final String PARTIAL = "-partial";
+
+	/** {@code -csv} flag. Next argument is the file to also write the table to as comma-separated values. */
+	public static final String CSV = "-csv";
+
+	/** Number of generated queries */
+	public static final int QUERY_COUNT = 1000;
+
+	/** First argument of a child JVM, followed by the arguments of the {@link Driver} */
+	private static final String CHILD = "-child";
+
+	/** Starts the line a child JVM prints with its elapsed nanoseconds and peak heap bytes */
+	private static final String RESULT = "scaling-result";
+
+	/** Elapsed time and peak heap of a {@link Driver} run */
+	private static class Run {
+		/** Nanoseconds the run took */
+		private final long nanos;
+
+		/** Most heap bytes used at once */
+		private final long peakHeap;
+
+		/**
+		 * Constructs the result of a run
+		 * @param nanos Nanoseconds the run took
+		 * @param peakHeap Most heap bytes used at once
+		 */
+		public Run(long nanos, long peakHeap) {
+			this.nanos = nanos;
+			this.peakHeap = peakHeap;
+		}
+	}
+
+	/**
+	 * Runs the {@link Driver} in this JVM and prints its elapsed time and peak heap,
+	 * with the heap sampled every 5 milliseconds
+	 * @param driverArgs The arguments of the {@link Driver}
+	 */
+	private static void runChild(String[] driverArgs) {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		AtomicLong peak = new AtomicLong();
+
+		Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+
+		long start = System.nanoTime();
+		Driver.main(driverArgs);
+		long elapsed = System.nanoTime() - start;
+
+		sampler.interrupt();
+		peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+		System.out.printf("%s %d %d\n", RESULT, elapsed, peak.get());
+	}
+
+	/**
+	 * Runs the {@link Driver} in a new JVM
+	 * @param driverArgs The arguments of the {@link Driver}
+	 * @return The elapsed time and peak heap of the run
+	 * @throws IOException If the JVM cannot be started or the run fails
+	 * @throws InterruptedException If interrupted while waiting for the run
+	 */
+	private static Run launch(List<String> driverArgs) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>(List.of(
+			Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+			"-Xmx" + Runtime.getRuntime().maxMemory(),
+			"-cp", System.getProperty("java.class.path"),
+			ScalingSuite.class.getName(),
+			CHILD
+		));
+		command.addAll(driverArgs);
+
+		Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		String result = null;
+		try (BufferedReader reader = process.inputReader()) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(RESULT)) {
+					result = line;
+				}
+			}
+		}
+
+		if (process.waitFor() != 0 || result == null) {
+			throw new IOException("Driver run failed with arguments: " + driverArgs);
+		}
+
+		String[] parts = result.split(" ");
+		return new Run(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+	}
+
+	/**
+	 * Runs the {@link Driver} several times and keeps the fastest run
+	 * @param driverArgs The arguments of the {@link Driver}
+	 * @param repeat The number of runs
+	 * @return The fastest run, with the largest peak heap of all runs
+	 * @throws IOException If a JVM cannot be started or a run fails
+	 * @throws InterruptedException If interrupted while waiting for a run
+	 */
+	private static Run best(List<String> driverArgs, int repeat) throws IOException, InterruptedException {
+		long nanos = Long.MAX_VALUE;
+		long peakHeap = 0;
+		for (int i = 0; i < repeat; i++) {
+			Run run = launch(driverArgs);
+			nanos = Math.min(nanos, run.nanos);
+			peakHeap = Math.max(peakHeap, run.peakHeap);
+		}
+
+		return new Run(nanos, peakHeap);
+	}
+
+	/**
+	 * Parses a comma-separated list of positive integers
+	 * @param list The list, such as {@code 1,2,4}
+	 * @return The integers
+	 * @throws NumberFormatException If an element is not a positive integer
+	 */
+	private static int[] parseList(String list) throws NumberFormatException {
+		int[] values = Arrays.stream(list.split(",")).map(String::strip).mapToInt(Integer::parseInt).toArray();
+		if (values.length == 0 || Arrays.stream(values).anyMatch(value -> value <= 0)) {
+			throw new NumberFormatException(list);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Generates the corpora, runs every configuration, and prints the table
+	 * @param args flag/value pairs used to start the suite, or the child marker followed by {@link Driver} arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals(CHILD)) {
+			runChild(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		ArgumentParser argParser = new ArgumentParser(args);
+		int[] sizes;
+		int[] threads;
+		try {
+			sizes = parseList(argParser.getString(SIZES, DEFAULT_SIZES));
+			threads = parseList(argParser.getString(THREADS, DEFAULT_THREADS));
+		} catch (NumberFormatException e) {
+			System.err.printf("Invalid list of positive integers: %s\n", e.getMessage());
+			return;
+		}
+
+		int meanWords = Math.max(1, argParser.getInteger(WORDS, CorpusGenerator.DEFAULT_WORDS));
+		int repeat = Math.max(1, argParser.getInteger(REPEAT, 1));
+		Path output = argParser.getPath(OUTPUT, DEFAULT_OUTPUT);
+		Path queries = output.resolve("queries.txt");
+
+		CorpusGenerator generator = new CorpusGenerator(CorpusGenerator.DEFAULT_SEED, CorpusGenerator.DEFAULT_VOCABULARY, CorpusGenerator.DEFAULT_ZIPF);
+		List<String> rows = new ArrayList<>();
+		rows.add("files,words,threads,index_seconds,words_per_second,speedup,efficiency,search_seconds,queries_per_second,peak_heap_bytes");
+
+		System.out.printf("%8s %11s %7s %9s %12s %7s %10s %9s %10s %9s\n",
+			"files", "words", "threads", "index s", "words/s", "speedup", "efficiency", "search s", "queries/s", "heap MB");
+
+		try {
+			Files.createDirectories(output);
+			generator.writeQueries(queries, QUERY_COUNT, CorpusGenerator.DEFAULT_PREFIXES);
+
+			for (int size : sizes) {
+				Path corpus = output.resolve("files" + size);
+				long words = generator.writeCorpus(corpus, size, meanWords, CorpusGenerator.Sizes.LOGNORMAL);
+				double baseSeconds = 0;
+
+				for (int i = 0; i < threads.length; i++) {
+					List<String> indexArgs = List.of(Driver.TEXT, corpus.toString(), Driver.THREAD, String.valueOf(threads[i]));
+					List<String> searchArgs = new ArrayList<>(indexArgs);
+					searchArgs.addAll(List.of(Driver.QUERY, queries.toString()));
+					if (argParser.hasFlag(PARTIAL)) {
+						searchArgs.add(Driver.PARTIAL);
+					}
+
+					Run index = best(indexArgs, repeat);
+					Run search = best(searchArgs, repeat);
+
+					double indexSeconds = index.nanos / 1e9;
+					double searchSeconds = Math.max(0, search.nanos - index.nanos) / 1e9;
+					baseSeconds = i == 0 ? indexSeconds : baseSeconds;
+
+					double speedup = baseSeconds / indexSeconds;
+					double efficiency = speedup * threads[0] / threads[i];
+					double queriesPerSecond = searchSeconds > 0 ? QUERY_COUNT / searchSeconds : 0;
+					long peakHeap = Math.max(index.peakHeap, search.peakHeap);
+
+					System.out.printf("%8d %11d %7d %9.2f %12.0f %7.2f %9.0f%% %9.2f %10.0f %9.1f\n",
+						size, words, threads[i], indexSeconds, words / indexSeconds, speedup, 100 * efficiency, searchSeconds, queriesPerSecond, peakHeap / 1048576.0);
+					rows.add(String.format("%d,%d,%d,%.4f,%.0f,%.4f,%.4f,%.4f,%.0f,%d",
+						size, words, threads[i], indexSeconds, words / indexSeconds, speedup, efficiency, searchSeconds, queriesPerSecond, peakHeap));
+				}
+			}
+		} catch (IOException e) {
+			System.err.printf("Unable to run the suite: %s\n", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (argParser.hasFlag(CSV)) {
+			Path csv = argParser.getPath(CSV, Path.of("scaling.csv"));
+			try (BufferedWriter writer = Files.newBufferedWriter(csv, UTF_8)) {
+				for (String row : rows) {
+					writer.write(row);
+					writer.newLine();
+				}
+			} catch (IOException e) {
+				System.err.printf("Unable to write the table to: %s\n", csv);
+			}
+		}
+	}
+}
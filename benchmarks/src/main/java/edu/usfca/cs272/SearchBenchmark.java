@@ -0,0 +1,154 @@
+package edu.usfca.cs272;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of {@link InvertedIndex#exactSearch(Set)} and
+ * {@link InvertedIndex#partialSearch(Set)} over a fixed set of queries, and of
+ * answering the same queries with a {@link ThreadSafeQueryParser} and a work queue
+ * of each number of threads. Times are per query.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+	/** Number of words in each document */
+	public static final int DOCUMENT_WORDS = 500;
+
+	/** Number of queries answered by each invocation */
+	public static final int QUERIES = 100;
+
+	/** Number of documents */
+	@Param({"1000", "10000"})
+	public int documents;
+
+	/** The inverted index without locks or caches, for the cost of the search itself */
+	private InvertedIndex index;
+
+	/** The same inverted index for concurrent searches */
+	private ThreadSafeInvertedIndex threadSafeIndex;
+
+	/** The stems of the exact queries */
+	private List<Set<String>> exactQueries;
+
+	/** The stems of the partial queries */
+	private List<Set<String>> partialQueries;
+
+	/** The partial queries as typed */
+	private List<String> partialLines;
+
+	/** The work queue used by parallel searches */
+	@State(Scope.Benchmark)
+	public static class Parallel {
+		/** Number of work queue threads */
+		@Param({"1", "2", "4", "8"})
+		public int threads;
+
+		/** The work queue */
+		private WorkQueue queue;
+
+		/**
+		 * Starts the work queue
+		 */
+		@Setup
+		public void setup() {
+			this.queue = new WorkQueue(this.threads);
+		}
+
+		/**
+		 * Stops the work queue
+		 */
+		@TearDown
+		public void tearDown() {
+			this.queue.join();
+		}
+	}
+
+	/**
+	 * Generates the documents and the queries and builds the inverted indexes
+	 */
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		this.index = new InvertedIndex();
+		this.threadSafeIndex = new ThreadSafeInvertedIndex();
+
+		for (int i = 0; i < this.documents; i++) {
+			String location = "https://www.cs.usfca.edu/benchmark/" + i + ".html";
+			List<String> stems = data.stems(DOCUMENT_WORDS);
+			this.index.addWords(stems, location, 1);
+			this.threadSafeIndex.addWords(stems, location, 1);
+		}
+
+		this.exactQueries = data.queries(QUERIES, false).stream().map(query -> (Set<String>) FileStemmer.uniqueStems(query)).toList();
+		this.partialLines = data.queries(QUERIES, true);
+		this.partialQueries = this.partialLines.stream().map(query -> (Set<String>) FileStemmer.uniqueStems(query)).toList();
+	}
+
+	/**
+	 * Answers every exact query
+	 * @param blackhole Consumes the results
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public void exactSearch(Blackhole blackhole) {
+		for (Set<String> query : this.exactQueries) {
+			blackhole.consume(this.index.exactSearch(query));
+		}
+	}
+
+	/**
+	 * Answers every partial query
+	 * @param blackhole Consumes the results
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public void partialSearch(Blackhole blackhole) {
+		for (Set<String> query : this.partialQueries) {
+			blackhole.consume(this.index.partialSearch(query));
+		}
+	}
+
+	/**
+	 * Answers every partial query with a work queue, as the search engine does for a
+	 * query file. The prefix cache of the index is warm after the first invocation,
+	 * as it is for a running server.
+	 * @param parallel The work queue
+	 * @return The query parser holding the results
+	 */
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public QueryParser parallelPartialSearch(Parallel parallel) {
+		ThreadSafeQueryParser parser = new ThreadSafeQueryParser(this.threadSafeIndex, parallel.queue);
+		parser.setSearchMode(false);
+		for (String line : this.partialLines) {
+			parser.parseLine(line);
+		}
+
+		parallel.queue.finish();
+		return parser;
+	}
+}
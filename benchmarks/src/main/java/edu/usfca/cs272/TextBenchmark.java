@@ -0,0 +1,84 @@
+package edu.usfca.cs272;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of turning text and web pages into words and links:
+ * {@link FileStemmer#parse(String)}, {@link HtmlCleaner#stripHtml(String)}, and
+ * {@link LinkFinder#listUris(URI, String)}.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TextBenchmark {
+	/** Number of words of the text and of the visible text of the page */
+	@Param({"1000", "100000"})
+	public int words;
+
+	/** The plain text */
+	private String text;
+
+	/** The web page */
+	private String html;
+
+	/** The address of the web page */
+	private URI base;
+
+	/**
+	 * Generates the text and the web page
+	 */
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		this.text = data.text(this.words);
+		this.html = data.html(this.words);
+		this.base = URI.create("https://www.cs.usfca.edu/benchmark/index.html");
+	}
+
+	/**
+	 * Cleans and splits the text into words
+	 * @return The words
+	 */
+	@Benchmark
+	public String[] parse() {
+		return FileStemmer.parse(this.text);
+	}
+
+	/**
+	 * Removes the tags, comments, block elements, and entities of the web page
+	 * @return The visible text
+	 */
+	@Benchmark
+	public String stripHtml() {
+		return HtmlCleaner.stripHtml(this.html);
+	}
+
+	/**
+	 * Finds the links of the web page
+	 * @return The absolute links
+	 */
+	@Benchmark
+	public ArrayList<URI> listUris() {
+		return LinkFinder.listUris(this.base, this.html);
+	}
+}
@@ -0,0 +1,148 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of writing an inverted index as pretty JSON: character by character
+ * with {@link JsonWriter#writeObjectObject(java.util.Map, Writer, int)}, as bytes with
+ * {@link JsonStreamWriter}, and to a file with a work queue of each number of threads.
+ * The first two write to a stream that discards the output, so only serializing is
+ * measured.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WriterBenchmark {
+	/** Number of words in each document */
+	public static final int DOCUMENT_WORDS = 1000;
+
+	/** Number of documents */
+	@Param({"100", "1000"})
+	public int documents;
+
+	/** The inverted index as the nested maps that are written */
+	private TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements;
+
+	/** The file written by the parallel writer */
+	private Path output;
+
+	/** The work queue used by the parallel writer */
+	@State(Scope.Benchmark)
+	public static class Parallel {
+		/** Number of work queue threads */
+		@Param({"1", "2", "4", "8"})
+		public int threads;
+
+		/** The work queue */
+		private WorkQueue queue;
+
+		/**
+		 * Starts the work queue
+		 */
+		@Setup
+		public void setup() {
+			this.queue = new WorkQueue(this.threads);
+		}
+
+		/**
+		 * Stops the work queue
+		 */
+		@TearDown
+		public void tearDown() {
+			this.queue.join();
+		}
+	}
+
+	/**
+	 * Generates the documents and builds the nested maps
+	 * @throws IOException If the output file cannot be created
+	 */
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkData data = new BenchmarkData();
+		this.elements = new TreeMap<>();
+
+		for (int i = 0; i < this.documents; i++) {
+			String location = "https://www.cs.usfca.edu/benchmark/" + i + ".html";
+			List<String> stems = data.stems(DOCUMENT_WORDS);
+			for (int position = 1; position <= stems.size(); position++) {
+				this.elements.computeIfAbsent(stems.get(position - 1), word -> new TreeMap<>())
+					.computeIfAbsent(location, key -> new TreeSet<>())
+					.add(position);
+			}
+		}
+
+		this.output = Files.createTempFile("writer-benchmark", ".json");
+	}
+
+	/**
+	 * Deletes the output file
+	 * @throws IOException If the file cannot be deleted
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.output);
+	}
+
+	/**
+	 * Writes the index with a buffered character writer
+	 * @throws IOException If an IO error occurs
+	 */
+	@Benchmark
+	public void jsonWriter() throws IOException {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream(), UTF_8))) {
+			JsonWriter.writeObjectObject(this.elements, writer, 0);
+		}
+	}
+
+	/**
+	 * Writes the index with the byte-oriented stream writer
+	 * @throws IOException If an IO error occurs
+	 */
+	@Benchmark
+	public void jsonStreamWriter() throws IOException {
+		try (JsonStreamWriter writer = new JsonStreamWriter(OutputStream.nullOutputStream())) {
+			writer.writeObjectObject(this.elements, 0);
+		}
+	}
+
+	/**
+	 * Writes the index to a file, serializing ranges of words with a work queue
+	 * @param parallel The work queue
+	 * @throws IOException If an IO error occurs
+	 */
+	@Benchmark
+	public void parallelWriteObjectObject(Parallel parallel) throws IOException {
+		JsonWriter.writeObjectObject(this.elements, this.output, parallel.queue);
+	}
+}
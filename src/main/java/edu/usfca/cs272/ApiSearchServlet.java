@@ -0,0 +1,218 @@
+package edu.usfca.cs272;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that answers searches with compact JSON instead of HTML, for clients and
+ * load tests. Accepts the query {@code q}, the {@code mode} ({@code exact} or
+ * {@code partial}), and the {@code limit} and {@code offset} of the results. Setting
+ * {@code cache=false} searches the index even if the results are cached. The response
+ * has the results, the total number of matching locations, and how many microseconds
+ * the server spent stemming, looking up, sorting, and serializing, which are also sent
+ * in a {@code Server-Timing} header.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class ApiSearchServlet extends HttpServlet {
+	/** Class version for serialization */
+	private static final long serialVersionUID = 1L;
+
+	/** Number of results returned if the request does not choose a limit */
+	public static final int DEFAULT_LIMIT = 50;
+
+	/** Largest number of results returned by a single request */
+	public static final int MAX_LIMIT = 1000;
+
+	/** Nanoseconds spent on each successful request */
+	private static final Metrics.Histogram REQUEST_TIME = Metrics.shared().histogram("api_search_request_nanos");
+
+	/** Number of locations that matched each successful request */
+	private static final Metrics.Histogram RESULT_COUNTS = Metrics.shared().histogram("api_search_results");
+
+	/** Number of requests rejected because of invalid parameters */
+	private static final Metrics.Counter BAD_REQUESTS = Metrics.shared().counter("api_search_bad_requests");
+
+	/**
+	 * The inverted index to search through.
+	 * Marked as {@code transient} because this member is not serializable and does not need to be persisted if the servlet is serialized.
+	 */
+	private final transient ThreadSafeInvertedIndex invertedIndex;
+
+	/**
+	 * Caches the results of popular queries until the inverted index changes.
+	 * Marked as {@code transient} for the same reason as the inverted index.
+	 */
+	private final transient SearchCache cache;
+
+	/**
+	 * Constructs an {@code ApiSearchServlet} that searches through the inverted index using the cache
+	 * @param invertedIndex The inverted index to search through
+	 * @param cache The cache of search results to use
+	 */
+	public ApiSearchServlet(ThreadSafeInvertedIndex invertedIndex, SearchCache cache) {
+		this.invertedIndex = invertedIndex;
+		this.cache = cache;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		long start = System.nanoTime();
+
+		String query = request.getParameter("q");
+		String mode = request.getParameter("mode");
+		boolean isExactSearch = "exact".equals(mode);
+
+		if (mode != null && !isExactSearch && !mode.equals("partial")) {
+			writeError(response, "The mode must be exact or partial.");
+			return;
+		}
+
+		int limit;
+		int offset;
+		try {
+			limit = parseNonNegative(request.getParameter("limit"), DEFAULT_LIMIT);
+			offset = parseNonNegative(request.getParameter("offset"), 0);
+		} catch (NumberFormatException e) {
+			writeError(response, "The limit and offset must be non-negative integers.");
+			return;
+		}
+
+		limit = Math.min(limit, MAX_LIMIT);
+		offset = Math.min(offset, Integer.MAX_VALUE - limit);
+
+		Set<String> queryStems = FileStemmer.uniqueStems(query == null ? "" : query, StemCache.shared());
+		long stemNanos = System.nanoTime() - start;
+
+		InvertedIndex.TopResults topResults = "false".equals(request.getParameter("cache"))
+			? this.invertedIndex.search(queryStems, isExactSearch, offset + limit)
+			: this.cache.search(queryStems, isExactSearch, offset + limit);
+
+		long serializeStart = System.nanoTime();
+		List<InvertedIndex.SearchResult> searchResults = topResults.getResults();
+		List<InvertedIndex.SearchResult> page = offset >= searchResults.size()
+			? List.of()
+			: searchResults.subList(offset, Math.min(offset + limit, searchResults.size()));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JsonStreamWriter writer = new JsonStreamWriter(bytes, 1 << 14)) {
+			writer.write("{\"query\":");
+			NdjsonWriter.writeString(QueryParser.extractQueryString(queryStems), writer);
+			writer.write(",\"mode\":");
+			writer.write(isExactSearch ? "\"exact\"" : "\"partial\"");
+			writer.write(",\"offset\":");
+			writer.write(offset);
+			writer.write(",\"limit\":");
+			writer.write(limit);
+			writer.write(",\"total\":");
+			writer.write(topResults.getTotal());
+			writer.write(",\"results\":[");
+
+			for (int i = 0; i < page.size(); i++) {
+				InvertedIndex.SearchResult result = page.get(i);
+				if (i > 0) {
+					writer.write(',');
+				}
+
+				writer.write("{\"count\":");
+				writer.write(result.getCount());
+				writer.write(",\"score\":");
+				writer.write(SearchResultWriter.formatScore(result.getScore()));
+				writer.write(",\"where\":");
+				NdjsonWriter.writeString(result.getLocation(), writer);
+				writer.write('}');
+			}
+
+			writer.write(']');
+
+			// The timings come last so that serializing the results is part of them
+			long serializeNanos = System.nanoTime() - serializeStart;
+			long totalNanos = System.nanoTime() - start;
+
+			writer.write(",\"timings\":{\"stemMicros\":");
+			writer.write(stemNanos / 1000);
+			writer.write(",\"lookupMicros\":");
+			writer.write(topResults.getLookupNanos() / 1000);
+			writer.write(",\"sortMicros\":");
+			writer.write(topResults.getSortNanos() / 1000);
+			writer.write(",\"serializeMicros\":");
+			writer.write(serializeNanos / 1000);
+			writer.write(",\"totalMicros\":");
+			writer.write(totalNanos / 1000);
+			writer.write("}}");
+
+			response.setHeader("Server-Timing", String.format(
+				"stem;dur=%.3f, lookup;dur=%.3f, sort;dur=%.3f, serialize;dur=%.3f, total;dur=%.3f",
+				stemNanos / 1e6,
+				topResults.getLookupNanos() / 1e6,
+				topResults.getSortNanos() / 1e6,
+				serializeNanos / 1e6,
+				totalNanos / 1e6
+			));
+		}
+
+		writeJson(response, HttpServletResponse.SC_OK, bytes.toByteArray());
+		RESULT_COUNTS.record(topResults.getTotal());
+		REQUEST_TIME.recordSince(start);
+	}
+
+	/**
+	 * Parses a non-negative integer request parameter
+	 * @param value The parameter value, or {@code null}
+	 * @param defaultValue The value to use if the parameter is missing
+	 * @return The parsed value
+	 * @throws NumberFormatException If the value is not a non-negative integer
+	 */
+	private static int parseNonNegative(String value, int defaultValue) throws NumberFormatException {
+		if (value == null || value.isBlank()) {
+			return defaultValue;
+		}
+
+		int parsed = Integer.parseInt(value.trim());
+		if (parsed < 0) {
+			throw new NumberFormatException(value);
+		}
+
+		return parsed;
+	}
+
+	/**
+	 * Responds with a bad request status and a JSON error message
+	 * @param response The response to write to
+	 * @param message The error message
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void writeError(HttpServletResponse response, String message) throws IOException {
+		BAD_REQUESTS.increment();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JsonStreamWriter writer = new JsonStreamWriter(bytes, 1 << 8)) {
+			writer.write("{\"error\":");
+			NdjsonWriter.writeString(message, writer);
+			writer.write('}');
+		}
+
+		writeJson(response, HttpServletResponse.SC_BAD_REQUEST, bytes.toByteArray());
+	}
+
+	/**
+	 * Sends a JSON body that must not be cached by clients
+	 * @param response The response to write to
+	 * @param status The status code
+	 * @param json The JSON body encoded as UTF-8
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void writeJson(HttpServletResponse response, int status, byte[] json) throws IOException {
+		response.setContentType("application/json; charset=UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		response.setContentLength(json.length);
+		response.setStatus(status);
+		response.getOutputStream().write(json);
+	}
+}
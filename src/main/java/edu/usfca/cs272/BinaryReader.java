@@ -0,0 +1,198 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads files written by {@link BinaryWriter} one record at a time.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class BinaryReader implements CompactReader {
+	/** The stream to read records from */
+	private final DataInputStream input;
+
+	/** What the file holds */
+	private final int kind;
+
+	/** Number of records not read yet */
+	private long remaining;
+
+	/**
+	 * Opens the file and reads its header
+	 * @param path The file to read
+	 * @throws IOException If an IO error occurs or the file was not written by {@link BinaryWriter}
+	 */
+	public BinaryReader(Path path) throws IOException {
+		this.input = new DataInputStream(new BufferedInputStream(CompactReader.newInputStream(path), 1 << 16));
+
+		try {
+			byte[] magic = new byte[BinaryWriter.MAGIC.length];
+			this.input.readFully(magic);
+			if (!Arrays.equals(magic, BinaryWriter.MAGIC) || this.input.readUnsignedByte() != BinaryWriter.VERSION) {
+				throw new IOException("Not a binary output file: " + path);
+			}
+
+			this.kind = this.input.readUnsignedByte();
+			this.remaining = readVarint(this.input);
+		} catch (IOException e) {
+			this.input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks that the file holds the expected kind of record and that records remain
+	 * @param expected The kind of record the caller wants
+	 * @return {@code true} if another record can be read
+	 * @throws IOException If the file holds a different kind of record
+	 */
+	private boolean hasNext(int expected) throws IOException {
+		if (this.kind != expected) {
+			throw new IOException(String.format("Binary file holds kind %d, not %d.", this.kind, expected));
+		}
+
+		return this.remaining > 0;
+	}
+
+	@Override
+	public Map.Entry<String, TreeMap<String, List<Integer>>> nextPostings() throws IOException {
+		if (!hasNext(BinaryWriter.INDEX)) {
+			return null;
+		}
+
+		String word = readString(this.input);
+		int numLocations = readInt(this.input);
+		TreeMap<String, List<Integer>> locations = new TreeMap<>();
+
+		for (int i = 0; i < numLocations; i++) {
+			String location = readString(this.input);
+			int numPositions = readInt(this.input);
+			ArrayList<Integer> positions = new ArrayList<>(numPositions);
+
+			int position = 0;
+			for (int j = 0; j < numPositions; j++) {
+				position += readInt(this.input);
+				positions.add(position);
+			}
+
+			locations.put(location, positions);
+		}
+
+		this.remaining--;
+		return Map.entry(word, locations);
+	}
+
+	@Override
+	public Map.Entry<String, Integer> nextCount() throws IOException {
+		if (!hasNext(BinaryWriter.COUNTS)) {
+			return null;
+		}
+
+		String location = readString(this.input);
+		int count = readInt(this.input);
+		this.remaining--;
+		return Map.entry(location, count);
+	}
+
+	@Override
+	public Map.Entry<String, List<Result>> nextResults() throws IOException {
+		if (!hasNext(BinaryWriter.RESULTS)) {
+			return null;
+		}
+
+		String query = readString(this.input);
+		int numResults = readInt(this.input);
+		ArrayList<Result> results = new ArrayList<>(numResults);
+
+		for (int i = 0; i < numResults; i++) {
+			String location = readString(this.input);
+			int count = readInt(this.input);
+			results.add(new Result(location, count, this.input.readDouble()));
+		}
+
+		this.remaining--;
+		return Map.entry(query, results);
+	}
+
+	/**
+	 * Reads a varint written by {@link BinaryWriter#writeVarint(long, java.io.DataOutputStream)}
+	 * @param input The stream to read from
+	 * @return The number that was read
+	 * @throws IOException If an IO error occurs or the varint is malformed
+	 */
+	public static long readVarint(DataInputStream input) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = input.read();
+			if (b == -1) {
+				throw new EOFException("Binary file ended inside a varint.");
+			}
+
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed varint in binary file.");
+	}
+
+	/**
+	 * Reads a varint that must fit in an {@code int}
+	 * @param input The stream to read from
+	 * @return The number that was read
+	 * @throws IOException If an IO error occurs or the number is too large
+	 */
+	private static int readInt(DataInputStream input) throws IOException {
+		long value = readVarint(input);
+		if (value > Integer.MAX_VALUE) {
+			throw new IOException("Number too large in binary file: " + value);
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Reads a string written as a varint byte length followed by UTF-8 bytes
+	 * @param input The stream to read from
+	 * @return The string that was read
+	 * @throws IOException If an IO error occurs
+	 */
+	private static String readString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[readInt(input)];
+		input.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"Binary reader of kind %d currently has %d %s left.",
+			this.kind,
+			this.remaining,
+			this.remaining == 1 ? "record" : "records"
+		);
+	}
+}
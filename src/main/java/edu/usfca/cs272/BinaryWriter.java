@@ -0,0 +1,183 @@
+package edu.usfca.cs272;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Outputs the inverted index, word counts, and search results in a compact binary
+ * format. Every file starts with {@link #MAGIC}, a version byte, and a kind byte,
+ * followed by the number of records as a varint and then the records themselves.
+ * Strings are written as a varint byte length followed by UTF-8 bytes, counts are
+ * unsigned varints, positions are varint gaps from the previous position in the
+ * same location, and scores are 8-byte doubles.
+ *
+ * @see BinaryReader
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class BinaryWriter {
+	/** Bytes every binary output file starts with */
+	public static final byte[] MAGIC = {'S', 'S', 'E', 'B'};
+
+	/** Version of the binary format */
+	public static final int VERSION = 1;
+
+	/** Kind byte of a file holding the inverted index */
+	public static final int INDEX = 1;
+
+	/** Kind byte of a file holding word counts */
+	public static final int COUNTS = 2;
+
+	/** Kind byte of a file holding search results */
+	public static final int RESULTS = 3;
+
+	/**
+	 * Writes the number of stems at each location. Each record is the location and its count.
+	 * @param counts The number of stems at each location
+	 * @param path The file path to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeCounts(Map<String, ? extends Number> counts, Path path) throws IOException {
+		try (DataOutputStream output = open(path, COUNTS, counts.size())) {
+			for (var entry : counts.entrySet()) {
+				writeString(entry.getKey(), output);
+				writeVarint(entry.getValue().longValue(), output);
+			}
+		}
+	}
+
+	/**
+	 * Writes the inverted index. Each record is a word, the number of locations, and
+	 * for each location its name, the number of positions, and the position gaps.
+	 * @param index The inverted index to write
+	 * @param path The file path to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeIndex(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> index, Path path) throws IOException {
+		try (DataOutputStream output = open(path, INDEX, index.size())) {
+			for (var wordEntry : index.entrySet()) {
+				writeString(wordEntry.getKey(), output);
+				writeVarint(wordEntry.getValue().size(), output);
+
+				for (var locationEntry : wordEntry.getValue().entrySet()) {
+					writeString(locationEntry.getKey(), output);
+					writeVarint(locationEntry.getValue().size(), output);
+
+					long previous = 0;
+					for (Number position : locationEntry.getValue()) {
+						writeVarint(position.longValue() - previous, output);
+						previous = position.longValue();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the search results. Each record is a query, the number of results, and
+	 * for each result its location, count, and score.
+	 * @param searchResults The search results of each query
+	 * @param path The file path to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeSearchResults(Map<String, ? extends Collection<SearchResult>> searchResults, Path path) throws IOException {
+		try (DataOutputStream output = open(path, RESULTS, searchResults.size())) {
+			for (var entry : searchResults.entrySet()) {
+				writeSearchResults(entry.getKey(), entry.getValue(), output);
+			}
+		}
+	}
+
+	/**
+	 * Writes the record for a single query
+	 * @param query The query string
+	 * @param searchResults The search results of the query
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see #writeSearchResults(Map, Path)
+	 */
+	public static void writeSearchResults(String query, Collection<SearchResult> searchResults, DataOutputStream output) throws IOException {
+		writeString(query, output);
+		writeVarint(searchResults.size(), output);
+
+		for (SearchResult result : searchResults) {
+			writeString(result.getLocation(), output);
+			writeVarint(result.getCount(), output);
+			output.writeDouble(result.getScore());
+		}
+	}
+
+	/**
+	 * Opens the file and writes the header
+	 * @param path The file path to write to
+	 * @param kind What the file holds
+	 * @param records The number of records that will follow the header
+	 * @return The stream to write the records to
+	 * @throws IOException If an IO error occurs
+	 */
+	private static DataOutputStream open(Path path, int kind, int records) throws IOException {
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(JsonWriter.newOutputStream(path), 1 << 16));
+		writeHeader(kind, records, output);
+		return output;
+	}
+
+	/**
+	 * Writes the header that starts every binary output file
+	 * @param kind What the file holds
+	 * @param records The number of records that will follow the header
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeHeader(int kind, long records, DataOutputStream output) throws IOException {
+		output.write(MAGIC);
+		output.writeByte(VERSION);
+		output.writeByte(kind);
+		writeVarint(records, output);
+	}
+
+	/**
+	 * Writes the string as a varint byte length followed by its UTF-8 bytes
+	 * @param text The text to write
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void writeString(String text, DataOutputStream output) throws IOException {
+		byte[] bytes = text.getBytes(UTF_8);
+		writeVarint(bytes.length, output);
+		output.write(bytes);
+	}
+
+	/**
+	 * Writes a non-negative number seven bits at a time, least significant group first,
+	 * with the high bit of each byte set if more bytes follow
+	 * @param value The number to write
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeVarint(long value, DataOutputStream output) throws IOException {
+		if (value < 0) {
+			throw new IllegalArgumentException("Varints must not be negative: " + value);
+		}
+
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		output.writeByte((int) value);
+	}
+
+	/** No need to instantiate this class because all methods are {@code static} */
+	private BinaryWriter() {}
+}
@@ -0,0 +1,137 @@
+package edu.usfca.cs272;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the inverted index, word counts, or search results written in one of the
+ * compact {@link OutputFormat}s one record at a time, so large outputs can be
+ * consumed without loading them into memory. Each file holds one kind of record;
+ * use the {@code next} method matching what was written.
+ *
+ * @see NdjsonReader
+ * @see BinaryReader
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public interface CompactReader extends Closeable {
+	/**
+	 * Reads the next word of an inverted index
+	 * @return The word mapped to the positions at each location, or {@code null} if there are no more words
+	 * @throws IOException If an IO error occurs or the file does not hold an inverted index
+	 */
+	Map.Entry<String, TreeMap<String, List<Integer>>> nextPostings() throws IOException;
+
+	/**
+	 * Reads the next location of the word counts
+	 * @return The location mapped to its number of stems, or {@code null} if there are no more locations
+	 * @throws IOException If an IO error occurs or the file does not hold word counts
+	 */
+	Map.Entry<String, Integer> nextCount() throws IOException;
+
+	/**
+	 * Reads the next query of the search results
+	 * @return The query mapped to its search results, or {@code null} if there are no more queries
+	 * @throws IOException If an IO error occurs or the file does not hold search results
+	 */
+	Map.Entry<String, List<Result>> nextResults() throws IOException;
+
+	/**
+	 * Opens a reader for a file written in the given format
+	 * @param path The file to read
+	 * @param format The format the file was written in
+	 * @return A reader for the file
+	 * @throws IOException If an IO error occurs
+	 * @throws IllegalArgumentException If the format is {@link OutputFormat#JSON}, which cannot be streamed
+	 */
+	static CompactReader open(Path path, OutputFormat format) throws IOException {
+		return switch (format) {
+			case NDJSON -> new NdjsonReader(path);
+			case BINARY -> new BinaryReader(path);
+			default -> throw new IllegalArgumentException("No streaming reader for format: " + format);
+		};
+	}
+
+	/**
+	 * Opens the file for reading, decompressing it if the file name ends with {@value JsonWriter#GZIP_EXTENSION}
+	 * @param path The file to read
+	 * @return A stream that reads the file
+	 * @throws IOException If an IO error occurs
+	 */
+	static InputStream newInputStream(Path path) throws IOException {
+		InputStream input = Files.newInputStream(path);
+		if (!JsonWriter.isGzip(path)) {
+			return input;
+		}
+
+		try {
+			return new GZIPInputStream(input, 1 << 16);
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/** A search result read back from a file */
+	class Result {
+		/** Where the query stems were found */
+		private final String location;
+
+		/** The number of matches at the location */
+		private final int count;
+
+		/** The score of the result */
+		private final double score;
+
+		/**
+		 * Constructs a search result read back from a file
+		 * @param location Where the query stems were found
+		 * @param count The number of matches at the location
+		 * @param score The score of the result
+		 */
+		public Result(String location, int count, double score) {
+			this.location = location;
+			this.count = count;
+			this.score = score;
+		}
+
+		/**
+		 * Returns where the query stems were found
+		 * @return Where the query stems were found
+		 */
+		public String getLocation() {
+			return this.location;
+		}
+
+		/**
+		 * Returns the number of matches at the location
+		 * @return The number of matches at the location
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		/**
+		 * Returns the score of the result
+		 * @return The score of the result
+		 */
+		public double getScore() {
+			return this.score;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Result at %s with count %d and score %s.", this.location, this.count, this.score);
+		}
+	}
+}
@@ -0,0 +1,361 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Completes prefixes to the words of an inverted index that were found at the most
+ * locations. Prefixes are completed against the words as they were written before
+ * stemming, kept in {@link SurfaceForms}, and only the most common word of each stem
+ * that starts with the prefix is suggested. Stems no word was recorded for, such as
+ * those of an index loaded from a file, are completed as is. The words are kept sorted, so the words starting with a prefix are a
+ * contiguous range and every node of the trie is such a range. Each node with more
+ * words than the limit stores its best words, merged bottom-up from its children
+ * when the trie is built, and smaller nodes are ranked when they are looked up, so a
+ * completion is two binary searches and at most {@code limit} words sorted.
+ *
+ * The trie is rebuilt from the term dictionary of the inverted index the first time
+ * it is used after the index changes. Only one thread rebuilds it, and other threads
+ * are answered from the previous trie in the meantime.
+ *
+ * This class is thread safe.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class CompletionTrie {
+	/** Default maximum number of completions of a prefix */
+	public static final int DEFAULT_LIMIT = 10;
+
+	/** The inverted index to complete words from */
+	private final ThreadSafeInvertedIndex invertedIndex;
+
+	/** The words of the inverted index before stemming */
+	private final SurfaceForms surfaceForms;
+
+	/** The maximum number of completions of a prefix */
+	private final int limit;
+
+	/** The trie built at the newest generation so far, or {@code null} before the first completion */
+	private volatile Snapshot snapshot;
+
+	/** Held by the thread rebuilding the trie */
+	private final ReentrantLock rebuildLock;
+
+	/** Number of times the trie was built, read without waiting for a rebuild */
+	private final AtomicLong rebuilds;
+
+	/** A completion of a prefix */
+	public static class Completion {
+		/** The completed word */
+		private final String word;
+
+		/** The number of locations where the stem of the word was found */
+		private final int frequency;
+
+		/**
+		 * Constructs a completion
+		 * @param word The completed word
+		 * @param frequency The number of locations where the stem of the word was found
+		 */
+		public Completion(String word, int frequency) {
+			this.word = word;
+			this.frequency = frequency;
+		}
+
+		/**
+		 * Returns the completed word
+		 * @return The word
+		 */
+		public String getWord() {
+			return this.word;
+		}
+
+		/**
+		 * Returns the number of locations where the stem of the word was found, which
+		 * is the number of locations a search for the word finds
+		 * @return The document frequency of the stem of the word
+		 */
+		public int getFrequency() {
+			return this.frequency;
+		}
+	}
+
+	/** The trie built from one generation of the inverted index. Never modified after it is built. */
+	private static class Snapshot {
+		/** The generation of the inverted index the trie was built at */
+		private final long generation;
+
+		/** Every word, sorted */
+		private final String[] words;
+
+		/** The stem of each word */
+		private final String[] stems;
+
+		/** The number of locations of the stem of each word */
+		private final int[] frequencies;
+
+		/** The number of documents each word was found in, which ranks the words of a stem */
+		private final int[] documents;
+
+		/** The indices of the best words of every prefix with more words than the limit */
+		private final HashMap<String, int[]> best;
+
+		/**
+		 * Builds the trie from the words of the stems and their document frequencies
+		 * @param generation The generation of the inverted index
+		 * @param frequencies The number of locations of each stem
+		 * @param surfaceForms The words of the stems before stemming
+		 * @param limit The maximum number of completions of a prefix
+		 */
+		public Snapshot(long generation, TreeMap<String, Integer> frequencies, SurfaceForms surfaceForms, int limit) {
+			TreeMap<String, String> stemsOfWords = surfaceForms.getWords(frequencies.keySet());
+			HashSet<String> written = new HashSet<>(stemsOfWords.values());
+			for (String stem : frequencies.keySet()) {
+				if (!written.contains(stem)) {
+					stemsOfWords.putIfAbsent(stem, stem);
+				}
+			}
+
+			this.generation = generation;
+			this.words = stemsOfWords.keySet().toArray(String[]::new);
+			this.stems = stemsOfWords.values().toArray(String[]::new);
+			this.frequencies = new int[this.words.length];
+			this.documents = new int[this.words.length];
+			this.best = new HashMap<>();
+
+			for (int i = 0; i < this.words.length; i++) {
+				this.frequencies[i] = frequencies.get(this.stems[i]);
+				this.documents[i] = surfaceForms.getDocuments(this.words[i]);
+			}
+
+			if (this.words.length > 0) {
+				collect(0, this.words.length, 0, limit);
+			}
+		}
+
+		/**
+		 * Finds the best words of a node and stores them if the node has more words than the limit
+		 * @param start The index of the first word of the node
+		 * @param end The index after the last word of the node
+		 * @param depth The length of the prefix shared by the words of the node
+		 * @param limit The maximum number of completions of a prefix
+		 * @return The indices of the best words of the node, best first
+		 */
+		private int[] collect(int start, int end, int depth, int limit) {
+			if (end - start <= limit) {
+				return rank(range(start, end), limit);
+			}
+
+			ArrayList<int[]> children = new ArrayList<>();
+			int child = start;
+
+			// The word equal to the prefix sorts before the longer words
+			if (this.words[child].length() == depth) {
+				children.add(new int[] {child++});
+			}
+
+			while (child < end) {
+				char next = this.words[child].charAt(depth);
+				int childEnd = child + 1;
+				while (childEnd < end && this.words[childEnd].charAt(depth) == next) {
+					childEnd++;
+				}
+
+				children.add(collect(child, childEnd, depth + 1, limit));
+				child = childEnd;
+			}
+
+			int[] candidates = children.stream().flatMapToInt(Arrays::stream).toArray();
+			int[] best = rank(candidates, limit);
+			this.best.put(this.words[start].substring(0, depth), best);
+			return best;
+		}
+
+		/**
+		 * Returns the indices of a range of words
+		 * @param start The first index
+		 * @param end The index after the last index
+		 * @return The indices from {@code start} to {@code end}
+		 */
+		private static int[] range(int start, int end) {
+			int[] indices = new int[end - start];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = start + i;
+			}
+
+			return indices;
+		}
+
+		/**
+		 * Sorts words by the number of locations where their stem was found, most first,
+		 * then by the number of documents they were found in, and then alphabetically.
+		 * Only the first word of each stem is kept, which is also the first word of that
+		 * stem among the words of any larger node, so the best words of a node can be
+		 * merged from the best words of its children.
+		 * @param indices The indices of the words
+		 * @param limit The maximum number of words to keep
+		 * @return The indices of at most {@code limit} best words, best first
+		 */
+		private int[] rank(int[] indices, int limit) {
+			HashSet<String> ranked = new HashSet<>();
+			return Arrays.stream(indices)
+				.boxed()
+				.sorted((a, b) -> this.frequencies[a] != this.frequencies[b]
+					? Integer.compare(this.frequencies[b], this.frequencies[a])
+					: this.documents[a] != this.documents[b]
+					? Integer.compare(this.documents[b], this.documents[a])
+					: Integer.compare(a, b))
+				.filter(index -> ranked.add(this.stems[index]))
+				.limit(limit)
+				.mapToInt(Integer::intValue)
+				.toArray();
+		}
+
+		/**
+		 * Returns the indices of the best words starting with a prefix
+		 * @param prefix The prefix
+		 * @param limit The maximum number of completions of a prefix
+		 * @return The indices of the best words, best first
+		 */
+		public int[] complete(String prefix, int limit) {
+			int start = Arrays.binarySearch(this.words, prefix);
+			start = start < 0 ? -start - 1 : start;
+
+			// The words starting with the prefix are the range before the first word that does not
+			int low = start;
+			int high = this.words.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (this.words[middle].startsWith(prefix)) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			return low - start > limit ? this.best.get(prefix) : rank(range(start, low), limit);
+		}
+	}
+
+	/**
+	 * Constructs a trie that completes words of the inverted index
+	 * @param invertedIndex The inverted index to complete words from
+	 * @param surfaceForms The words of the inverted index before stemming
+	 * @param limit The maximum number of completions of a prefix
+	 */
+	public CompletionTrie(ThreadSafeInvertedIndex invertedIndex, SurfaceForms surfaceForms, int limit) {
+		this.invertedIndex = invertedIndex;
+		this.surfaceForms = surfaceForms;
+		this.limit = Math.max(1, limit);
+		this.snapshot = null;
+		this.rebuildLock = new ReentrantLock();
+		this.rebuilds = new AtomicLong();
+	}
+
+	/**
+	 * Constructs a trie that completes words of the inverted index with the words
+	 * recorded in {@link SurfaceForms#shared()}
+	 * @param invertedIndex The inverted index to complete words from
+	 * @param limit The maximum number of completions of a prefix
+	 */
+	public CompletionTrie(ThreadSafeInvertedIndex invertedIndex, int limit) {
+		this(invertedIndex, SurfaceForms.shared(), limit);
+	}
+
+	/**
+	 * Constructs a trie that completes words of the inverted index with the words
+	 * recorded in {@link SurfaceForms#shared()} and the default limit
+	 * @param invertedIndex The inverted index to complete words from
+	 */
+	public CompletionTrie(ThreadSafeInvertedIndex invertedIndex) {
+		this(invertedIndex, SurfaceForms.shared(), DEFAULT_LIMIT);
+	}
+
+	/**
+	 * Returns the trie for the current generation of the inverted index, rebuilding it
+	 * if no other thread is. Waits only if there is no trie yet.
+	 * @return The newest trie
+	 */
+	private Snapshot current() {
+		Snapshot current = this.snapshot;
+		if (current != null && current.generation == this.invertedIndex.getGeneration()) {
+			return current;
+		}
+
+		if (current == null) {
+			this.rebuildLock.lock();
+		} else if (!this.rebuildLock.tryLock()) {
+			return current;
+		}
+
+		try {
+			// Read the generation first, so a write during the rebuild makes the new trie stale
+			long generation = this.invertedIndex.getGeneration();
+			if (this.snapshot == null || this.snapshot.generation != generation) {
+				this.snapshot = new Snapshot(generation, this.invertedIndex.getDocumentFrequencies(), this.surfaceForms, this.limit);
+				this.rebuilds.incrementAndGet();
+			}
+
+			return this.snapshot;
+		} finally {
+			this.rebuildLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the words starting with a prefix whose stems were found at the most locations
+	 * @param prefix The prefix, already cleaned but not stemmed
+	 * @param count The maximum number of completions, at most the limit of this trie
+	 * @return The completions, best first
+	 */
+	public List<Completion> complete(String prefix, int count) {
+		if (prefix.isEmpty() || count <= 0) {
+			return List.of();
+		}
+
+		Snapshot current = current();
+		int[] best = current.complete(prefix, this.limit);
+
+		List<Completion> completions = new ArrayList<>(Math.min(count, best.length));
+		for (int i = 0; i < best.length && i < count; i++) {
+			completions.add(new Completion(current.words[best[i]], current.frequencies[best[i]]));
+		}
+
+		return completions;
+	}
+
+	/**
+	 * Returns the maximum number of completions of a prefix
+	 * @return The limit
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Returns the number of times the trie was built
+	 * @return The number of rebuilds
+	 */
+	public long getRebuilds() {
+		return this.rebuilds.get();
+	}
+
+	@Override
+	public String toString() {
+		Snapshot current = this.snapshot;
+		return String.format(
+			"Completion trie has %d words and %d ranked prefixes at generation %d, built %d times.",
+			current == null ? 0 : current.words.length,
+			current == null ? 0 : current.best.size(),
+			current == null ? -1 : current.generation,
+			getRebuilds()
+		);
+	}
+}
@@ -0,0 +1,430 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Thread-safe pool of keep-alive {@link Socket} connections to web servers, so a
+ * crawl of many pages on the same host does not pay for a TCP connect and a TLS
+ * handshake on every page and redirect. Connections are pooled per scheme, host,
+ * and port, and at most a fixed number of connections to each host are open at
+ * once, with threads waiting for one to be released past that.
+ *
+ * <p>
+ * Idle connections are reused most recently released first, and are closed once
+ * they have been idle longer than the idle timeout. Every TLS connection is made
+ * with the same {@link SSLSocketFactory}, so new connections to a host the pool has
+ * talked to before resume the cached TLS session instead of a full handshake.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class ConnectionPool implements Closeable {
+	/** Default maximum number of open connections to each host */
+	public static final int DEFAULT_MAX_PER_HOST = 8;
+
+	/** Default nanoseconds a connection may stay idle before it is closed */
+	public static final long DEFAULT_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	/** Milliseconds to wait to connect, to read, or for a connection to be released */
+	public static final int TIMEOUT_MILLIS = 30000;
+
+	/** Pool shared by the whole program */
+	private static final ConnectionPool SHARED = new ConnectionPool(DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_NANOS);
+
+	/** Number of connections opened */
+	private static final Metrics.Counter OPENED = Metrics.shared().counter("fetch_connections_opened");
+
+	/** Number of times an idle connection was reused */
+	private static final Metrics.Counter REUSED = Metrics.shared().counter("fetch_connections_reused");
+
+	/** Maps each scheme, host, and port to its connections */
+	private final ConcurrentHashMap<String, Host> hosts;
+
+	/** Creates every TLS connection so that sessions are cached and resumed */
+	private final SSLSocketFactory tls;
+
+	/** Maximum number of open connections to each host */
+	private final int maxPerHost;
+
+	/** Nanoseconds a connection may stay idle before it is closed */
+	private final long idleNanos;
+
+	/** When idle connections of every host were last closed, in nanoseconds */
+	private volatile long lastSweep;
+
+	/** Whether the pool is closed */
+	private volatile boolean closed;
+
+	/** Connections to one scheme, host, and port */
+	private static class Host {
+		/** Idle connections, most recently released first */
+		private final Deque<Connection> idle;
+
+		/** One permit for each connection that may still be opened */
+		private final Semaphore permits;
+
+		/**
+		 * Constructs the connections to a host
+		 * @param maxConnections Maximum number of open connections
+		 */
+		public Host(int maxConnections) {
+			this.idle = new ArrayDeque<>();
+			this.permits = new Semaphore(maxConnections, true);
+		}
+	}
+
+	/**
+	 * A connection borrowed from the pool. Must be either released back to the pool
+	 * with {@link #release()} once its response has been completely read, or closed.
+	 */
+	public class Connection implements Closeable {
+		/** The host this connection belongs to */
+		private final Host host;
+
+		/** The connected socket */
+		private final Socket socket;
+
+		/** Buffered input of the socket */
+		private final InputStream input;
+
+		/** Output of the socket */
+		private final OutputStream output;
+
+		/** When the connection was last released, in nanoseconds */
+		private long idleSince;
+
+		/** Whether the connection was idle in the pool before it was borrowed */
+		private final boolean reused;
+
+		/** Whether the connection has been released or closed since it was borrowed */
+		private boolean returned;
+
+		/**
+		 * Constructs a connection
+		 * @param host The host this connection belongs to
+		 * @param socket The connected socket
+		 * @throws IOException If unable to get the streams of the socket
+		 */
+		private Connection(Host host, Socket socket) throws IOException {
+			this.host = host;
+			this.socket = socket;
+			this.input = new BufferedInputStream(socket.getInputStream());
+			this.output = socket.getOutputStream();
+			this.reused = false;
+			this.returned = false;
+		}
+
+		/**
+		 * Constructs a new handle to an idle connection, so a thread still holding
+		 * the handle it released cannot close the connection after it is reused
+		 * @param idle The idle connection
+		 */
+		private Connection(Connection idle) {
+			this.host = idle.host;
+			this.socket = idle.socket;
+			this.input = idle.input;
+			this.output = idle.output;
+			this.reused = true;
+			this.returned = false;
+		}
+
+		/**
+		 * Returns the buffered input of the connection
+		 * @return The input stream
+		 */
+		public InputStream getInputStream() {
+			return this.input;
+		}
+
+		/**
+		 * Returns the output of the connection
+		 * @return The output stream
+		 */
+		public OutputStream getOutputStream() {
+			return this.output;
+		}
+
+		/**
+		 * Returns whether the connection was idle in the pool before it was borrowed,
+		 * in which case the server may have closed it in the meantime
+		 * @return {@code true} if the connection was reused
+		 */
+		public boolean isReused() {
+			return this.reused;
+		}
+
+		/**
+		 * Returns the connection to the pool so it can be reused. Only call once the
+		 * whole response has been read and the server allows the connection to stay open.
+		 */
+		public void release() {
+			if (this.returned) {
+				return;
+			}
+
+			this.returned = true;
+			synchronized (this.host) {
+				// Checked while holding the lock so a closing pool either sees it or it sees the pool closed
+				if (ConnectionPool.this.closed || this.socket.isClosed()) {
+					closeQuietly(this.socket);
+				} else {
+					this.idleSince = System.nanoTime();
+					this.host.idle.addFirst(this);
+				}
+			}
+
+			this.host.permits.release();
+		}
+
+		/**
+		 * Closes the connection instead of returning it to the pool. Does nothing if
+		 * the connection was already released.
+		 */
+		@Override
+		public void close() {
+			if (this.returned) {
+				return;
+			}
+
+			this.returned = true;
+			closeQuietly(this.socket);
+			this.host.permits.release();
+		}
+	}
+
+	/**
+	 * Constructs a connection pool
+	 * @param maxPerHost Maximum number of open connections to each host
+	 * @param idleNanos Nanoseconds a connection may stay idle before it is closed
+	 * @throws IllegalStateException If the default TLS context is not available
+	 */
+	public ConnectionPool(int maxPerHost, long idleNanos) {
+		this.hosts = new ConcurrentHashMap<>();
+		this.maxPerHost = Math.max(1, maxPerHost);
+		this.idleNanos = idleNanos;
+		this.lastSweep = System.nanoTime();
+		this.closed = false;
+
+		try {
+			this.tls = SSLContext.getDefault().getSocketFactory();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No default TLS context", e);
+		}
+	}
+
+	/**
+	 * Returns the pool shared by the whole program
+	 * @return The shared pool
+	 */
+	public static ConnectionPool shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Borrows a connection to the web server of the URI, reusing an idle one if possible
+	 * @param uri The URI to connect to
+	 * @return The connection
+	 * @throws IOException If unable to connect, or if no connection was released in time
+	 * @see #acquire(URI, boolean)
+	 */
+	public Connection acquire(URI uri) throws IOException {
+		return acquire(uri, true);
+	}
+
+	/**
+	 * Borrows a connection to the web server of the URI. Waits for another connection
+	 * to the same host to be released if the maximum number are already open.
+	 * @param uri The URI to connect to
+	 * @param reuse Whether an idle connection may be reused instead of opening a new one
+	 * @return The connection
+	 * @throws IOException If unable to connect, or if no connection was released in time
+	 */
+	public Connection acquire(URI uri, boolean reuse) throws IOException {
+		if (this.closed) {
+			throw new IOException("Connection pool is closed");
+		}
+
+		boolean https = isHttps(uri);
+		String hostname = uri.getHost();
+		int port = uri.getPort() < 0 ? (https ? 443 : 80) : uri.getPort();
+		Host host = this.hosts.computeIfAbsent((https ? "https://" : "http://") + hostname + ":" + port, key -> new Host(this.maxPerHost));
+
+		try {
+			if (!host.permits.tryAcquire(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Timed out waiting for a connection to: " + hostname);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a connection to: " + hostname);
+		}
+
+		try {
+			long now = System.nanoTime();
+			sweep(now);
+
+			if (reuse) {
+				Connection connection = takeIdle(host, now);
+				if (connection != null) {
+					REUSED.increment();
+					return connection;
+				}
+			}
+
+			Connection connection = new Connection(host, connect(hostname, port, https));
+			OPENED.increment();
+			return connection;
+		} catch (IOException | RuntimeException e) {
+			host.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes the most recently released idle connection of a host, closing the ones
+	 * that have been idle too long
+	 * @param host The host
+	 * @param now The current time in nanoseconds
+	 * @return The connection, or {@code null} if there are no idle connections
+	 */
+	private Connection takeIdle(Host host, long now) {
+		synchronized (host) {
+			evict(host, now);
+			Connection idle = host.idle.pollFirst();
+			return idle == null ? null : new Connection(idle);
+		}
+	}
+
+	/**
+	 * Opens a socket to a web server, with TLS for HTTPS
+	 * @param hostname The host
+	 * @param port The port
+	 * @param https Whether to use TLS
+	 * @return The connected socket
+	 * @throws IOException If unable to connect
+	 */
+	private Socket connect(String hostname, int port, boolean https) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(hostname, port), TIMEOUT_MILLIS);
+			socket.setSoTimeout(TIMEOUT_MILLIS);
+			socket.setTcpNoDelay(true);
+
+			// Layered over the connected socket with the host and port so the session is cached and resumed
+			return https ? this.tls.createSocket(socket, hostname, port, true) : socket;
+		} catch (IOException e) {
+			closeQuietly(socket);
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the idle connections of every host that have been idle too long, at most
+	 * once per idle timeout, so hosts that are no longer crawled do not keep connections open
+	 * @param now The current time in nanoseconds
+	 */
+	private void sweep(long now) {
+		if (now - this.lastSweep < this.idleNanos) {
+			return;
+		}
+
+		this.lastSweep = now;
+		for (Host host : this.hosts.values()) {
+			synchronized (host) {
+				evict(host, now);
+			}
+		}
+	}
+
+	/**
+	 * Closes the idle connections of a host that have been idle too long. Must hold
+	 * the lock of the host.
+	 * @param host The host
+	 * @param now The current time in nanoseconds
+	 */
+	private void evict(Host host, long now) {
+		// The least recently released connections are at the end
+		Iterator<Connection> iterator = host.idle.descendingIterator();
+		while (iterator.hasNext()) {
+			Connection connection = iterator.next();
+			if (now - connection.idleSince <= this.idleNanos) {
+				break;
+			}
+
+			iterator.remove();
+			closeQuietly(connection.socket);
+		}
+	}
+
+	/**
+	 * Returns the number of idle connections of every host
+	 * @return The number of idle connections
+	 */
+	public int getIdle() {
+		int idle = 0;
+		for (Host host : this.hosts.values()) {
+			synchronized (host) {
+				idle += host.idle.size();
+			}
+		}
+
+		return idle;
+	}
+
+	/**
+	 * Closes every idle connection and every connection released from now on
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		for (Host host : this.hosts.values()) {
+			synchronized (host) {
+				host.idle.forEach(connection -> closeQuietly(connection.socket));
+				host.idle.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the URI uses HTTPS
+	 * @param uri The URI
+	 * @return {@code true} if the scheme is HTTPS
+	 */
+	private static boolean isHttps(URI uri) {
+		return uri.getScheme() != null && uri.getScheme().equalsIgnoreCase("https");
+	}
+
+	/**
+	 * Closes a socket, ignoring any error
+	 * @param socket The socket
+	 */
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Nothing else to do with a socket that cannot be closed
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Connection pool of %d hosts with %d idle connections", this.hosts.size(), getIdle());
+	}
+}
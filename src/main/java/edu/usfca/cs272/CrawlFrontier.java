@@ -0,0 +1,282 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.net.URI;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * First-in, first-out queue of links waiting to be crawled. At most a fixed number
+ * of links are kept in memory; once that budget is exceeded, newer links are
+ * appended to a spill file on disk and read back in order as the in-memory links
+ * are used up. The spill file is deleted when the frontier is closed.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class CrawlFrontier implements Closeable {
+	/** Default maximum number of links to keep in memory */
+	public static final int DEFAULT_MEMORY_LIMIT = 10000;
+
+	/** Links kept in memory, oldest first */
+	private final ArrayDeque<URI> memory;
+
+	/** The maximum number of links to keep in memory */
+	private final int memoryLimit;
+
+	/** Directory to create the spill file in, or {@code null} for the default temporary directory */
+	private final Path spillDirectory;
+
+	/** File holding links that did not fit in memory, or {@code null} if nothing is spilled */
+	private Path spillFile;
+
+	/** Appends links to the spill file */
+	private BufferedWriter spillWriter;
+
+	/** Reads links back from the spill file */
+	private BufferedReader spillReader;
+
+	/** Number of links written to the spill file */
+	private long spilled;
+
+	/** Number of links read back from the spill file */
+	private long restored;
+
+	/**
+	 * Constructs an empty frontier
+	 * @param memoryLimit The maximum number of links to keep in memory
+	 * @param spillDirectory Directory to create the spill file in, or {@code null} for the default temporary directory
+	 */
+	public CrawlFrontier(int memoryLimit, Path spillDirectory) {
+		this.memory = new ArrayDeque<>();
+		this.memoryLimit = Math.max(1, memoryLimit);
+		this.spillDirectory = spillDirectory;
+		this.spilled = 0;
+		this.restored = 0;
+	}
+
+	/** Constructs an empty frontier with the default memory limit */
+	public CrawlFrontier() {
+		this(DEFAULT_MEMORY_LIMIT, null);
+	}
+
+	/**
+	 * Adds a link to the end of the frontier, spilling it to disk if memory is full
+	 * @param link The link to add
+	 * @throws IOException If unable to write to the spill file
+	 */
+	public void add(URI link) throws IOException {
+		if (this.spilled == this.restored && this.memory.size() < this.memoryLimit) {
+			this.memory.addLast(link);
+			return;
+		}
+
+		if (this.spillWriter == null) {
+			if (this.spillDirectory != null) {
+				Files.createDirectories(this.spillDirectory);
+			}
+
+			this.spillFile = this.spillDirectory == null
+				? Files.createTempFile("frontier", ".txt")
+				: Files.createTempFile(this.spillDirectory, "frontier", ".txt");
+			this.spillWriter = Files.newBufferedWriter(this.spillFile, UTF_8);
+		}
+
+		this.spillWriter.write(link.toString());
+		this.spillWriter.write('\n');
+		this.spilled++;
+	}
+
+	/**
+	 * Removes and returns the oldest link in the frontier
+	 * @return The oldest link, or {@code null} if the frontier is empty
+	 * @throws IOException If unable to read from the spill file
+	 */
+	public URI poll() throws IOException {
+		if (this.memory.isEmpty() && this.spilled > this.restored) {
+			restore();
+		}
+
+		return this.memory.pollFirst();
+	}
+
+	/**
+	 * Moves as many spilled links as fit back into memory, deleting the spill file once it is used up
+	 * @throws IOException If unable to read from the spill file
+	 */
+	private void restore() throws IOException {
+		this.spillWriter.flush();
+		if (this.spillReader == null) {
+			this.spillReader = Files.newBufferedReader(this.spillFile, UTF_8);
+		}
+
+		String line = null;
+		while (this.memory.size() < this.memoryLimit && this.restored < this.spilled && (line = this.spillReader.readLine()) != null) {
+			this.memory.addLast(URI.create(line));
+			this.restored++;
+		}
+
+		if (this.restored == this.spilled) {
+			close();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the links in the frontier that can be written out later
+	 * without holding on to the frontier. Only the links in memory are copied; the
+	 * spill file is append-only, so the snapshot just remembers which of its lines
+	 * are still waiting and keeps the file open in case the frontier deletes it.
+	 * @return The snapshot, which must be closed once written
+	 * @throws IOException If unable to flush or open the spill file
+	 */
+	public Snapshot snapshot() throws IOException {
+		BufferedReader reader = null;
+
+		if (this.spilled > this.restored) {
+			this.spillWriter.flush();
+			reader = Files.newBufferedReader(this.spillFile, UTF_8);
+		}
+
+		return new Snapshot(new ArrayList<>(this.memory), reader, this.restored, this.spilled);
+	}
+
+	/**
+	 * Returns the number of links in the frontier, including spilled links
+	 * @return The number of links in the frontier
+	 */
+	public long size() {
+		return this.memory.size() + this.spilled - this.restored;
+	}
+
+	/**
+	 * Returns {@code true} if there are no links left in the frontier
+	 * @return {@code true} if there are no links left in the frontier
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Closes and deletes the spill file. Any links that were still spilled are dropped.
+	 * @throws IOException If an IO error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.spillWriter != null) {
+				this.spillWriter.close();
+			}
+
+			if (this.spillReader != null) {
+				this.spillReader.close();
+			}
+
+			if (this.spillFile != null) {
+				Files.deleteIfExists(this.spillFile);
+			}
+		} finally {
+			this.spillWriter = null;
+			this.spillReader = null;
+			this.spillFile = null;
+			this.spilled = 0;
+			this.restored = 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"Crawl frontier currently has %d %s, %d spilled to disk.",
+			size(),
+			size() == 1 ? "link" : "links",
+			this.spilled - this.restored
+		);
+	}
+
+	/**
+	 * The links in a frontier at the time {@link CrawlFrontier#snapshot()} was called
+	 */
+	public static class Snapshot implements Closeable {
+		/** Copy of the links that were in memory, oldest first */
+		private final List<URI> memory;
+
+		/** Reads the spill file, or {@code null} if nothing was spilled */
+		private final BufferedReader reader;
+
+		/** Number of lines of the spill file that were already read back */
+		private final long restored;
+
+		/** Number of lines of the spill file that were written */
+		private final long spilled;
+
+		/**
+		 * Constructs a snapshot
+		 * @param memory Copy of the links that were in memory, oldest first
+		 * @param reader Reads the spill file, or {@code null} if nothing was spilled
+		 * @param restored Number of lines of the spill file that were already read back
+		 * @param spilled Number of lines of the spill file that were written
+		 */
+		private Snapshot(List<URI> memory, BufferedReader reader, long restored, long spilled) {
+			this.memory = memory;
+			this.reader = reader;
+			this.restored = restored;
+			this.spilled = spilled;
+		}
+
+		/**
+		 * Writes every link in the snapshot, oldest first, one per line
+		 * @param writer The writer to use
+		 * @throws IOException If an IO error occurs
+		 */
+		public void writeTo(Writer writer) throws IOException {
+			for (URI link : this.memory) {
+				writer.write(link.toString());
+				writer.write('\n');
+			}
+
+			if (this.reader == null) {
+				return;
+			}
+
+			String line = null;
+			long read = 0;
+
+			// Links spilled after the snapshot was taken are left for the next one
+			while (read < this.spilled && (line = this.reader.readLine()) != null) {
+				if (read++ < this.restored) {
+					continue;
+				}
+
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.reader != null) {
+				this.reader.close();
+			}
+		}
+
+		@Override
+		public String toString() {
+			long size = this.memory.size() + this.spilled - this.restored;
+			return String.format("Crawl frontier snapshot of %d %s", size, size == 1 ? "link" : "links");
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.io.IOException;
 
 import java.nio.file.Path;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.List;
 import java.util.TreeMap;
@@ -11,8 +13,7 @@ import java.util.function.Function;
 
 import java.util.Collections;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import opennlp.tools.stemmer.Stemmer;
 
 /**
  * Class responsible for parsing query files
@@ -32,7 +33,7 @@ public class DefaultQueryParser implements QueryParser {
 	private final InvertedIndex invertedIndex;
 
 	/** Stemmer to use file-wide */
-	private final SnowballStemmer snowballStemmer;
+	private final Stemmer stemmer;
 
 	/** Search {@code Function} that will be dynamically assigned */
 	private Function<Set<String>, List<InvertedIndex.SearchResult>> searchMode;
@@ -43,19 +44,34 @@ public class DefaultQueryParser implements QueryParser {
 	/** Flag to keep track of current search mode */
 	private boolean isExactSearch;
 
+	/** Where results are streamed to instead of the result map, or {@code null} to keep them in memory */
+	private final ResultSpool spool;
+
 	/**
 	 * Constructor that initializes our search result metadata data structure to an empty {@code TreeMap}
 	 * @param invertedIndex - The inverted index object to reference. We are not constructing a new inverted index in this class.
 	 * This inverted index is passed from the caller and is assumed to be properly initialized and populated
+	 * @param spool - Where to stream search results instead of keeping them in memory, or {@code null} to keep them in memory.
+	 * Streamed results are not available from {@link #getSearchResults(String)}.
 	 */
-	public DefaultQueryParser(InvertedIndex invertedIndex) {
+	public DefaultQueryParser(InvertedIndex invertedIndex, ResultSpool spool) {
 		this.invertedIndex = invertedIndex;
-		this.snowballStemmer = new SnowballStemmer(ENGLISH);
+		this.stemmer = StemCache.shared();
 		this.exactSearchResults = new TreeMap<>();
 		this.partialSearchResults = new TreeMap<>();
+		this.spool = spool;
 		setSearchMode(true); // Default to exact search
 	}
 
+	/**
+	 * Constructor that initializes our search result metadata data structure to an empty {@code TreeMap}
+	 * @param invertedIndex - The inverted index object to reference. We are not constructing a new inverted index in this class.
+	 * This inverted index is passed from the caller and is assumed to be properly initialized and populated
+	 */
+	public DefaultQueryParser(InvertedIndex invertedIndex) {
+		this(invertedIndex, null);
+	}
+
 	@Override
 	public final void setSearchMode(boolean isExactSearch) {
 		this.isExactSearch = isExactSearch;
@@ -65,18 +81,65 @@ public class DefaultQueryParser implements QueryParser {
 
 	@Override
 	public void parseLine(String line) {
-		Set<String> queryStems = FileStemmer.uniqueStems(line, this.snowballStemmer);
+		Set<String> queryStems = FileStemmer.uniqueStems(line, this.stemmer);
 		String queryString = QueryParser.extractQueryString(queryStems);
 
-		if (!queryString.isBlank() && !this.resultMap.containsKey(queryString)) {
+		if (this.spool != null) {
+			if (!queryString.isBlank() && this.spool.claim(queryString)) {
+				this.spool.add(queryString, this.searchMode.apply(queryStems));
+			}
+		} else if (!queryString.isBlank() && !this.resultMap.containsKey(queryString)) {
 			List<InvertedIndex.SearchResult> searchResults = this.searchMode.apply(queryStems);
 			this.resultMap.put(queryString, searchResults);
 		}
 	}
 
+	@Override
+	public void parseBatch(List<String> lines) {
+		LinkedHashMap<String, Set<String>> queries = new LinkedHashMap<>();
+
+		for (String line : lines) {
+			Set<String> queryStems = FileStemmer.uniqueStems(line, this.stemmer);
+			String queryString = QueryParser.extractQueryString(queryStems);
+
+			if (queryString.isBlank() || queries.containsKey(queryString)) {
+				continue;
+			}
+
+			if (this.spool != null ? this.spool.claim(queryString) : !this.resultMap.containsKey(queryString)) {
+				queries.put(queryString, queryStems);
+			}
+		}
+
+		List<List<InvertedIndex.SearchResult>> searchResults = this.invertedIndex.batchSearch(new ArrayList<>(queries.values()), this.isExactSearch);
+
+		int i = 0;
+		for (String queryString : queries.keySet()) {
+			if (this.spool != null) {
+				this.spool.add(queryString, searchResults.get(i++));
+			} else {
+				this.resultMap.put(queryString, searchResults.get(i++));
+			}
+		}
+	}
+
 	@Override
 	public void queryJson(Path location) throws IOException {
-		SearchResultWriter.writeSearchResults(this.resultMap, location);
+		writeResults(location, OutputFormat.JSON);
+	}
+
+	@Override
+	public void writeResults(Path location, OutputFormat format) throws IOException {
+		if (this.spool != null) {
+			this.spool.writeTo(location, format);
+			return;
+		}
+
+		switch (format) {
+			case NDJSON -> NdjsonWriter.writeSearchResults(this.resultMap, location);
+			case BINARY -> BinaryWriter.writeSearchResults(this.resultMap, location);
+			default -> SearchResultWriter.writeSearchResults(this.resultMap, location);
+		}
 	}
 
 	@Override
@@ -91,7 +154,7 @@ public class DefaultQueryParser implements QueryParser {
 
 	@Override
 	public List<InvertedIndex.SearchResult> getSearchResults(String queryString) {
-		Set<String> queryStems = FileStemmer.uniqueStems(queryString, this.snowballStemmer);
+		Set<String> queryStems = FileStemmer.uniqueStems(queryString, this.stemmer);
 		String joinedQueryString = QueryParser.extractQueryString(queryStems);
 
 		List<InvertedIndex.SearchResult> searchResults = this.resultMap.get(joinedQueryString);
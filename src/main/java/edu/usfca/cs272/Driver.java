@@ -1,9 +1,11 @@
 package edu.usfca.cs272;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * Class responsible for running this project based on the provided command-line
@@ -66,6 +68,75 @@ public class Driver {
 	/** Default port the web server shoudl use to accept socket connections if no value after the {@code -server} flag was provided. */
 	public static final int DEFAULT_PORT = 8080;
 
+	/** {@code -incremental} flag passed as an argument to this program. Next argument (optional) is the directory where the saved index and manifest of indexed files are kept. Only new or changed files from {@code -text} are indexed. */
+	public static final String INCREMENTAL = "-incremental";
+
+	/** Directory to keep the saved index and manifest in if no value after the {@code -incremental} flag was provided. Will be created in the current working directory. */
+	public static final String INCREMENTAL_BACKUP = ".incremental";
+
+	/** {@code -watch} flag passed as an argument to this program. Requires {@code -incremental} and {@code -text}. Keeps the index up to date with the {@code -text} location while the web server is running. */
+	public static final String WATCH = "-watch";
+
+	/** {@code -checkpoint} flag passed as an argument to this program. Next argument (optional) is the directory where the crawled links, the links waiting to be crawled, and the index built so far are periodically saved during a {@code -html} crawl. */
+	public static final String CHECKPOINT = "-checkpoint";
+
+	/** Directory to save crawl checkpoints in if no value after the {@code -checkpoint} or {@code -resume} flag was provided. Will be created in the current working directory. */
+	public static final String CHECKPOINT_BACKUP = ".crawl";
+
+	/** {@code -resume} flag passed as an argument to this program. Next argument (optional) is the checkpoint directory. Continues the {@code -html} crawl saved there, or starts from the seed URI if there is no checkpoint yet. */
+	public static final String RESUME = "-resume";
+
+	/** {@code -frontier} flag passed as an argument to this program. Next argument is the maximum number of links waiting to be crawled to keep in memory before spilling them to disk. */
+	public static final String FRONTIER = "-frontier";
+
+	/** {@code -inflight} flag passed as an argument to this program. Next argument (optional) is the maximum number of pages the {@code -html} crawl fetches at once without blocking, leaving the worker threads to only process fetched pages. */
+	public static final String IN_FLIGHT = "-inflight";
+
+	/** {@code -pipeline} flag passed as an argument to this program. Next argument (optional) is a comma-separated list of the number of threads that fetch pages, extract their links and text, stem them, and merge them into the index during a {@code -html} crawl, each stage with its own bounded queue. Prints the throughput and queue occupancy of every stage to standard error after the crawl. */
+	public static final String PIPELINE = "-pipeline";
+
+	/** {@code -batch} flag passed as an argument to this program. Next argument is the number of query lines searched together with one scan of the inverted index. */
+	public static final String BATCH = "-batch";
+
+	/** Default number of query lines per batch */
+	public static final int DEFAULT_BATCH = 1000;
+
+	/** {@code -cache} flag passed as an argument to this program. Next argument is the maximum number of search results the web server caches. */
+	public static final String CACHE = "-cache";
+
+	/** {@code -stream} flag passed as an argument to this program. Next argument is the maximum number of formatted query results to keep in memory before spilling them to disk. */
+	public static final String STREAM = "-stream";
+
+	/** {@code -format} flag passed as an argument to this program. Next argument is {@code json}, {@code ndjson}, or {@code binary}, the format of the {@code -index}, {@code -counts}, and {@code -results} output. */
+	public static final String FORMAT = "-format";
+
+	/** {@code -serverconfig} flag passed as an argument to this program. Next argument is a properties file with the web server's thread pool and connector settings. Flags below override the file. */
+	public static final String SERVER_CONFIG = "-serverconfig";
+
+	/** {@code -minthreads} flag passed as an argument to this program. Next argument is the minimum number of threads in the web server's pool. */
+	public static final String MIN_THREADS = "-minthreads";
+
+	/** {@code -maxthreads} flag passed as an argument to this program. Next argument is the maximum number of threads in the web server's pool. */
+	public static final String MAX_THREADS = "-maxthreads";
+
+	/** {@code -virtual} flag passed as an argument to this program. Will trigger handling web server requests with virtual threads. */
+	public static final String VIRTUAL = "-virtual";
+
+	/** {@code -acceptors} flag passed as an argument to this program. Next argument is the number of threads accepting web server connections. */
+	public static final String ACCEPTORS = "-acceptors";
+
+	/** {@code -selectors} flag passed as an argument to this program. Next argument is the number of threads selecting ready web server connections. */
+	public static final String SELECTORS = "-selectors";
+
+	/** {@code -idletimeout} flag passed as an argument to this program. Next argument is the number of milliseconds a web server connection or pooled thread may stay idle. */
+	public static final String IDLE_TIMEOUT = "-idletimeout";
+
+	/** {@code -acceptqueue} flag passed as an argument to this program. Next argument is the number of web server connections that may wait to be accepted. */
+	public static final String ACCEPT_QUEUE = "-acceptqueue";
+
+	/** {@code -gzip} flag passed as an argument to this program. Will trigger gzipping web server responses. Next argument (optional) is the smallest response in bytes to gzip. */
+	public static final String GZIP = "-gzip";
+
 	/**
 	 * Initializes the classes necessary based on the provided command-line
 	 * arguments. This includes (but is not limited to) how to build or search an
@@ -81,32 +152,78 @@ public class Driver {
 		QueryParser queryParser;
 		WebCrawler crawler = null;
 		SearchEngine searchEngine = null;
+		IncrementalIndexer incrementalIndexer = null;
 
 		Path location;
+		Path checkpoint = null;
+		OutputFormat format;
+
+		try {
+			format = OutputFormat.of(argParser.getString(FORMAT), OutputFormat.JSON);
+		} catch (IllegalArgumentException e) {
+			System.err.printf("Unknown output format: %s. Writing JSON instead.\n", argParser.getString(FORMAT));
+			format = OutputFormat.JSON;
+		}
+
+		ResultSpool spool = null;
+		if (argParser.hasFlag(STREAM)) {
+			spool = new ResultSpool(format, argParser.getInteger(STREAM, ResultSpool.DEFAULT_MEMORY_LIMIT), null);
+		}
 
 		if (argParser.hasFlag(THREAD) || argParser.hasFlag(HTML) || argParser.hasFlag(SERVER)) {
 			workQueue = new WorkQueue(argParser.getInteger(THREAD, NUM_THREADS));
+			Metrics.shared().gauge("work_queue_pending", workQueue::pending);
 			ThreadSafeInvertedIndex safeIndex = new ThreadSafeInvertedIndex();
 			invertedIndex = safeIndex;
 			textFileIndexer = new ThreadSafeTextFileIndexer(safeIndex, workQueue);
-			queryParser = new ThreadSafeQueryParser(safeIndex, workQueue);
+			queryParser = new ThreadSafeQueryParser(safeIndex, workQueue, spool);
 
 			if (argParser.hasFlag(HTML)) {
-				crawler = new WebCrawler(safeIndex, workQueue);
+				if (argParser.hasFlag(CHECKPOINT) || argParser.hasFlag(RESUME)) {
+					checkpoint = argParser.getPath(CHECKPOINT, argParser.getPath(RESUME, Path.of(CURR_DIR, CHECKPOINT_BACKUP)));
+				}
+
+				int inFlight = argParser.hasFlag(IN_FLIGHT) ? Math.max(1, argParser.getInteger(IN_FLIGHT, WebCrawler.DEFAULT_IN_FLIGHT)) : 0;
+				crawler = new WebCrawler(safeIndex, workQueue, checkpoint, argParser.getInteger(FRONTIER, CrawlFrontier.DEFAULT_MEMORY_LIMIT), inFlight);
+
+				if (argParser.hasFlag(PIPELINE)) {
+					String stages = argParser.getString(PIPELINE, WebCrawler.DEFAULT_STAGES);
+					try {
+						crawler.setStages(parseStages(stages), WebCrawler.DEFAULT_STAGE_CAPACITY);
+					} catch (IllegalArgumentException e) {
+						System.err.printf("Invalid pipeline stages: %s. Using %s instead.\n", stages, WebCrawler.DEFAULT_STAGES);
+						crawler.setStages(parseStages(WebCrawler.DEFAULT_STAGES), WebCrawler.DEFAULT_STAGE_CAPACITY);
+					}
+				}
 			}
 			if (argParser.hasFlag(SERVER)) {
-				searchEngine = new SearchEngine(safeIndex, argParser.getInteger(SERVER, DEFAULT_PORT));
+				searchEngine = new SearchEngine(safeIndex, argParser.getInteger(SERVER, DEFAULT_PORT), argParser.getInteger(CACHE, (int) SearchCache.DEFAULT_MAX_WEIGHT), getServerConfig(argParser));
 			}
 		} else {
 			invertedIndex = new InvertedIndex();
 			textFileIndexer = new TextFileIndexer(invertedIndex);
-			queryParser = new DefaultQueryParser(invertedIndex);
+			queryParser = new DefaultQueryParser(invertedIndex, spool);
+		}
+
+		if (argParser.hasFlag(INCREMENTAL)) {
+			location = argParser.getPath(INCREMENTAL, Path.of(CURR_DIR, INCREMENTAL_BACKUP));
+			incrementalIndexer = new IncrementalIndexer(invertedIndex, textFileIndexer, location);
+			try {
+				incrementalIndexer.load();
+			} catch (IOException e) {
+				System.err.printf("Unable to load the saved index from location: %s\n", location);
+			}
 		}
 
 		if (argParser.hasFlag(TEXT)) {
 			location = argParser.getPath(TEXT);
 			try {
-				textFileIndexer.indexLocation(location);
+				if (incrementalIndexer != null) {
+					incrementalIndexer.update(location);
+					incrementalIndexer.save();
+				} else {
+					textFileIndexer.indexLocation(location);
+				}
 			} catch (IOException e) {
 				System.err.printf("Unable to index the files from location: %s\n", location);
 			} catch (NullPointerException e) {
@@ -119,7 +236,19 @@ public class Driver {
 			int maxCrawls = argParser.getInteger(CRAWL, DEFAULT_CRAWL);
 			try {
 				URI seedURI = LinkFinder.toUri(seed);
-				crawler.crawl(seedURI, maxCrawls);
+				if (!argParser.hasFlag(RESUME) || !crawler.resume(maxCrawls)) {
+					crawler.crawl(seedURI, maxCrawls);
+				}
+
+				if (argParser.hasFlag(PIPELINE)) {
+					System.err.print(crawler.getStageStats());
+				}
+			} catch (IOException | UncheckedIOException e) {
+				if (argParser.hasFlag(RESUME)) {
+					System.err.printf("Unable to resume the crawl from its checkpoint in %s: %s\n", checkpoint, e.getMessage());
+				} else {
+					System.err.printf("Unable to crawl from %s: %s\n", seed, e.getMessage());
+				}
 			} catch (URISyntaxException e) {
 				System.err.printf("Unable to create web crawler from %s\n", seed);
 			} catch (NullPointerException e) {
@@ -131,7 +260,11 @@ public class Driver {
 			location = argParser.getPath(QUERY);
 			try {
 				queryParser.setSearchMode(!argParser.hasFlag(PARTIAL));
-				queryParser.parseLocation(location);
+				if (argParser.hasFlag(BATCH)) {
+					queryParser.parseLocation(location, Math.max(1, argParser.getInteger(BATCH, DEFAULT_BATCH)));
+				} else {
+					queryParser.parseLocation(location);
+				}
 			} catch (IOException e) {
 				System.err.printf("Unable to read search queries from location: %s\n", location);
 			} catch (NullPointerException e) {
@@ -139,14 +272,10 @@ public class Driver {
 			}
 		}
 
-		if (workQueue != null) {
-			workQueue.shutdown();
-		}
-
 		if (argParser.hasFlag(COUNTS)) {
 			location = argParser.getPath(COUNTS, Path.of(CURR_DIR, COUNTS_BACKUP));
 			try {
-				invertedIndex.indexCounts(location);
+				invertedIndex.writeCounts(location, format);
 			} catch (IOException e) {
 				System.err.printf("Unable to write word counts to location: %s\n", location);
 			}
@@ -155,7 +284,11 @@ public class Driver {
 		if (argParser.hasFlag(INDEX)) {
 			location = argParser.getPath(INDEX, Path.of(CURR_DIR, INDEX_BACKUP));
 			try {
-				invertedIndex.indexJson(location);
+				if (format == OutputFormat.JSON && workQueue != null) {
+					invertedIndex.indexJson(location, workQueue);
+				} else {
+					invertedIndex.writeIndex(location, format);
+				}
 			} catch (IOException e) {
 				System.err.printf("Unable to write inverted index to location: %s\n", location);
 			}
@@ -164,12 +297,32 @@ public class Driver {
 		if (argParser.hasFlag(RESULTS)) {
 			location = argParser.getPath(RESULTS, Path.of(CURR_DIR, RESULTS_BACKUP));
 			try {
-				queryParser.queryJson(location);
+				queryParser.writeResults(location, format);
 			} catch (IOException e) {
 				System.err.printf("Unable to write search results to location: %s\n", location);
 			}
 		}
 
+		if (spool != null) {
+			spool.close();
+		}
+
+		boolean watching = incrementalIndexer != null && argParser.hasFlag(WATCH) && argParser.hasFlag(SERVER);
+
+		// The watcher still needs the work queue to index changed files
+		if (workQueue != null && !watching) {
+			workQueue.shutdown();
+		}
+
+		if (watching) {
+			location = argParser.getPath(TEXT);
+			try {
+				incrementalIndexer.watch(location);
+			} catch (IOException | NullPointerException e) {
+				System.err.printf("Unable to watch location: %s\n", location);
+			}
+		}
+
 		if (argParser.hasFlag(SERVER)) {
 			try {
 				searchEngine.launchServer();
@@ -182,4 +335,56 @@ public class Driver {
 			workQueue.join();
 		}
 	}
+
+	/**
+	 * Parses the comma-separated thread counts of the {@code -pipeline} stages
+	 * @param stages The thread counts, such as {@code 8,2,2,1}
+	 * @return The thread counts of the fetch, extract, stem, and merge stages
+	 * @throws IllegalArgumentException If there are not four positive integers
+	 */
+	private static int[] parseStages(String stages) throws IllegalArgumentException {
+		int[] threads = Arrays.stream(stages.split(",")).map(String::strip).mapToInt(Integer::parseInt).toArray();
+		if (threads.length != 4 || Arrays.stream(threads).anyMatch(count -> count <= 0)) {
+			throw new IllegalArgumentException(stages);
+		}
+
+		return threads;
+	}
+
+	/**
+	 * Reads the web server settings from the {@code -serverconfig} file, if there is one,
+	 * and then from the individual server flags
+	 * @param argParser The parsed command-line arguments
+	 * @return The web server settings
+	 */
+	private static ServerConfig getServerConfig(ArgumentParser argParser) {
+		ServerConfig config = new ServerConfig();
+
+		if (argParser.hasFlag(SERVER_CONFIG)) {
+			Path location = argParser.getPath(SERVER_CONFIG);
+			try {
+				config = ServerConfig.load(location);
+			} catch (IOException | IllegalArgumentException | NullPointerException e) {
+				System.err.printf("Unable to read server settings from: %s. Using the defaults instead.\n", location);
+			}
+		}
+
+		config.setMinThreads(argParser.getInteger(MIN_THREADS, config.getMinThreads()));
+		config.setMaxThreads(argParser.getInteger(MAX_THREADS, config.getMaxThreads()));
+		config.setAcceptors(argParser.getInteger(ACCEPTORS, config.getAcceptors()));
+		config.setSelectors(argParser.getInteger(SELECTORS, config.getSelectors()));
+		config.setIdleTimeout(argParser.getInteger(IDLE_TIMEOUT, config.getIdleTimeout()));
+		config.setAcceptQueueSize(argParser.getInteger(ACCEPT_QUEUE, config.getAcceptQueueSize()));
+
+		if (argParser.hasFlag(VIRTUAL)) {
+			config.setVirtualThreads(true);
+		}
+
+		if (argParser.hasFlag(GZIP)) {
+			config.setGzip(true);
+			config.setGzipMinSize(argParser.getInteger(GZIP, config.getGzipMinSize()));
+		}
+
+		return config;
+	}
 }
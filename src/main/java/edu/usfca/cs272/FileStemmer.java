@@ -15,12 +15,11 @@ import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 /**
  * Utility class for parsing, cleaning, and stemming text and text files into
- * collections of processed words.
+ * collections of processed words. Methods that use the default stemmer for
+ * English look stems up in the shared {@link StemCache}.
  *
  * @author Shyon Ghahghahi
  * @author CS 272 Software Development (University of San Francisco)
@@ -113,7 +112,7 @@ public class FileStemmer {
 	 * @return a list of cleaned and stemmed words in parsed order
 	 */
 	public static ArrayList<String> listStems(String line) {
-		return listStems(line, new SnowballStemmer(ENGLISH));
+		return listStems(line, StemCache.shared());
 	}
 
 	/**
@@ -126,12 +125,12 @@ public class FileStemmer {
 	 */
 	public static ArrayList<String> listStems(Path input) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
-			final SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
+			final Stemmer stemmer = StemCache.shared();
 			final ArrayList<String> stems = new ArrayList<>();
 
 			String line = null;
 			while ((line = reader.readLine()) != null) {
-				addStems(line, snowballStemmer, stems);
+				addStems(line, stemmer, stems);
 			}
 
 			return stems;
@@ -160,7 +159,7 @@ public class FileStemmer {
 	 * @return a sorted set of unique cleaned and stemmed words
 	 */
 	public static TreeSet<String> uniqueStems(String line) {
-		return uniqueStems(line, new SnowballStemmer(ENGLISH));
+		return uniqueStems(line, StemCache.shared());
 	}
 
 	/**
@@ -173,12 +172,12 @@ public class FileStemmer {
 	 */
 	public static TreeSet<String> uniqueStems(Path input) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
-			final SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
+			final Stemmer stemmer = StemCache.shared();
 			final TreeSet<String> stems = new TreeSet<>();
 
 			String line = null;
 			while ((line = reader.readLine()) != null) {
-				addStems(line, snowballStemmer, stems);
+				addStems(line, stemmer, stems);
 			}
 
 			return stems;
@@ -197,13 +196,13 @@ public class FileStemmer {
 	 */
 	public static ArrayList<TreeSet<String>> listUniqueStems(Path input) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
-			final SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
+			final Stemmer stemmer = StemCache.shared();
 			final ArrayList<TreeSet<String>> stems = new ArrayList<>();
 
 			String line = null;
 			while ((line = reader.readLine()) != null) {
 				stems.add(
-					uniqueStems(line, snowballStemmer)
+					uniqueStems(line, stemmer)
 				);
 			}
 
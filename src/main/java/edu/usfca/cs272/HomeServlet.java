@@ -1,8 +1,6 @@
 package edu.usfca.cs272;
 
 import java.io.IOException;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import java.nio.file.Files;
 
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -10,6 +8,8 @@ import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * Servlet responsible for serving the home page.
+ * The page is served from memory, gzipped if the client accepts it, and can be
+ * revalidated with its entity tag.
  *
  * @author Shyon Ghahghahi
  * @version Fall 2024
@@ -17,15 +17,91 @@ import jakarta.servlet.http.HttpServletResponse;
 public class HomeServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 
-	/** Empty constructor is necessary to add this servlet to the server's handler. */
-	public HomeServlet() {}
+	/** How long clients may reuse the home page before revalidating it */
+	private static final String CACHE_CONTROL = "public, max-age=300";
+
+	/**
+	 * The preloaded HTML pages.
+	 * Marked as {@code transient} because this member does not need to be persisted if the servlet is serialized.
+	 */
+	private final transient HtmlTemplates templates;
+
+	/**
+	 * Constructs a {@code HomeServlet} that serves the preloaded home page
+	 * @param templates The preloaded HTML pages
+	 */
+	public HomeServlet(HtmlTemplates templates) {
+		this.templates = templates;
+	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		String html = Files.readString(SearchEngine.template.resolve("index.html"), UTF_8);
+		boolean gzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+		String tag = this.templates.getHomeTag(gzip);
+
+		response.setHeader("Cache-Control", CACHE_CONTROL);
+		response.setHeader("ETag", tag);
+		response.setHeader("Vary", "Accept-Encoding");
 
-		response.setContentType("text/html");
+		if (matches(request.getHeader("If-None-Match"), tag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		byte[] html = this.templates.getHome(gzip);
+
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+		}
+
+		response.setContentType("text/html; charset=UTF-8");
+		response.setContentLength(html.length);
 		response.setStatus(HttpServletResponse.SC_OK);
-		response.getWriter().println(html);
+		response.getOutputStream().write(html);
+	}
+
+	/**
+	 * Checks whether an {@code Accept-Encoding} header allows a gzipped response
+	 * @param acceptEncoding The header value, or {@code null}
+	 * @return {@code true} if gzip is accepted
+	 */
+	private static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				return parts.length == 1 || !parts[1].replace(" ", "").equals("q=0");
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether an {@code If-None-Match} header matches an entity tag
+	 * @param ifNoneMatch The header value, or {@code null}
+	 * @param tag The quoted entity tag
+	 * @return {@code true} if the client already has this version
+	 */
+	private static boolean matches(String ifNoneMatch, String tag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+
+			if (candidate.equals("*") || candidate.equals(tag)) {
+				return true;
+			}
+		}
+
+		return false;
 	}
 }
@@ -2,15 +2,20 @@ package edu.usfca.cs272;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -23,6 +28,9 @@ import java.util.stream.Collectors;
  * @version Fall 2024
  */
 public class HtmlFetcher {
+	/** Most bytes of an unwanted response body read to keep its connection open */
+	private static final long DRAIN_LIMIT = 1 << 16;
+
 	/**
 	 * Returns {@code true} if and only if there is a "content-type" header (assume
 	 * lowercase) and the first value of that header starts with the value
@@ -63,6 +71,7 @@ public class HtmlFetcher {
 
 		int firstSpace = statusLine.indexOf(" ");
 		int secondSpace = statusLine.indexOf(" ", firstSpace + 1);
+		secondSpace = secondSpace < 0 ? statusLine.length() : secondSpace;
 
 		// HTTP specification says the status code comes immediately after the HTTP version in the status line
 		// Ex: 'HTTP/1.1 200 OK'
@@ -100,7 +109,23 @@ public class HtmlFetcher {
 	}
 
 	/**
-	 * Efficiently fetches HTML using HTTP/1.1 and sockets.
+	 * Efficiently fetches HTML using HTTP/1.1 and keep-alive sockets from the
+	 * {@link ConnectionPool#shared() shared connection pool}.
+	 *
+	 * @param uri the URI to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @return the HTML or {@code null} if unable to fetch valid HTML
+	 *
+	 * @see #fetch(URI, int, ConnectionPool)
+	 */
+	public static String fetch(URI uri, int redirects) {
+		return fetch(uri, redirects, ConnectionPool.shared());
+	}
+
+	/**
+	 * Efficiently fetches HTML using HTTP/1.1 and keep-alive sockets borrowed from
+	 * the connection pool, so every page and redirect on the same host reuses the
+	 * same connections.
 	 *
 	 * <p>
 	 * The HTTP body will only be fetched and processed if the status code is 200
@@ -108,10 +133,11 @@ public class HtmlFetcher {
 	 * single joined String using the {@link System#lineSeparator}.
 	 *
 	 * <p>
-	 * Otherwise, the HTTP body will not be fetched. However, if the status code is
-	 * a redirect, then the location of the redirect will be recursively followed up
-	 * to the specified number of times. Once the number of redirects falls to 0 or
-	 * lower, then redirects will no longer be followed.
+	 * Otherwise, the HTTP body will not be kept, and is only read if it is short
+	 * enough that reading it is cheaper than opening a new connection. However, if
+	 * the status code is a redirect, then the location of the redirect will be
+	 * followed up to the specified number of times. Once the number of redirects
+	 * falls to 0 or lower, then redirects will no longer be followed.
 	 *
 	 * <p>
 	 * If valid HTML cannot be fetched within the specified number of redirects,
@@ -119,11 +145,12 @@ public class HtmlFetcher {
 	 *
 	 * @param uri the URI to fetch
 	 * @param redirects the number of times to follow redirects
+	 * @param pool the pool to borrow connections from
 	 * @return the HTML or {@code null} if unable to fetch valid HTML
 	 *
-	 * @see HttpsFetcher#openConnection(URI)
-	 * @see HttpsFetcher#printGetRequest(PrintWriter, URI)
-	 * @see HttpsFetcher#processHttpHeaders(BufferedReader)
+	 * @see HttpsFetcher#printGetRequest(PrintWriter, URI, boolean)
+	 * @see HttpsFetcher#readHttpHeaders(InputStream)
+	 * @see HttpsFetcher#readBody(InputStream, Map)
 	 *
 	 * @see String#join(CharSequence, CharSequence...)
 	 * @see System#lineSeparator()
@@ -131,35 +158,151 @@ public class HtmlFetcher {
 	 * @see #isHtml(Map)
 	 * @see #getRedirect(Map)
 	 */
-	public static String fetch(URI uri, int redirects) {
-		String html = null;
-
-		try (
-				Socket socket = HttpsFetcher.openConnection(uri);
-				PrintWriter request = new PrintWriter(socket.getOutputStream());
-				InputStreamReader input = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-				BufferedReader response = new BufferedReader(input);
-		) {
-
-			HttpsFetcher.printGetRequest(request, uri);
-			Map<String, List<String>> headers = HttpsFetcher.processHttpHeaders(response);
-			int statusCode = getStatusCode(headers);
-
-			if (statusCode == 200 && isHtml(headers)) {
-				html = response.lines()
-					.collect(Collectors.joining(System.lineSeparator()));
-			} else {
-				String redirectLocation = getRedirect(headers);
-				if (redirectLocation != null && redirects > 0) {
-					html = fetch(redirectLocation, redirects - 1);
+	public static String fetch(URI uri, int redirects, ConnectionPool pool) {
+		try {
+			while (uri != null) {
+				ConnectionPool.Connection connection = pool.acquire(uri);
+				String redirectLocation = null;
+
+				try {
+					Map<String, List<String>> headers;
+					try {
+						headers = request(connection, uri);
+					} catch (IOException e) {
+						if (!connection.isReused()) {
+							throw e;
+						}
+
+						// The server may have closed the idle connection, so retry once on a new one
+						connection.close();
+						connection = pool.acquire(uri, false);
+						headers = request(connection, uri);
+					}
+
+					InputStream response = connection.getInputStream();
+					int statusCode = getStatusCode(headers);
+					boolean reusable = HttpsFetcher.isReusable(headers);
+
+					if (statusCode == 200 && isHtml(headers)) {
+						String body = new String(HttpsFetcher.readBody(response, headers), StandardCharsets.UTF_8);
+						if (reusable) {
+							connection.release();
+						}
+
+						return joinLines(body);
+					}
+
+					if (reusable && HttpsFetcher.skipBody(response, headers, DRAIN_LIMIT)) {
+						connection.release();
+					}
+
+					redirectLocation = getRedirect(headers);
+				} finally {
+					// Closes the connection unless it was released back to the pool
+					connection.close();
+				}
+
+				if (redirectLocation == null || redirects <= 0) {
+					return null;
 				}
+
+				// Followed after the connection is returned, so a redirect to the same host can reuse it
+				uri = uri.resolve(redirectLocation);
+				redirects--;
 			}
 		}
-		catch (IOException e) {
-			html = null;
+		catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Fetches HTML without blocking using the {@link HttpClient}, with the same
+	 * results as {@link #fetch(URI, int)}. The body is only kept if the status code
+	 * is 200 and the content-type is HTML, and redirects are followed up to the
+	 * specified number of times. The client must not follow redirects itself.
+	 *
+	 * <p>
+	 * The returned future never completes exceptionally; it completes with
+	 * {@code null} if valid HTML cannot be fetched within the number of redirects.
+	 *
+	 * @param client the client to send the requests with
+	 * @param uri the URI to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @return a future of the HTML or {@code null} if unable to fetch valid HTML
+	 *
+	 * @see HttpClient#sendAsync(HttpRequest, HttpResponse.BodyHandler)
+	 * @see #fetch(URI, int)
+	 */
+	public static CompletableFuture<String> fetchAsync(HttpClient client, URI uri, int redirects) {
+		try {
+			HttpRequest request = HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMillis(ConnectionPool.TIMEOUT_MILLIS))
+				.GET()
+				.build();
+
+			return client.sendAsync(request, HtmlFetcher::htmlBody)
+				.thenCompose(response -> {
+					if (response.body() != null) {
+						return CompletableFuture.completedFuture(joinLines(response.body()));
+					}
+
+					int statusCode = response.statusCode();
+					String redirectLocation = statusCode >= 300 && statusCode <= 399 ? response.headers().firstValue("location").orElse(null) : null;
+					if (redirectLocation == null || redirects <= 0) {
+						return CompletableFuture.completedFuture(null);
+					}
+
+					return fetchAsync(client, uri.resolve(redirectLocation), redirects - 1);
+				})
+				.exceptionally(e -> null);
+		}
+		catch (IllegalArgumentException e) {
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	/**
+	 * Decodes the body of a response as a {@link String} if the status code is 200
+	 * and the content-type is HTML, and otherwise discards it
+	 *
+	 * @param response the status code and headers of the response
+	 * @return the subscriber of the body, which produces {@code null} if discarded
+	 */
+	private static HttpResponse.BodySubscriber<String> htmlBody(HttpResponse.ResponseInfo response) {
+		// The map of the headers ignores case, so it works with isHtml
+		if (response.statusCode() == 200 && isHtml(response.headers().map())) {
+			return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
 		}
 
-		return html;
+		return HttpResponse.BodySubscribers.replacing(null);
+	}
+
+	/**
+	 * Joins the lines of the body with the {@link System#lineSeparator()}, the same
+	 * way as reading the lines of the response would
+	 *
+	 * @param body the body
+	 * @return the joined lines
+	 */
+	private static String joinLines(String body) {
+		return body.lines().collect(Collectors.joining(System.lineSeparator()));
+	}
+
+	/**
+	 * Sends a GET request over a pooled connection and reads the response headers
+	 *
+	 * @param connection the connection
+	 * @param uri the URI to fetch
+	 * @return the response headers
+	 * @throws IOException if unable to write the request or read the headers
+	 */
+	private static Map<String, List<String>> request(ConnectionPool.Connection connection, URI uri) throws IOException {
+		PrintWriter request = new PrintWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+		HttpsFetcher.printGetRequest(request, uri, true);
+		return HttpsFetcher.readHttpHeaders(connection.getInputStream());
 	}
 
 	/**
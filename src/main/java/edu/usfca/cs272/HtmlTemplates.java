@@ -0,0 +1,167 @@
+package edu.usfca.cs272;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The HTML pages of the search engine, read once when the server starts and kept
+ * as UTF-8 bytes so that requests never read a template file or encode its text.
+ * The home page is also kept gzipped, with an entity tag for each variant.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class HtmlTemplates {
+	/** What comes before the location of a search result */
+	private static final byte[] ROW_START = "<a href=\"".getBytes(UTF_8);
+
+	/** What comes between the link and the text of a search result */
+	private static final byte[] ROW_MIDDLE = "\" class=\"list-group-item list-group-item-action\">".getBytes(UTF_8);
+
+	/** What comes after the text of a search result */
+	private static final byte[] ROW_END = "</a>".getBytes(UTF_8);
+
+	/** The home page */
+	private final byte[] home;
+
+	/** The gzipped home page */
+	private final byte[] homeGzip;
+
+	/** Entity tag of the home page */
+	private final String homeTag;
+
+	/** Entity tag of the gzipped home page */
+	private final String homeGzipTag;
+
+	/** The search results page up to the first search result */
+	private final byte[] searchTop;
+
+	/** The search results page after the last search result */
+	private final byte[] searchBottom;
+
+	/**
+	 * Reads the templates from a directory
+	 * @param directory The directory containing {@code index.html}, {@code searchTop.html}, and {@code searchBottom.html}
+	 * @throws IOException If a template cannot be read
+	 */
+	public HtmlTemplates(Path directory) throws IOException {
+		this.home = Files.readAllBytes(directory.resolve("index.html"));
+		this.searchTop = Files.readAllBytes(directory.resolve("searchTop.html"));
+		this.searchBottom = Files.readAllBytes(directory.resolve("searchBottom.html"));
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(this.home);
+		}
+
+		this.homeGzip = compressed.toByteArray();
+		this.homeTag = entityTag(this.home, "");
+		this.homeGzipTag = entityTag(this.home, "-gzip");
+	}
+
+	/**
+	 * Returns a strong entity tag derived from the contents
+	 * @param bytes The contents
+	 * @param suffix Distinguishes encodings of the same contents
+	 * @return The quoted entity tag
+	 */
+	private static String entityTag(byte[] bytes, String suffix) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return String.format("\"%08x-%x%s\"", crc.getValue(), bytes.length, suffix);
+	}
+
+	/**
+	 * Returns the home page
+	 * @param gzip Whether to return the gzipped home page
+	 * @return The home page, which must not be modified
+	 */
+	public byte[] getHome(boolean gzip) {
+		return gzip ? this.homeGzip : this.home;
+	}
+
+	/**
+	 * Returns the entity tag of the home page
+	 * @param gzip Whether to return the tag of the gzipped home page
+	 * @return The quoted entity tag
+	 */
+	public String getHomeTag(boolean gzip) {
+		return gzip ? this.homeGzipTag : this.homeTag;
+	}
+
+	/**
+	 * Writes the search results page up to the first search result
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeSearchTop(OutputStream output) throws IOException {
+		output.write(this.searchTop);
+	}
+
+	/**
+	 * Writes a search result as a link to its location
+	 * @param location The location of the search result
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeSearchRow(String location, OutputStream output) throws IOException {
+		byte[] encoded = location.getBytes(UTF_8);
+		output.write(ROW_START);
+		output.write(encoded);
+		output.write(ROW_MIDDLE);
+		output.write(encoded);
+		output.write(ROW_END);
+	}
+
+	/**
+	 * Writes links to the previous and next pages of search results, if there are any
+	 * @param query The query as the user typed it
+	 * @param page The current page, starting at 1
+	 * @param size The number of results on a page
+	 * @param hasNext Whether there are results after the current page
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeSearchPager(String query, int page, int size, boolean hasNext, OutputStream output) throws IOException {
+		String encoded = URLEncoder.encode(query, UTF_8);
+		StringBuilder pager = new StringBuilder();
+
+		if (page > 1) {
+			pager.append(String.format("<a href=\"/search?q=%s&amp;page=%d&amp;size=%d\" class=\"list-group-item list-group-item-action text-center\">Previous page</a>", encoded, page - 1, size));
+		}
+
+		if (hasNext) {
+			pager.append(String.format("<a href=\"/search?q=%s&amp;page=%d&amp;size=%d\" class=\"list-group-item list-group-item-action text-center\">Next page</a>", encoded, page + 1, size));
+		}
+
+		output.write(pager.toString().getBytes(UTF_8));
+	}
+
+	/**
+	 * Writes the search results page after the last search result
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeSearchBottom(OutputStream output) throws IOException {
+		output.write(this.searchBottom);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"HTML templates have a %d byte home page (%d gzipped) and a %d byte search page.",
+			this.home.length,
+			this.homeGzip.length,
+			this.searchTop.length + this.searchBottom.length
+		);
+	}
+}
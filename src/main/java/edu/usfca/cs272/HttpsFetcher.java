@@ -3,8 +3,12 @@ package edu.usfca.cs272;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.Socket;
@@ -34,6 +38,9 @@ import javax.net.ssl.SSLSocketFactory;
  * @version Fall 2024
  */
 public class HttpsFetcher {
+	/** Maximum number of characters of a status line, header line, or chunk size line */
+	private static final int MAX_LINE = 1 << 16;
+
 	/**
 	 * Fetches the headers and content for the specified URI. The content is placed
 	 * as a list of all the lines fetched under the "Content" key.
@@ -102,12 +109,32 @@ public class HttpsFetcher {
 	 * @see Builder#GET()
 	 */
 	public static void printGetRequest(PrintWriter writer, URI uri) throws IOException {
-		String host = uri.getHost();
-		String resource = Objects.requireNonNullElse(uri.getPath(), "/");
+		printGetRequest(writer, uri, false);
+	}
+
+	/**
+	 * Writes a simple HTTP v1.1 GET request to the provided socket writer, asking the
+	 * server to either keep the connection open for another request or to close it.
+	 * The request line keeps the query of the URI, and the host header keeps its port.
+	 *
+	 * @param writer a writer created from a socket connection
+	 * @param uri the URI to fetch via the socket connection
+	 * @param keepAlive whether to ask the server to keep the connection open
+	 * @throws IOException if unable to write request to socket
+	 *
+	 * @see #isReusable(Map)
+	 */
+	public static void printGetRequest(PrintWriter writer, URI uri, boolean keepAlive) throws IOException {
+		String host = uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+		String path = Objects.requireNonNullElse(uri.getRawPath(), "");
+		String resource = path.isEmpty() ? "/" : path;
+		if (uri.getRawQuery() != null) {
+			resource += "?" + uri.getRawQuery();
+		}
 
 		writer.printf("GET %s HTTP/1.1\r\n", resource);
 		writer.printf("Host: %s\r\n", host);
-		writer.printf("Connection: close\r\n");
+		writer.printf("Connection: %s\r\n", keepAlive ? "keep-alive" : "close");
 		writer.printf("\r\n");
 		writer.flush();
 	}
@@ -144,6 +171,254 @@ public class HttpsFetcher {
 		return results;
 	}
 
+	/**
+	 * Gets the header fields of a response from the input stream of a socket
+	 * connection, reading exactly up to the end of the headers so the body can be
+	 * read from the same stream. Interim 1xx responses are skipped. The map has the
+	 * same form as {@link #processHttpHeaders(BufferedReader)}.
+	 *
+	 * @param response the buffered input stream of a socket connection
+	 * @return a map of header fields to a list of header values
+	 * @throws EOFException if the connection was closed before the status line
+	 * @throws IOException if unable to read from socket
+	 *
+	 * @see #readBody(InputStream, Map)
+	 */
+	public static Map<String, List<String>> readHttpHeaders(InputStream response) throws IOException {
+		Map<String, List<String>> results;
+
+		do {
+			results = new HashMap<>();
+			String line = readLine(response);
+			if (line == null) {
+				throw new EOFException("Connection closed before the status line");
+			}
+
+			results.put(null, List.of(line));
+
+			while ((line = readLine(response)) != null && !line.isBlank()) {
+				int colon = line.indexOf(':');
+				if (colon > 0) {
+					String key = line.substring(0, colon).strip().toLowerCase();
+					results.computeIfAbsent(key, x -> new ArrayList<>()).add(line.substring(colon + 1).strip());
+				}
+			}
+		} while (HtmlFetcher.getStatusCode(results) / 100 == 1);
+
+		return results;
+	}
+
+	/**
+	 * Reads the complete body of a response whose headers were read with
+	 * {@link #readHttpHeaders(InputStream)}. The end of the body is found from the
+	 * chunked transfer coding or the content length, or else it is the end of the stream.
+	 *
+	 * @param response the buffered input stream of a socket connection
+	 * @param headers the headers of the response
+	 * @return the bytes of the body
+	 * @throws IOException if unable to read from socket or the body is malformed
+	 */
+	public static byte[] readBody(InputStream response, Map<String, List<String>> headers) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		transferBody(response, headers, body, Long.MAX_VALUE);
+		return body.toByteArray();
+	}
+
+	/**
+	 * Reads and discards the body of a response whose headers were read with
+	 * {@link #readHttpHeaders(InputStream)}, if it is no longer than the limit and its
+	 * end can be found without the connection closing.
+	 *
+	 * @param response the buffered input stream of a socket connection
+	 * @param headers the headers of the response
+	 * @param limit the maximum number of bytes to discard
+	 * @return {@code true} if the whole body was discarded
+	 * @throws IOException if unable to read from socket or the body is malformed
+	 */
+	public static boolean skipBody(InputStream response, Map<String, List<String>> headers, long limit) throws IOException {
+		return transferBody(response, headers, OutputStream.nullOutputStream(), limit);
+	}
+
+	/**
+	 * Returns whether the connection a response was read from may be used for another
+	 * request once the body has been read: the server did not ask to close it, and the
+	 * end of the body can be found without the connection closing.
+	 *
+	 * @param headers the headers of the response (keys must be lowercase)
+	 * @return {@code true} if the connection may be reused
+	 */
+	public static boolean isReusable(Map<String, List<String>> headers) {
+		String status = headers.get(null).getFirst();
+		String connection = String.join(",", headers.getOrDefault("connection", List.of())).toLowerCase();
+
+		// HTTP/1.1 connections stay open unless closed, and HTTP/1.0 ones close unless kept alive
+		boolean keepAlive = status.startsWith("HTTP/1.0") ? connection.contains("keep-alive") : !connection.contains("close");
+		return keepAlive && (!hasBody(headers) || isChunked(headers) || getContentLength(headers) >= 0);
+	}
+
+	/**
+	 * Returns whether the response has a body, which responses to a GET request do
+	 * unless their status is 1xx, 204, or 304
+	 *
+	 * @param headers the headers of the response
+	 * @return {@code true} if the response has a body
+	 */
+	private static boolean hasBody(Map<String, List<String>> headers) {
+		int statusCode = HtmlFetcher.getStatusCode(headers);
+		return statusCode / 100 != 1 && statusCode != 204 && statusCode != 304;
+	}
+
+	/**
+	 * Returns whether the last transfer coding of the response is chunked
+	 *
+	 * @param headers the headers of the response (keys must be lowercase)
+	 * @return {@code true} if the body is chunked
+	 */
+	private static boolean isChunked(Map<String, List<String>> headers) {
+		List<String> codings = headers.get("transfer-encoding");
+		return codings != null && !codings.isEmpty() && codings.getLast().toLowerCase().strip().endsWith("chunked");
+	}
+
+	/**
+	 * Parses the content length of the response
+	 *
+	 * @param headers the headers of the response (keys must be lowercase)
+	 * @return the content length or -1 if missing or invalid
+	 */
+	private static long getContentLength(Map<String, List<String>> headers) {
+		List<String> lengths = headers.get("content-length");
+		if (lengths == null || lengths.isEmpty()) {
+			return -1;
+		}
+
+		try {
+			return Math.max(-1, Long.parseLong(lengths.getFirst().strip()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Copies the body of a response to the sink, if it is no longer than the limit
+	 *
+	 * @param response the buffered input stream of a socket connection
+	 * @param headers the headers of the response
+	 * @param sink where to copy the body
+	 * @param limit the maximum number of bytes to copy
+	 * @return {@code true} if the whole body was copied and its end was found without the connection closing
+	 * @throws IOException if unable to read from socket or the body is malformed
+	 */
+	private static boolean transferBody(InputStream response, Map<String, List<String>> headers, OutputStream sink, long limit) throws IOException {
+		if (!hasBody(headers)) {
+			return true;
+		}
+
+		if (isChunked(headers)) {
+			long total = 0;
+			while (true) {
+				String line = readLine(response);
+				if (line == null) {
+					throw new EOFException("Connection closed within a chunked body");
+				}
+
+				// Chunk extensions after a semicolon are ignored
+				int semicolon = line.indexOf(';');
+				long size;
+				try {
+					size = Long.parseLong((semicolon < 0 ? line : line.substring(0, semicolon)).strip(), 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed chunk size: " + line);
+				}
+
+				if (size == 0) {
+					break;
+				}
+
+				total += size;
+				if (size < 0 || total > limit) {
+					return false;
+				}
+
+				copy(response, sink, size);
+				if (!"".equals(readLine(response))) {
+					throw new IOException("Missing line break after chunk");
+				}
+			}
+
+			// Trailer fields end with a blank line
+			String line;
+			while ((line = readLine(response)) != null && !line.isEmpty()) {
+				continue;
+			}
+
+			return true;
+		}
+
+		long length = getContentLength(headers);
+		if (length >= 0) {
+			if (length > limit) {
+				return false;
+			}
+
+			copy(response, sink, length);
+			return true;
+		}
+
+		// Without a length, the body ends when the server closes the connection
+		if (limit == Long.MAX_VALUE) {
+			response.transferTo(sink);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Copies exactly the number of bytes from the input to the sink
+	 *
+	 * @param input the input
+	 * @param sink where to copy the bytes
+	 * @param count the number of bytes
+	 * @throws IOException if unable to read or the input ends early
+	 */
+	private static void copy(InputStream input, OutputStream sink, long count) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (count > 0) {
+			int read = input.read(buffer, 0, (int) Math.min(buffer.length, count));
+			if (read < 0) {
+				throw new EOFException("Connection closed within the body");
+			}
+
+			sink.write(buffer, 0, read);
+			count -= read;
+		}
+	}
+
+	/**
+	 * Reads a line of an HTTP response as ISO-8859-1, without its line break
+	 *
+	 * @param input the buffered input stream of a socket connection
+	 * @return the line, or {@code null} if the stream ended before any byte
+	 * @throws IOException if unable to read or the line is too long
+	 */
+	private static String readLine(InputStream input) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = input.read()) != -1 && b != '\n') {
+			if (line.length() >= MAX_LINE) {
+				throw new IOException("HTTP line is too long");
+			}
+
+			line.append((char) b);
+		}
+
+		if (b == -1 && line.isEmpty()) {
+			return null;
+		}
+
+		int end = line.length();
+		return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+	}
+
 	/**
 	 * See {@link #fetch(URI)} for details.
 	 *
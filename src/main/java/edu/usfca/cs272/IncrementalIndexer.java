@@ -0,0 +1,335 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps an inverted index up to date with a directory of text files without
+ * rebuilding it from scratch. The index and an {@link IndexManifest} describing
+ * every indexed file are saved to a state directory, so later runs only remove
+ * deleted or changed files and index new or changed ones.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class IncrementalIndexer {
+	/** File name of the saved manifest inside the state directory */
+	public static final String MANIFEST = "manifest.tsv";
+
+	/** File name of the saved inverted index inside the state directory */
+	public static final String SAVED_INDEX = "index.bin";
+
+	/** How long to wait for a burst of file system events to settle before updating */
+	private static final long SETTLE_MILLIS = 250;
+
+	/** The inverted index to keep up to date */
+	private final InvertedIndex invertedIndex;
+
+	/** The indexer used for new and changed files */
+	private final TextFileIndexer textFileIndexer;
+
+	/** Where the manifest and saved index are kept */
+	private final Path stateDirectory;
+
+	/** Describes every file currently in the inverted index */
+	private final IndexManifest manifest;
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Constructs an incremental indexer
+	 * @param invertedIndex The inverted index to keep up to date
+	 * @param textFileIndexer The indexer to use for new and changed files
+	 * @param stateDirectory Where the manifest and saved index are kept
+	 */
+	public IncrementalIndexer(InvertedIndex invertedIndex, TextFileIndexer textFileIndexer, Path stateDirectory) {
+		this.invertedIndex = invertedIndex;
+		this.textFileIndexer = textFileIndexer;
+		this.stateDirectory = stateDirectory;
+		this.manifest = new IndexManifest();
+	}
+
+	/**
+	 * Loads the saved index and manifest into the inverted index if both exist.
+	 * @return {@code true} if a saved index was loaded
+	 * @throws IOException If an IO error occurs
+	 */
+	public synchronized boolean load() throws IOException {
+		Path manifestPath = this.stateDirectory.resolve(MANIFEST);
+		Path indexPath = this.stateDirectory.resolve(SAVED_INDEX);
+
+		if (!Files.isRegularFile(manifestPath) || !Files.isRegularFile(indexPath)) {
+			return false;
+		}
+
+		this.manifest.load(manifestPath);
+		this.invertedIndex.loadIndex(indexPath);
+		return true;
+	}
+
+	/**
+	 * Saves the inverted index and manifest to the state directory.
+	 * @throws IOException If an IO error occurs
+	 */
+	public synchronized void save() throws IOException {
+		Files.createDirectories(this.stateDirectory);
+		this.invertedIndex.saveIndex(this.stateDirectory.resolve(SAVED_INDEX));
+		this.manifest.save(this.stateDirectory.resolve(MANIFEST));
+	}
+
+	/**
+	 * Brings the inverted index up to date with the files at {@code root}.
+	 * Files whose size and modification time are unchanged are skipped without being read.
+	 * Previously indexed files under {@code root} that no longer exist are removed.
+	 * A file is only recorded in the manifest once it has been indexed, so a file that
+	 * cannot be read is left out of the inverted index and tried again next time.
+	 * @param root The directory or file to index
+	 * @return The number of locations that were added, changed, or removed
+	 * @throws IOException If an IO error occurs
+	 */
+	public synchronized int update(Path root) throws IOException {
+		ArrayList<Path> files = new ArrayList<>();
+		if (Files.isDirectory(root)) {
+			listTextFiles(root, files);
+		} else {
+			files.add(root);
+		}
+
+		HashSet<String> seen = new HashSet<>();
+		ArrayList<Path> changed = new ArrayList<>();
+		HashMap<Path, IndexManifest.Entry> entries = new HashMap<>();
+		int removed = 0;
+
+		for (Path file : files) {
+			String location = file.toString();
+			seen.add(location);
+
+			IndexManifest.Entry previous = this.manifest.get(location);
+			if (previous != null && previous.matches(Files.readAttributes(file, BasicFileAttributes.class))) {
+				continue;
+			}
+
+			IndexManifest.Entry current = IndexManifest.describe(file);
+
+			if (previous != null) {
+				if (previous.sameContents(current)) {
+					this.manifest.put(location, current);
+					continue;
+				}
+
+				this.invertedIndex.removeLocation(location);
+			}
+
+			changed.add(file);
+			entries.put(file, current);
+		}
+
+		for (String location : List.copyOf(this.manifest.getLocations())) {
+			if (!seen.contains(location) && Path.of(location).startsWith(root)) {
+				this.invertedIndex.removeLocation(location);
+				this.manifest.remove(location);
+				removed++;
+			}
+		}
+
+		Set<Path> failed = this.textFileIndexer.indexFiles(changed);
+		for (Path file : changed) {
+			String location = file.toString();
+
+			if (failed.contains(file)) {
+				// Removes any words that were added before the file could not be read
+				this.invertedIndex.removeLocation(location);
+				this.manifest.remove(location);
+				System.err.printf("Unable to index the file from location: %s\n", file);
+			} else {
+				this.manifest.put(location, entries.get(file));
+			}
+		}
+
+		log.debug("Incremental update of {} indexed {} and removed {} location(s).", root, changed.size(), removed);
+		return changed.size() + removed;
+	}
+
+	/**
+	 * Watches {@code root} for changes in a background daemon thread. After each burst of
+	 * file system events the inverted index is updated and saved. Directories created
+	 * under a directory root are watched as they appear. A file root is watched through
+	 * its parent directory, ignoring events for any other file in that directory.
+	 * @param root The directory or file to watch
+	 * @return The watching thread
+	 * @throws IOException If an IO error occurs
+	 */
+	public Thread watch(Path root) throws IOException {
+		boolean isDirectory = Files.isDirectory(root);
+		Path directory = isDirectory ? root : root.toAbsolutePath().getParent();
+		WatchService watcher = directory.getFileSystem().newWatchService();
+		HashMap<WatchKey, Path> directories = new HashMap<>();
+
+		if (isDirectory) {
+			register(directory, watcher, directories);
+		} else {
+			directories.put(directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), directory);
+		}
+
+		Thread thread = new Thread(() -> {
+			try (watcher) {
+				while (true) {
+					WatchKey key = watcher.take();
+					boolean changed = false;
+
+					try {
+						do {
+							Path parent = directories.get(key);
+							try {
+								for (WatchEvent<?> event : key.pollEvents()) {
+									if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+										// Events were lost, so directories created meanwhile may not be watched yet
+										if (isDirectory) {
+											tryRegister(directory, watcher, directories);
+										}
+
+										changed = true;
+										continue;
+									}
+
+									Path context = (Path) event.context();
+									if (!isDirectory) {
+										changed |= context.equals(root.getFileName());
+										continue;
+									}
+
+									Path location = parent.resolve(context);
+									if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(location, LinkOption.NOFOLLOW_LINKS)) {
+										tryRegister(location, watcher, directories);
+									}
+
+									changed = true;
+								}
+							} finally {
+								// A key that is not reset is never signalled again
+								if (!key.reset()) {
+									directories.remove(key);
+								}
+							}
+						} while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+						if (changed && update(root) > 0) {
+							save();
+						}
+					} catch (IOException e) {
+						System.err.printf("Unable to update the index from location: %s\n", root);
+						log.catching(Level.WARN, e);
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException e) {
+				log.catching(Level.DEBUG, e);
+			}
+		}, "IndexWatcher");
+
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Registers {@code directory} and all of its subdirectories with {@code watcher}.
+	 * Directories that are already registered are left as is.
+	 * @param directory The directory to register
+	 * @param watcher The watch service to register with
+	 * @param directories Where to map the key of each registered directory to the directory
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void register(Path directory, WatchService watcher, Map<WatchKey, Path> directories) throws IOException {
+		WatchKey key = directory.register(
+			watcher,
+			StandardWatchEventKinds.ENTRY_CREATE,
+			StandardWatchEventKinds.ENTRY_DELETE,
+			StandardWatchEventKinds.ENTRY_MODIFY
+		);
+		directories.put(key, directory);
+
+		try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(directory)) {
+			for (Path location : dirStream) {
+				if (Files.isDirectory(location, LinkOption.NOFOLLOW_LINKS)) {
+					register(location, watcher, directories);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers {@code directory} and all of its subdirectories with {@code watcher}, like
+	 * {@link #register(Path, WatchService, Map)}, but reports a failure instead of throwing
+	 * it. A directory may already be gone by the time its creation event is handled, and
+	 * that must not stop the rest of the events from being handled.
+	 * @param directory The directory to register
+	 * @param watcher The watch service to register with
+	 * @param directories Where to map the key of each registered directory to the directory
+	 */
+	private static void tryRegister(Path directory, WatchService watcher, Map<WatchKey, Path> directories) {
+		try {
+			register(directory, watcher, directories);
+		} catch (NoSuchFileException e) {
+			// Deleted again before it could be watched, and its deletion is its own event
+			log.catching(Level.DEBUG, e);
+		} catch (IOException e) {
+			System.err.printf("Unable to watch the directory from location: %s\n", directory);
+			log.catching(Level.DEBUG, e);
+		}
+	}
+
+	/**
+	 * Recursively collects every text file under {@code dirLocation}, the same files
+	 * {@link TextFileIndexer#indexDirectory(Path)} would index.
+	 * @param dirLocation The directory to traverse
+	 * @param files Where to add the text files found
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void listTextFiles(Path dirLocation, List<Path> files) throws IOException {
+		try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dirLocation)) {
+			for (Path location : dirStream) {
+				if (Files.isDirectory(location)) {
+					listTextFiles(location, files);
+				} else if (TextFileIndexer.isTextFile(location)) {
+					files.add(location);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+			"Incremental indexer is tracking %d %s in %s.",
+			this.manifest.size(),
+			this.manifest.size() == 1 ? "location" : "locations",
+			this.stateDirectory
+		);
+	}
+}
@@ -0,0 +1,229 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves an inverted index as a snapshot and an append-only log of the locations
+ * replaced since the snapshot, so saving the index only writes what changed instead
+ * of the whole index. Each record of the log holds one location and its word
+ * positions, and replaces everything at that location when the log is replayed. A
+ * new snapshot is only written once the log has grown larger than the last
+ * snapshot, which keeps the total amount written proportional to the index.
+ *
+ * <p>
+ * Each record is prefixed with its length, so a record cut short by a crash is
+ * detected and dropped when the log is loaded.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class IndexLog implements Closeable {
+	/** File name of the snapshot of the inverted index */
+	public static final String SNAPSHOT = "index.bin";
+
+	/** File name of the log of locations replaced since the snapshot */
+	public static final String LOG = "index.log";
+
+	/** The inverted index that is saved */
+	private final InvertedIndex invertedIndex;
+
+	/** Where the snapshot is saved */
+	private final Path snapshotPath;
+
+	/** Where the log is saved */
+	private final Path logPath;
+
+	/** The open log, or {@code null} if it has not been opened yet */
+	private FileChannel channel;
+
+	/** Appends records to the open log */
+	private DataOutputStream output;
+
+	/** Number of bytes in the log */
+	private long logBytes;
+
+	/** Number of bytes in the snapshot */
+	private long snapshotBytes;
+
+	/**
+	 * Constructs a log for an inverted index saved in a directory
+	 * @param invertedIndex The inverted index that is saved
+	 * @param directory The directory to save the snapshot and the log in
+	 */
+	public IndexLog(InvertedIndex invertedIndex, Path directory) {
+		this.invertedIndex = invertedIndex;
+		this.snapshotPath = directory.resolve(SNAPSHOT);
+		this.logPath = directory.resolve(LOG);
+		this.channel = null;
+		this.output = null;
+		this.logBytes = 0;
+		this.snapshotBytes = 0;
+	}
+
+	/**
+	 * Encodes the word positions of a location as a record of the log. Only the
+	 * location's own positions are read, so this can be done before handing the
+	 * record to another thread to append.
+	 * @param location The location that is replaced
+	 * @param localIndex The inverted index holding the word positions of {@code location}
+	 * @return The record
+	 * @throws IOException If an IO error occurs
+	 */
+	public static byte[] encode(String location, InvertedIndex localIndex) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream record = new DataOutputStream(bytes)) {
+			record.writeUTF(location);
+			localIndex.saveIndex(record);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Loads the snapshot, if there is one, and replays every complete record of the
+	 * log into the inverted index. A record cut short at the end of the log is cut off
+	 * so new records are appended right after the last complete one.
+	 * @throws IOException If unable to read the snapshot or the log
+	 */
+	public void load() throws IOException {
+		if (Files.isRegularFile(this.snapshotPath)) {
+			this.invertedIndex.loadIndex(this.snapshotPath);
+		}
+
+		if (!Files.isRegularFile(this.logPath)) {
+			return;
+		}
+
+		long complete = 0;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.logPath)))) {
+			while (true) {
+				byte[] record;
+				try {
+					record = new byte[input.readInt()];
+					input.readFully(record);
+				} catch (EOFException e) {
+					break;
+				}
+
+				try (DataInputStream recordInput = new DataInputStream(new ByteArrayInputStream(record))) {
+					String location = recordInput.readUTF();
+					InvertedIndex localIndex = new InvertedIndex();
+					localIndex.loadIndex(recordInput);
+					this.invertedIndex.replaceLocation(location, localIndex);
+				}
+
+				complete += Integer.BYTES + record.length;
+			}
+		}
+
+		if (complete < Files.size(this.logPath)) {
+			try (FileChannel log = FileChannel.open(this.logPath, StandardOpenOption.WRITE)) {
+				log.truncate(complete);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the snapshot and the log, so the inverted index is saved from scratch
+	 * @throws IOException If unable to delete the files
+	 */
+	public void clear() throws IOException {
+		close();
+		Files.deleteIfExists(this.snapshotPath);
+		Files.deleteIfExists(this.logPath);
+	}
+
+	/**
+	 * Appends a record to the log, opening the log first if needed. The record is not
+	 * guaranteed to be on disk until {@link #checkpoint()} is called.
+	 * @param record A record encoded with {@link #encode(String, InvertedIndex)}
+	 * @throws IOException If unable to write to the log
+	 */
+	public void append(byte[] record) throws IOException {
+		if (this.output == null) {
+			open(false);
+		}
+
+		this.output.writeInt(record.length);
+		this.output.write(record);
+		this.logBytes += Integer.BYTES + record.length;
+	}
+
+	/**
+	 * Makes sure every appended record is on disk. If the log has grown larger than the
+	 * snapshot, writes a new snapshot of the inverted index and starts an empty log.
+	 * The snapshot includes every record appended so far, as long as each location was
+	 * replaced in the inverted index before its record was appended.
+	 * @return {@code true} if a new snapshot was written
+	 * @throws IOException If unable to write the log or the snapshot
+	 */
+	public boolean checkpoint() throws IOException {
+		if (this.output == null) {
+			open(false);
+		}
+
+		this.output.flush();
+		this.channel.force(false);
+
+		if (this.logBytes <= this.snapshotBytes) {
+			return false;
+		}
+
+		Path snapshotTemp = this.snapshotPath.resolveSibling(SNAPSHOT + ".tmp");
+		this.invertedIndex.saveIndex(snapshotTemp);
+		Files.move(snapshotTemp, this.snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// A crash before the log is emptied replays it over the new snapshot, which can only undo replacements that were not checkpointed yet
+		close();
+		open(true);
+		return true;
+	}
+
+	/**
+	 * Opens the log for appending
+	 * @param truncate Whether to start the log empty
+	 * @throws IOException If unable to open the log
+	 */
+	private void open(boolean truncate) throws IOException {
+		Files.createDirectories(this.logPath.toAbsolutePath().getParent());
+		this.channel = FileChannel.open(this.logPath,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE,
+			truncate ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+		this.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.channel), 1 << 16));
+		this.logBytes = this.channel.size();
+		this.snapshotBytes = Files.isRegularFile(this.snapshotPath) ? Files.size(this.snapshotPath) : 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.output != null) {
+			this.output.close();
+			this.output = null;
+			this.channel = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Index log with %d bytes of records since a %d byte snapshot", this.logBytes, this.snapshotBytes);
+	}
+}
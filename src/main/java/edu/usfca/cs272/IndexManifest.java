@@ -0,0 +1,204 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps track of the size, modification time, and content hash of every indexed
+ * file so that only new or changed files need to be indexed again.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class IndexManifest {
+	/** Maps each indexed location to what the file looked like when it was indexed */
+	private final TreeMap<String, Entry> entries;
+
+	/** Initializes an empty manifest */
+	public IndexManifest() {
+		this.entries = new TreeMap<>();
+	}
+
+	/** Describes an indexed file */
+	public static class Entry {
+		/** The size of the file in bytes */
+		private final long size;
+
+		/** The last modified time of the file in milliseconds */
+		private final long modified;
+
+		/** The checksum of the file contents */
+		private final long hash;
+
+		/**
+		 * Constructs an entry describing a file
+		 * @param size The size of the file in bytes
+		 * @param modified The last modified time of the file in milliseconds
+		 * @param hash The checksum of the file contents
+		 */
+		public Entry(long size, long modified, long hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns {@code true} if the file still has the size and modification time it had when indexed.
+		 * Does not read the file contents.
+		 * @param attributes The current attributes of the file
+		 * @return {@code true} if the size and modification time are unchanged
+		 */
+		public boolean matches(BasicFileAttributes attributes) {
+			return this.size == attributes.size() && this.modified == attributes.lastModifiedTime().toMillis();
+		}
+
+		/**
+		 * Returns {@code true} if both entries describe the same file contents
+		 * @param other The entry to compare against
+		 * @return {@code true} if the size and checksum are the same
+		 */
+		public boolean sameContents(Entry other) {
+			return this.size == other.size && this.hash == other.hash;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d\t%d\t%016x", this.size, this.modified, this.hash);
+		}
+	}
+
+	/**
+	 * Reads the current size, modification time, and content checksum of {@code file}
+	 * @param file The file to describe
+	 * @return An entry describing {@code file}
+	 * @throws IOException If an IO error occurs
+	 */
+	public static Entry describe(Path file) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		CRC32C checksum = new CRC32C();
+
+		try (InputStream input = Files.newInputStream(file)) {
+			byte[] buffer = new byte[1 << 16];
+			int read;
+
+			while ((read = input.read(buffer)) != -1) {
+				checksum.update(buffer, 0, read);
+			}
+		}
+
+		return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), checksum.getValue());
+	}
+
+	/**
+	 * Returns the entry for {@code location}
+	 * @param location The indexed location
+	 * @return The entry for {@code location} or {@code null} if it is not in the manifest
+	 */
+	public Entry get(String location) {
+		return this.entries.get(location);
+	}
+
+	/**
+	 * Adds or replaces the entry for {@code location}
+	 * @param location The indexed location
+	 * @param entry What the file looked like when it was indexed
+	 */
+	public void put(String location, Entry entry) {
+		this.entries.put(location, entry);
+	}
+
+	/**
+	 * Removes the entry for {@code location}
+	 * @param location The location to remove
+	 * @return {@code true} if {@code location} was in the manifest
+	 */
+	public boolean remove(String location) {
+		return this.entries.remove(location) != null;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the locations in the manifest
+	 * @return An unmodifiable view of the locations in the manifest
+	 */
+	public Set<String> getLocations() {
+		return Collections.unmodifiableSet(this.entries.keySet());
+	}
+
+	/**
+	 * Returns the number of locations in the manifest
+	 * @return The number of locations in the manifest
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Replaces the contents of this manifest with the manifest saved at {@code location}
+	 * @param location Where to read the manifest from
+	 * @throws IOException If an IO error occurs
+	 */
+	public void load(Path location) throws IOException {
+		this.entries.clear();
+
+		try (BufferedReader reader = Files.newBufferedReader(location, UTF_8)) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", 4);
+				if (fields.length != 4) {
+					throw new IOException("Malformed manifest line: " + line);
+				}
+
+				try {
+					this.entries.put(fields[3], new Entry(
+						Long.parseLong(fields[0]),
+						Long.parseLong(fields[1]),
+						Long.parseUnsignedLong(fields[2], 16)
+					));
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed manifest line: " + line, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes this manifest as one tab-separated line per location
+	 * @param location Where to write the manifest to
+	 * @throws IOException If an IO error occurs
+	 */
+	public void save(Path location) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(location, UTF_8)) {
+			for (var entry : this.entries.entrySet()) {
+				writer.write(entry.getValue().toString());
+				writer.write('\t');
+				writer.write(entry.getKey());
+				writer.write('\n');
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		int size = size();
+		return String.format(
+			"Index manifest currently has %d %s stored.",
+			size,
+			size == 1 ? "location" : "locations"
+		);
+	}
+}
@@ -1,14 +1,23 @@
 package edu.usfca.cs272;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 
+import java.util.AbstractSet;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -26,7 +35,22 @@ public class InvertedIndex {
 	private final TreeMap<String, Integer> wordStems;
 
 	/** Stores words with their file locations and word positions */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> invertedIndex;
+	private final TreeMap<String, Locations> invertedIndex;
+
+	/** The current document of every live location */
+	private final HashMap<String, Document> documents;
+
+	/** Document ids whose word positions have been removed but not compacted yet */
+	private final BitSet tombstones;
+
+	/** The number of document ids in {@code tombstones} */
+	private int tombstoned;
+
+	/** The document id given to the next location that is added */
+	private int nextDocumentId;
+
+	/** The number of words with at least one live location */
+	private int liveWords;
 
 	/**
 	 * Default constructor that initializes a new word counter and inverted index.
@@ -34,6 +58,67 @@ public class InvertedIndex {
 	public InvertedIndex() {
 		this.wordStems = new TreeMap<>();
 		this.invertedIndex = new TreeMap<>();
+		this.documents = new HashMap<>();
+		this.tombstones = new BitSet();
+		this.tombstoned = 0;
+		this.nextDocumentId = 0;
+		this.liveWords = 0;
+	}
+
+	/**
+	 * The word positions of a word at one location, stamped with the document id the
+	 * location had when they were added. The positions are live as long as that
+	 * document id is not tombstoned.
+	 */
+	private static class Postings extends TreeSet<Integer> {
+		/** Unused serial version id */
+		private static final long serialVersionUID = 1L;
+
+		/** The document id of the location when these positions were added */
+		private int documentId;
+
+		/**
+		 * Constructs empty word positions for a document
+		 * @param documentId The document id of the location
+		 */
+		private Postings(int documentId) {
+			this.documentId = documentId;
+		}
+	}
+
+	/** The locations of a word, including ones that were removed but not compacted yet */
+	private static class Locations extends TreeMap<String, Postings> {
+		/** Unused serial version id */
+		private static final long serialVersionUID = 1L;
+
+		/** The number of locations whose word positions are live */
+		private int live;
+
+		/** Constructs a word without any locations */
+		private Locations() {
+			this.live = 0;
+		}
+	}
+
+	/**
+	 * A live location: its current document id and the words it has live positions for,
+	 * so removing the location does not have to look through the whole inverted index
+	 */
+	private static class Document {
+		/** The document id of the location, which changes every time it is added again */
+		private int id;
+
+		/** The locations of every word with live positions at this location */
+		private final ArrayList<Locations> words;
+
+		/**
+		 * Constructs a document without any words
+		 * @param id The document id of the location
+		 */
+		private Document(int id) {
+			this.id = id;
+			this.words = new ArrayList<>();
+		}
 	}
 
 	/** Class that represents a search result */
@@ -115,12 +200,186 @@ public class InvertedIndex {
 		}
 	}
 
+	/**
+	 * The best search results of a query, sorted, and the number of locations that matched
+	 * the query. Only the results that were asked for are sorted. Also records how long
+	 * the index lookup and the sort took, if they were timed.
+	 */
+	public static class TopResults {
+		/** The best search results, sorted */
+		private final List<SearchResult> results;
+
+		/** The number of locations that matched the query */
+		private final int total;
+
+		/** Nanoseconds spent collecting the matching locations from the index */
+		private final long lookupNanos;
+
+		/** Nanoseconds spent selecting and sorting the best results */
+		private final long sortNanos;
+
+		/**
+		 * Constructs the best search results of a query with the time it took to find them
+		 * @param results The best search results, sorted
+		 * @param total The number of locations that matched the query
+		 * @param lookupNanos Nanoseconds spent collecting the matching locations from the index
+		 * @param sortNanos Nanoseconds spent selecting and sorting the best results
+		 */
+		public TopResults(List<SearchResult> results, int total, long lookupNanos, long sortNanos) {
+			this.results = results;
+			this.total = total;
+			this.lookupNanos = lookupNanos;
+			this.sortNanos = sortNanos;
+		}
+
+		/**
+		 * Constructs the best search results of a query that were not searched for just now, such as cached results
+		 * @param results The best search results, sorted
+		 * @param total The number of locations that matched the query
+		 */
+		public TopResults(List<SearchResult> results, int total) {
+			this(results, total, 0, 0);
+		}
+
+		/**
+		 * Returns the best search results, sorted
+		 * @return The best search results
+		 */
+		public List<SearchResult> getResults() {
+			return this.results;
+		}
+
+		/**
+		 * Returns the number of locations that matched the query, which can be more than the number of results
+		 * @return The number of matching locations
+		 */
+		public int getTotal() {
+			return this.total;
+		}
+
+		/**
+		 * Returns whether these are all of the search results of the query
+		 * @return {@code true} if no matching location was left out
+		 */
+		public boolean isComplete() {
+			return this.results.size() == this.total;
+		}
+
+		/**
+		 * Returns how long collecting the matching locations from the index took
+		 * @return The number of nanoseconds, or 0 if no lookup was done for these results
+		 */
+		public long getLookupNanos() {
+			return this.lookupNanos;
+		}
+
+		/**
+		 * Returns how long selecting and sorting the best results took
+		 * @return The number of nanoseconds, or 0 if no sort was done for these results
+		 */
+		public long getSortNanos() {
+			return this.sortNanos;
+		}
+	}
+
 	/**
 	 * Performs an exact search of {@code queryStems} on the inverted index
 	 * @param queryStems - The query stems to search
 	 * @return A sorted {@code List} of {@code SearchResult} objects
 	 */
 	public List<SearchResult> exactSearch(Set<String> queryStems) {
+		List<SearchResult> searchResults = collectExactSearch(queryStems);
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * Performs a partial search of {@code queryStems} on the inverted index
+	 * @param queryStems - The query stems to search
+	 * @return A sorted {@code List} of {@code SearchResult} objects
+	 */
+	public List<SearchResult> partialSearch(Set<String> queryStems) {
+		List<SearchResult> searchResults = collectPartialSearch(queryStems, null);
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * Performs a partial search of {@code queryStems} using the prefix expansions in
+	 * {@code cache}, so each query stem only scans the inverted index if neither it nor
+	 * a shorter prefix of it is cached. Query stems that are not hot yet are searched the
+	 * same way as {@link #partialSearch(Set)}, and the results are the same.
+	 * @param queryStems - The query stems to search
+	 * @param cache - The cache of prefix expansions for this inverted index
+	 * @return A sorted {@code List} of {@code SearchResult} objects
+	 */
+	public List<SearchResult> partialSearch(Set<String> queryStems, PrefixCache cache) {
+		List<SearchResult> searchResults = collectPartialSearch(queryStems, cache);
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * Searches for {@code queryStems} but only sorts the best {@code limit} results,
+	 * so a page of results does not cost a sort of every matching location
+	 * @param queryStems - The query stems to search
+	 * @param isExactSearch - {@code true} for an exact search, {@code false} for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @return The best {@code limit} results, sorted, and the number of matching locations
+	 */
+	public TopResults search(Set<String> queryStems, boolean isExactSearch, int limit) {
+		return search(queryStems, isExactSearch, limit, null);
+	}
+
+	/**
+	 * Searches for {@code queryStems} but only sorts the best {@code limit} results
+	 * @param queryStems - The query stems to search
+	 * @param isExactSearch - {@code true} for an exact search, {@code false} for a partial search
+	 * @param limit - The maximum number of results to return
+	 * @param cache - The cache of prefix expansions to use for a partial search, or {@code null} to scan the inverted index
+	 * @return The best {@code limit} results, sorted, and the number of matching locations
+	 *
+	 * @see #search(Set, boolean, int)
+	 */
+	public TopResults search(Set<String> queryStems, boolean isExactSearch, int limit, PrefixCache cache) {
+		long start = System.nanoTime();
+		List<SearchResult> searchResults = isExactSearch
+			? collectExactSearch(queryStems)
+			: collectPartialSearch(queryStems, cache);
+
+		long lookupNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		int total = searchResults.size();
+		limit = Math.max(0, limit);
+
+		if (limit >= total) {
+			Collections.sort(searchResults);
+			return new TopResults(searchResults, total, lookupNanos, System.nanoTime() - start);
+		}
+
+		// Keeps the best results seen so far with the worst of them at the head
+		PriorityQueue<SearchResult> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder());
+		for (SearchResult result : searchResults) {
+			if (best.size() < limit) {
+				best.add(result);
+			} else if (limit > 0 && result.compareTo(best.peek()) < 0) {
+				best.poll();
+				best.add(result);
+			}
+		}
+
+		List<SearchResult> topResults = new ArrayList<>(best);
+		Collections.sort(topResults);
+		return new TopResults(topResults, total, lookupNanos, System.nanoTime() - start);
+	}
+
+	/**
+	 * Collects the search results of an exact search without sorting them
+	 * @param queryStems - The query stems to search
+	 * @return An unsorted {@code List} of {@code SearchResult} objects
+	 */
+	private List<SearchResult> collectExactSearch(Set<String> queryStems) {
 		// Stores a location and a search result for that location
 		HashMap<String, SearchResult> lookup = new HashMap<>();
 		List<SearchResult> searchResults = new ArrayList<>();
@@ -132,33 +391,166 @@ public class InvertedIndex {
 			}
 		}
 
-		Collections.sort(searchResults);
 		return searchResults;
 	}
 
 	/**
-	 * Performs a partial search of {@code queryStems} on the inverted index
+	 * Collects the search results of a partial search without sorting them
 	 * @param queryStems - The query stems to search
-	 * @return A sorted {@code List} of {@code SearchResult} objects
+	 * @param cache - The cache of prefix expansions to use, or {@code null} to scan the inverted index
+	 * @return An unsorted {@code List} of {@code SearchResult} objects
 	 */
-	public List<SearchResult> partialSearch(Set<String> queryStems) {
+	private List<SearchResult> collectPartialSearch(Set<String> queryStems, PrefixCache cache) {
 		// Stores a location and a search result for that location
 		List<SearchResult> searchResults = new ArrayList<>();
 		HashMap<String, SearchResult> lookup = new HashMap<>();
 
 		for (String queryStem : queryStems) {
-			for (var entry : this.invertedIndex.tailMap(queryStem).entrySet()) {
-				String word = entry.getKey();
+			PrefixCache.Expansion expansion = cache == null ? null : cache.get(queryStem, this::expandPrefix);
+			if (expansion == null) {
+				generatePartialSearchResults(queryStem, lookup, searchResults);
+				continue;
+			}
+
+			for (int i = 0; i < expansion.size(); i++) {
+				String location = expansion.getLocation(i);
+
+				SearchResult existingResult = lookup.get(location);
+				if (existingResult == null) {
+					existingResult = new SearchResult(location);
+					lookup.put(location, existingResult);
+					searchResults.add(existingResult);
+				}
+
+				existingResult.addCount(expansion.getCount(i));
+			}
+		}
+
+		return searchResults;
+	}
+
+	/**
+	 * Generates the search results of every word that starts with {@code queryStem}
+	 * @param queryStem The query stem to search
+	 * @param lookup A lookup {@code Map} that stores a location and a {@code SearchResult} object at that location
+	 * @param searchResults A {@code List} of {@code SearchResult} objects
+	 */
+	private void generatePartialSearchResults(String queryStem, Map<String, SearchResult> lookup, List<SearchResult> searchResults) {
+		for (var entry : this.invertedIndex.tailMap(queryStem).entrySet()) {
+			String word = entry.getKey();
+			if (!word.startsWith(queryStem)) {
+				break;
+			}
+
+			var locations = entry.getValue();
+			generateSearchResult(locations, lookup, searchResults);
+		}
+	}
+
+	/**
+	 * Collects every word that starts with {@code prefix} and the number of positions
+	 * of that word at each live location
+	 * @param prefix - The prefix to expand
+	 * @return The expansion of the prefix
+	 */
+	private PrefixCache.Expansion expandPrefix(String prefix) {
+		TreeMap<String, TreeMap<String, Integer>> postings = new TreeMap<>();
+
+		for (var entry : this.invertedIndex.tailMap(prefix).entrySet()) {
+			String word = entry.getKey();
+			if (!word.startsWith(prefix)) {
+				break;
+			}
+
+			TreeMap<String, Integer> counts = new TreeMap<>();
+			for (var location : entry.getValue().entrySet()) {
+				if (isLive(location.getValue())) {
+					counts.put(location.getKey(), location.getValue().size());
+				}
+			}
+
+			if (!counts.isEmpty()) {
+				postings.put(word, counts);
+			}
+		}
+
+		return new PrefixCache.Expansion(postings);
+	}
+
+	/**
+	 * Searches for a batch of queries at once. The words every query stem matches are
+	 * collected first, so the word positions of each matching word are walked only once
+	 * no matter how many queries reference it, and its counts are added to every one of
+	 * those queries. The results are the same as searching each query by itself.
+	 * @param queries - The query stems of each query
+	 * @param isExactSearch - {@code true} for exact searches, {@code false} for partial searches
+	 * @return The sorted search results of each query, in the same order as {@code queries}
+	 *
+	 * @see #exactSearch(Set)
+	 * @see #partialSearch(Set)
+	 */
+	public List<List<SearchResult>> batchSearch(List<? extends Set<String>> queries, boolean isExactSearch) {
+		// Maps each distinct stem to the queries that contain it
+		TreeMap<String, List<Integer>> stemQueries = new TreeMap<>();
+		for (int i = 0; i < queries.size(); i++) {
+			for (String queryStem : queries.get(i)) {
+				stemQueries.computeIfAbsent(queryStem, key -> new ArrayList<>()).add(i);
+			}
+		}
+
+		// Maps each matching word to the queries it counts towards, once per matching stem
+		TreeMap<String, List<Integer>> wordQueries = new TreeMap<>();
+		for (var entry : stemQueries.entrySet()) {
+			String queryStem = entry.getKey();
+
+			if (isExactSearch) {
+				if (this.invertedIndex.containsKey(queryStem)) {
+					wordQueries.computeIfAbsent(queryStem, key -> new ArrayList<>()).addAll(entry.getValue());
+				}
+
+				continue;
+			}
+
+			for (String word : this.invertedIndex.tailMap(queryStem).keySet()) {
 				if (!word.startsWith(queryStem)) {
 					break;
 				}
 
-				var locations = entry.getValue();
-				generateSearchResult(locations, lookup, searchResults);
+				wordQueries.computeIfAbsent(word, key -> new ArrayList<>()).addAll(entry.getValue());
 			}
 		}
 
-		Collections.sort(searchResults);
+		List<HashMap<String, SearchResult>> lookups = new ArrayList<>(queries.size());
+		List<List<SearchResult>> searchResults = new ArrayList<>(queries.size());
+		for (int i = 0; i < queries.size(); i++) {
+			lookups.add(new HashMap<>());
+			searchResults.add(new ArrayList<>());
+		}
+
+		for (var entry : wordQueries.entrySet()) {
+			for (var location : this.invertedIndex.get(entry.getKey()).entrySet()) {
+				if (!isLive(location.getValue())) {
+					continue;
+				}
+
+				int matches = location.getValue().size();
+				for (int query : entry.getValue()) {
+					SearchResult result = lookups.get(query).get(location.getKey());
+					if (result == null) {
+						result = new SearchResult(location.getKey());
+						lookups.get(query).put(location.getKey(), result);
+						searchResults.get(query).add(result);
+					}
+
+					result.addCount(matches);
+				}
+			}
+		}
+
+		for (List<SearchResult> results : searchResults) {
+			Collections.sort(results);
+		}
+
 		return searchResults;
 	}
 
@@ -168,9 +560,13 @@ public class InvertedIndex {
 	 * @param lookup A lookup {@code Map} that stores a location and a {@code SearchResult} object at that location
 	 * @param searchResults A {@code List} of {@code SearchResult} objects
 	 */
-	private void generateSearchResult(Map<String, ? extends Set<Integer>> locations, Map<String, SearchResult> lookup, List<SearchResult> searchResults) {
+	private void generateSearchResult(Locations locations, Map<String, SearchResult> lookup, List<SearchResult> searchResults) {
 		for (var entry : locations.entrySet()) {
 			String location = entry.getKey();
+			if (!isLive(entry.getValue())) {
+				continue;
+			}
+
 			int matches = entry.getValue().size();
 
 			SearchResult existingResult = lookup.get(location);
@@ -229,15 +625,17 @@ public class InvertedIndex {
 	public boolean addWordPosition(String word, String location, int wordPosition) {
 		var locations = this.invertedIndex.get(word);
 		if (locations == null) {
-			locations = new TreeMap<>();
+			locations = new Locations();
 			this.invertedIndex.put(word, locations);
 		}
 
-		TreeSet<Integer> positions = locations.get(location);
+		Postings positions = locations.get(location);
 
-		if (positions == null) {
-			positions = new TreeSet<>();
+		if (positions == null || !isLive(positions)) {
+			Document document = getDocument(location);
+			positions = new Postings(document.id);
 			locations.put(location, positions);
+			addLive(locations, document);
 		}
 
 		boolean added = positions.add(wordPosition);
@@ -250,22 +648,40 @@ public class InvertedIndex {
 
 	/**
 	 * Merges two inverted indices together.
-	 * Does not work for overlapping indices
+	 * Does not work for overlapping indices.
+	 * The postings of {@code indexToAdd} may be shared with this inverted index afterwards,
+	 * so {@code indexToAdd} should not be modified once added.
 	 * @param indexToAdd The inverted index to add to the current inverted index
 	 */
 	public void addAll(InvertedIndex indexToAdd) {
+		indexToAdd.compact();
+
 		for (var otherEntry : indexToAdd.invertedIndex.entrySet()) {
 			String otherWord = otherEntry.getKey();
+			Locations otherLocations = otherEntry.getValue();
 			var thisEntry = this.invertedIndex.get(otherWord);
 
 			if (thisEntry == null) {
-				this.invertedIndex.put(otherWord, otherEntry.getValue());
+				otherLocations.live = 0;
+				for (var otherLocation : otherLocations.entrySet()) {
+					Document document = getDocument(otherLocation.getKey());
+					otherLocation.getValue().documentId = document.id;
+					addLive(otherLocations, document);
+				}
+
+				this.invertedIndex.put(otherWord, otherLocations);
 			} else {
-				for (var otherLocation : otherEntry.getValue().entrySet()) {
-					thisEntry.merge(otherLocation.getKey(), otherLocation.getValue(), (existingSet, newSet) -> {
-						existingSet.addAll(newSet);
-						return existingSet;
-					});
+				for (var otherLocation : otherLocations.entrySet()) {
+					Postings existing = thisEntry.get(otherLocation.getKey());
+
+					if (existing != null && isLive(existing)) {
+						existing.addAll(otherLocation.getValue());
+					} else {
+						Document document = getDocument(otherLocation.getKey());
+						otherLocation.getValue().documentId = document.id;
+						thisEntry.put(otherLocation.getKey(), otherLocation.getValue());
+						addLive(thisEntry, document);
+					}
 				}
 			}
 		}
@@ -277,6 +693,147 @@ public class InvertedIndex {
 		}
 	}
 
+	/**
+	 * Returns the document of a live location, giving the location a fresh document id
+	 * if it is not live yet
+	 * @param location - The location
+	 * @return The document of {@code location}
+	 */
+	private Document getDocument(String location) {
+		Document document = this.documents.get(location);
+		if (document == null) {
+			document = new Document(this.nextDocumentId++);
+			this.documents.put(location, document);
+		}
+
+		return document;
+	}
+
+	/**
+	 * Counts new live word positions of {@code document} in {@code locations}
+	 * @param locations - The locations of a word
+	 * @param document - The document the word positions were added for
+	 */
+	private void addLive(Locations locations, Document document) {
+		if (locations.live++ == 0) {
+			this.liveWords++;
+		}
+
+		document.words.add(locations);
+	}
+
+	/**
+	 * Removes {@code location} and its word count from the inverted index.
+	 * Only the document id of the location is marked with a tombstone, so removal does
+	 * not depend on the size of the inverted index. The word positions of a tombstoned
+	 * document id are hidden from searches and every other accessor right away, and are
+	 * reclaimed by {@link #compact()}. Compaction happens automatically once more
+	 * document ids are tombstoned than there are live locations. Adding the location
+	 * again gives it a fresh document id instead.
+	 * @param location - The location to remove
+	 * @return {@code true} if {@code location} was in the inverted index
+	 */
+	public boolean removeLocation(String location) {
+		if (this.wordStems.remove(location) == null) {
+			return false;
+		}
+
+		Document document = this.documents.remove(location);
+		if (document != null) {
+			this.tombstones.set(document.id);
+			this.tombstoned++;
+
+			for (Locations locations : document.words) {
+				if (--locations.live == 0) {
+					this.liveWords--;
+				}
+			}
+		}
+
+		if (this.tombstoned > this.documents.size()) {
+			compactIndex();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Replaces everything found at {@code location} with the contents of {@code replacement}
+	 * @param location - The location to replace
+	 * @param replacement - The inverted index holding the new word positions for {@code location}
+	 * @return {@code true} if {@code location} was already in the inverted index
+	 *
+	 * @see #removeLocation(String)
+	 * @see #addAll(InvertedIndex)
+	 */
+	public boolean replaceLocation(String location, InvertedIndex replacement) {
+		boolean replaced = removeLocation(location);
+		addAll(replacement);
+		return replaced;
+	}
+
+	/**
+	 * Reclaims the word positions of every tombstoned document id.
+	 * Words that are left without any locations are removed from the inverted index.
+	 * @return The number of words removed from the inverted index
+	 */
+	public int compact() {
+		return compactIndex();
+	}
+
+	/**
+	 * Reclaims the word positions of every tombstoned document id and renumbers the
+	 * live locations, so document ids stay as small as the number of live locations.
+	 * Unlike {@link #compact()}, this is never overridden, so it is safe to call while
+	 * only reading the inverted index is allowed for everyone else.
+	 * @return The number of words removed from the inverted index
+	 */
+	private int compactIndex() {
+		if (this.tombstoned == 0) {
+			return 0;
+		}
+
+		this.nextDocumentId = 0;
+		for (Document document : this.documents.values()) {
+			document.id = this.nextDocumentId++;
+		}
+
+		int removed = 0;
+		var iterator = this.invertedIndex.values().iterator();
+		while (iterator.hasNext()) {
+			var locations = iterator.next();
+			var postings = locations.entrySet().iterator();
+
+			while (postings.hasNext()) {
+				var entry = postings.next();
+				if (isLive(entry.getValue())) {
+					entry.getValue().documentId = this.documents.get(entry.getKey()).id;
+				} else {
+					postings.remove();
+				}
+			}
+
+			if (locations.isEmpty()) {
+				iterator.remove();
+				removed++;
+			}
+		}
+
+		this.tombstones.clear();
+		this.tombstoned = 0;
+		return removed;
+	}
+
+	/**
+	 * Returns {@code true} if {@code positions} belong to a location that has not been
+	 * removed since they were added
+	 * @param positions - The word positions to check
+	 * @return {@code true} if the document id of {@code positions} is not tombstoned
+	 */
+	private boolean isLive(Postings positions) {
+		return this.tombstoned == 0 || !this.tombstones.get(positions.documentId);
+	}
+
 	/**
 	 * Returns a view of the location/word count key/value pair map
 	 * @return An unmodifiable view of the location/word count key/value pair map
@@ -340,14 +897,135 @@ public class InvertedIndex {
 	}
 
 	/**
-	 * Writes the inverted index as a pretty JSON object
+	 * Writes the inverted index as a pretty JSON object.
+	 * Tombstoned word positions are compacted first.
 	 * @param location - Where to write the inverted index to
 	 * @throws IOException If an IO error occurs
 	 */
 	public void indexJson(Path location) throws IOException {
+		compactIndex();
 		JsonWriter.writeObjectObject(this.invertedIndex, location);
 	}
 
+	/**
+	 * Writes the inverted index as a pretty JSON object, serializing ranges of words
+	 * concurrently with the work queue. The output is the same as {@link #indexJson(Path)}.
+	 * @param location - Where to write the inverted index to
+	 * @param queue - The work queue used to serialize ranges of words
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see JsonWriter#writeObjectObject(Map, Path, WorkQueue)
+	 */
+	public void indexJson(Path location, WorkQueue queue) throws IOException {
+		compactIndex();
+		JsonWriter.writeObjectObject(this.invertedIndex, location, queue);
+	}
+
+	/**
+	 * Writes the word stems data structure in the given format
+	 * @param location - Where to write the word stems data structure to
+	 * @param format - The format to write in
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeCounts(Path location, OutputFormat format) throws IOException {
+		switch (format) {
+			case NDJSON -> NdjsonWriter.writeCounts(this.wordStems, location);
+			case BINARY -> BinaryWriter.writeCounts(this.wordStems, location);
+			default -> JsonWriter.writeObject(this.wordStems, location);
+		}
+	}
+
+	/**
+	 * Writes the inverted index in the given format.
+	 * Tombstoned word positions are compacted first.
+	 * @param location - Where to write the inverted index to
+	 * @param format - The format to write in
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeIndex(Path location, OutputFormat format) throws IOException {
+		compactIndex();
+
+		switch (format) {
+			case NDJSON -> NdjsonWriter.writeIndex(this.invertedIndex, location);
+			case BINARY -> BinaryWriter.writeIndex(this.invertedIndex, location);
+			default -> JsonWriter.writeObjectObject(this.invertedIndex, location);
+		}
+	}
+
+	/**
+	 * Saves the inverted index in a compact binary form that can be read back with {@link #loadIndex(Path)}.
+	 * Tombstoned word positions are compacted first.
+	 * @param location - Where to save the inverted index to
+	 * @throws IOException If an IO error occurs
+	 */
+	public void saveIndex(Path location) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(location)))) {
+			saveIndex(output);
+		}
+	}
+
+	/**
+	 * Saves the inverted index to a stream in the same form as {@link #saveIndex(Path)},
+	 * so it can be read back with {@link #loadIndex(DataInputStream)}
+	 * @param output - The stream to save the inverted index to, which is left open
+	 * @throws IOException If an IO error occurs
+	 */
+	public void saveIndex(DataOutputStream output) throws IOException {
+		compactIndex();
+		output.writeInt(this.invertedIndex.size());
+
+		for (var wordEntry : this.invertedIndex.entrySet()) {
+			output.writeUTF(wordEntry.getKey());
+			output.writeInt(wordEntry.getValue().size());
+
+			for (var locationEntry : wordEntry.getValue().entrySet()) {
+				output.writeUTF(locationEntry.getKey());
+				output.writeInt(locationEntry.getValue().size());
+
+				for (int position : locationEntry.getValue()) {
+					output.writeInt(position);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an inverted index saved with {@link #saveIndex(Path)} and merges it into this inverted index
+	 * @param location - Where to read the saved inverted index from
+	 * @throws IOException If an IO error occurs
+	 */
+	public void loadIndex(Path location) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(location)))) {
+			loadIndex(input);
+		}
+	}
+
+	/**
+	 * Reads an inverted index saved with {@link #saveIndex(DataOutputStream)} and merges it into this inverted index
+	 * @param input - The stream to read the saved inverted index from, which is left open
+	 * @throws IOException If an IO error occurs
+	 */
+	public void loadIndex(DataInputStream input) throws IOException {
+		InvertedIndex savedIndex = new InvertedIndex();
+		int numWords = input.readInt();
+
+		for (int i = 0; i < numWords; i++) {
+			String word = input.readUTF();
+			int numLocations = input.readInt();
+
+			for (int j = 0; j < numLocations; j++) {
+				String wordLocation = input.readUTF();
+				int numPositions = input.readInt();
+
+				for (int k = 0; k < numPositions; k++) {
+					savedIndex.addWordPosition(word, wordLocation, input.readInt());
+				}
+			}
+		}
+
+		addAll(savedIndex);
+	}
+
 	/**
 	 * Returns the number of locations where {@code word} was found
 	 * @param word - The word to look up locations for
@@ -355,7 +1033,22 @@ public class InvertedIndex {
 	 */
 	public int numLocations(String word) {
 		var locations = this.invertedIndex.get(word);
-		return locations == null ? 0 : locations.size();
+		return locations == null ? 0 : locations.live;
+	}
+
+	/**
+	 * Returns every word in the inverted index with the number of locations where it was found
+	 * @return The document frequency of each word, sorted by word
+	 */
+	public TreeMap<String, Integer> getDocumentFrequencies() {
+		TreeMap<String, Integer> frequencies = new TreeMap<>();
+		for (var entry : this.invertedIndex.entrySet()) {
+			if (entry.getValue().live > 0) {
+				frequencies.put(entry.getKey(), entry.getValue().live);
+			}
+		}
+
+		return frequencies;
 	}
 
 	/**
@@ -373,7 +1066,7 @@ public class InvertedIndex {
 	 * @return The number of words in the inverted index
 	 */
 	public int numWords() {
-		return this.invertedIndex.size();
+		return this.liveWords;
 	}
 
 	/**
@@ -383,11 +1076,35 @@ public class InvertedIndex {
 	 * an empty {@code Set} if {@code word} is not in the inverted index
 	 */
 	public Set<String> getLocations(String word) {
-		if (word == null || !containsWord(word)) {
+		var locations = word == null ? null : this.invertedIndex.get(word);
+		if (locations == null || locations.live == 0) {
 			return Collections.emptySet();
 		}
 
-		return Collections.unmodifiableSet(this.invertedIndex.get(word).keySet());
+		if (this.tombstoned == 0) {
+			return Collections.unmodifiableSet(locations.keySet());
+		}
+
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<String> iterator() {
+				return locations.entrySet().stream()
+					.filter(entry -> isLive(entry.getValue()))
+					.map(Map.Entry::getKey)
+					.iterator();
+			}
+
+			@Override
+			public int size() {
+				return locations.live;
+			}
+
+			@Override
+			public boolean contains(Object location) {
+				Postings positions = locations.get(location);
+				return positions != null && isLive(positions);
+			}
+		};
 	}
 
 	/**
@@ -404,7 +1121,7 @@ public class InvertedIndex {
 		}
 
 		var wordPositions = locations.get(location);
-		if (wordPositions == null) {
+		if (wordPositions == null || !isLive(wordPositions)) {
 			return Collections.emptySet();
 		}
 
@@ -416,7 +1133,30 @@ public class InvertedIndex {
 	 * @return An unmodifiable view of the words (keys) in the inverted index
 	 */
 	public Set<String> getWords() {
-		return Collections.unmodifiableSet(this.invertedIndex.keySet());
+		if (this.tombstoned == 0) {
+			return Collections.unmodifiableSet(this.invertedIndex.keySet());
+		}
+
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<String> iterator() {
+				return invertedIndex.entrySet().stream()
+					.filter(entry -> entry.getValue().live > 0)
+					.map(Map.Entry::getKey)
+					.iterator();
+			}
+
+			@Override
+			public int size() {
+				return liveWords;
+			}
+
+			@Override
+			public boolean contains(Object word) {
+				var locations = invertedIndex.get(word);
+				return locations != null && locations.live > 0;
+			}
+		};
 	}
 
 	/**
@@ -425,7 +1165,8 @@ public class InvertedIndex {
 	 * @return {@code true} if {@code word} is in the inverted index
 	 */
 	public boolean containsWord(String word) {
-		return this.invertedIndex.containsKey(word);
+		var locations = this.invertedIndex.get(word);
+		return locations != null && locations.live > 0;
 	}
 
 	/**
@@ -440,7 +1181,8 @@ public class InvertedIndex {
 			return false;
 		}
 
-		return wordLocations.containsKey(location);
+		var wordPositions = wordLocations.get(location);
+		return wordPositions != null && isLive(wordPositions);
 	}
 
 	/**
@@ -457,7 +1199,7 @@ public class InvertedIndex {
 		}
 
 		var wordPositions = locations.get(location);
-		if (wordPositions == null) {
+		if (wordPositions == null || !isLive(wordPositions)) {
 			return false;
 		}
 
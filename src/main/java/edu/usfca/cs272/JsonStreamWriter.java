@@ -0,0 +1,414 @@
+package edu.usfca.cs272;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the same "pretty" JSON as {@link JsonWriter} straight into a large
+ * reusable byte buffer as UTF-8. Indentation is copied from precomputed byte
+ * arrays and numbers are written digit by digit, so no intermediate
+ * {@link String} objects are created while writing large indexes.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @see JsonWriter
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class JsonStreamWriter implements Closeable, Flushable {
+	/** Default size of the byte buffer */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+
+	/** Number of indentation levels that are precomputed */
+	private static final int PRECOMPUTED_INDENTS = 32;
+
+	/** Indentation for each level, two spaces per level */
+	private static final byte[][] INDENTS = new byte[PRECOMPUTED_INDENTS][];
+
+	static {
+		for (int i = 0; i < PRECOMPUTED_INDENTS; i++) {
+			INDENTS[i] = new byte[i * 2];
+			Arrays.fill(INDENTS[i], (byte) ' ');
+		}
+	}
+
+	/** Where the buffer is flushed to */
+	private final OutputStream output;
+
+	/** Bytes written but not flushed yet */
+	private final byte[] buffer;
+
+	/** Number of bytes in the buffer */
+	private int position;
+
+	/**
+	 * Constructs a writer with a buffer of the given size
+	 * @param output Where to write the JSON to
+	 * @param bufferSize The size of the byte buffer
+	 */
+	public JsonStreamWriter(OutputStream output, int bufferSize) {
+		this.output = output;
+		this.buffer = new byte[Math.max(64, bufferSize)];
+		this.position = 0;
+	}
+
+	/**
+	 * Constructs a writer with the default buffer size
+	 * @param output Where to write the JSON to
+	 */
+	public JsonStreamWriter(OutputStream output) {
+		this(output, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Makes sure at least {@code bytes} bytes fit in the buffer, flushing it if necessary
+	 * @param bytes The number of bytes about to be written
+	 * @throws IOException If an IO error occurs
+	 */
+	private void reserve(int bytes) throws IOException {
+		if (this.position + bytes > this.buffer.length) {
+			flushBuffer();
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the output stream without flushing the stream itself
+	 * @throws IOException If an IO error occurs
+	 */
+	private void flushBuffer() throws IOException {
+		if (this.position > 0) {
+			this.output.write(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+	}
+
+	/**
+	 * Writes a single ASCII character
+	 * @param c The character to write
+	 * @throws IOException If an IO error occurs
+	 */
+	public void write(char c) throws IOException {
+		reserve(1);
+		this.buffer[this.position++] = (byte) c;
+	}
+
+	/**
+	 * Writes raw bytes
+	 * @param bytes The bytes to write
+	 * @throws IOException If an IO error occurs
+	 */
+	public void write(byte[] bytes) throws IOException {
+		if (bytes.length > this.buffer.length) {
+			flushBuffer();
+			this.output.write(bytes);
+			return;
+		}
+
+		reserve(bytes.length);
+		System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+		this.position += bytes.length;
+	}
+
+	/**
+	 * Writes the text encoded as UTF-8
+	 * @param text The text to write
+	 * @throws IOException If an IO error occurs
+	 */
+	public void write(String text) throws IOException {
+		int length = text.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			reserve(4);
+
+			if (c < 0x80) {
+				this.buffer[this.position++] = (byte) c;
+			} else if (c < 0x800) {
+				this.buffer[this.position++] = (byte) (0xC0 | (c >> 6));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				this.buffer[this.position++] = (byte) (0xF0 | (codePoint >> 18));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				this.buffer[this.position++] = (byte) '?';
+			} else {
+				this.buffer[this.position++] = (byte) (0xE0 | (c >> 12));
+				this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Writes the number in decimal without creating a {@link String}
+	 * @param value The number to write
+	 * @throws IOException If an IO error occurs
+	 */
+	public void write(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			write(Long.toString(value));
+			return;
+		}
+
+		reserve(20);
+
+		if (value < 0) {
+			this.buffer[this.position++] = (byte) '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+			digits++;
+		}
+
+		int end = this.position + digits;
+		for (int i = end - 1; i >= this.position; i--) {
+			this.buffer[i] = (byte) ('0' + (value % 10));
+			value /= 10;
+		}
+
+		this.position = end;
+	}
+
+	/**
+	 * Writes the number, using {@link #write(long)} for integral types
+	 * @param number The number to write
+	 * @throws IOException If an IO error occurs
+	 */
+	public void write(Number number) throws IOException {
+		if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+			write(number.longValue());
+		} else {
+			write(number.toString());
+		}
+	}
+
+	/**
+	 * Indents by the specified number of times. Does nothing if the indentation level is 0 or less.
+	 * @param indent The number of times to indent
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeIndent(int indent) throws IOException {
+		if (indent <= 0) {
+			return;
+		}
+
+		if (indent < PRECOMPUTED_INDENTS) {
+			write(INDENTS[indent]);
+		} else {
+			for (int i = 0; i < indent; i++) {
+				write(INDENTS[1]);
+			}
+		}
+	}
+
+	/**
+	 * Indents and then writes the text surrounded by {@code " "} quotation marks
+	 * @param element The text to write
+	 * @param indent The number of times to indent
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeQuote(String element, int indent) throws IOException {
+		writeIndent(indent);
+		write('"');
+		write(element);
+		write('"');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON array.
+	 * @param elements The elements to write
+	 * @param indent The initial indent level
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see JsonWriter#writeArray(Collection, java.io.Writer, int)
+	 */
+	public void writeArray(Collection<? extends Number> elements, int indent) throws IOException {
+		write('[');
+
+		var iterator = elements.iterator();
+		if (iterator.hasNext()) {
+			write('\n');
+			writeIndent(indent + 1);
+			write(iterator.next());
+		}
+
+		while (iterator.hasNext()) {
+			write(',');
+			write('\n');
+			writeIndent(indent + 1);
+			write(iterator.next());
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write(']');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object.
+	 * @param elements The elements to write
+	 * @param indent The initial indent level
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see JsonWriter#writeObject(Map, java.io.Writer, int)
+	 */
+	public void writeObject(Map<String, ? extends Number> elements, int indent) throws IOException {
+		write('{');
+
+		var iterator = elements.entrySet().iterator();
+		if (iterator.hasNext()) {
+			var element = iterator.next();
+			write('\n');
+			writeEntry(element.getKey(), element.getValue(), indent + 1);
+		}
+
+		while (iterator.hasNext()) {
+			var element = iterator.next();
+			write(',');
+			write('\n');
+			writeEntry(element.getKey(), element.getValue(), indent + 1);
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write('}');
+	}
+
+	/**
+	 * Writes the {@code key} and {@code value} as a key/value pair separated by a {@code :}
+	 * @param key The key to write
+	 * @param value The number to write
+	 * @param indent The indentation level of the key
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeEntry(String key, Number value, int indent) throws IOException {
+		writeQuote(key, indent);
+		write(':');
+		write(' ');
+		write(value);
+	}
+
+	/**
+	 * Writes the {@code key} and {@code value} as a key/value pair separated by a {@code :}
+	 * @param key The key to write
+	 * @param value The array to write
+	 * @param indent The indentation level of the key
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeEntry(String key, Collection<? extends Number> value, int indent) throws IOException {
+		writeQuote(key, indent);
+		write(':');
+		write(' ');
+		writeArray(value, indent);
+	}
+
+	/**
+	 * Writes the {@code key} and {@code value} as a key/value pair separated by a {@code :}
+	 * @param key The key to write
+	 * @param value The object of arrays to write
+	 * @param indent The indentation level of the key
+	 * @throws IOException If an IO error occurs
+	 */
+	public void writeEntry(String key, Map<String, ? extends Collection<? extends Number>> value, int indent) throws IOException {
+		writeQuote(key, indent);
+		write(':');
+		write(' ');
+		writeObjectArrays(value, indent);
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with nested arrays.
+	 * @param elements The elements to write
+	 * @param indent The initial indent level
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see JsonWriter#writeObjectArrays(Map, java.io.Writer, int)
+	 */
+	public void writeObjectArrays(Map<String, ? extends Collection<? extends Number>> elements, int indent) throws IOException {
+		write('{');
+
+		var iterator = elements.entrySet().iterator();
+		if (iterator.hasNext()) {
+			var element = iterator.next();
+			write('\n');
+			writeEntry(element.getKey(), element.getValue(), indent + 1);
+		}
+
+		while (iterator.hasNext()) {
+			var element = iterator.next();
+			write(',');
+			write('\n');
+			writeEntry(element.getKey(), element.getValue(), indent + 1);
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write('}');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with nested objects of arrays.
+	 * @param elements The elements to write
+	 * @param indent The initial indent level
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see JsonWriter#writeObjectObject(Map, java.io.Writer, int)
+	 */
+	public void writeObjectObject(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements, int indent) throws IOException {
+		write('{');
+
+		var iterator = elements.entrySet().iterator();
+		if (iterator.hasNext()) {
+			var element = iterator.next();
+			write('\n');
+			writeEntry(element.getKey(), element.getValue(), indent + 1);
+		}
+
+		while (iterator.hasNext()) {
+			var element = iterator.next();
+			write(',');
+			write('\n');
+			writeEntry(element.getKey(), element.getValue(), indent + 1);
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write('}');
+	}
+
+	/**
+	 * Writes the buffered bytes and flushes the underlying output stream
+	 * @throws IOException If an IO error occurs
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		this.output.flush();
+	}
+
+	/**
+	 * Writes the buffered bytes and closes the underlying output stream
+	 * @throws IOException If an IO error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			this.output.close();
+		}
+	}
+}
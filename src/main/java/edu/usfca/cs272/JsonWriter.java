@@ -1,21 +1,38 @@
 package edu.usfca.cs272;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Outputs several simple data structures in "pretty" JSON format where newlines
  * are used to separate elements and nested elements are indented using spaces.
+ * Every method that writes to a {@link Path} compresses the output with a
+ * {@link ParallelGzipOutputStream} if the file name ends with {@value #GZIP_EXTENSION}.
  *
  * Warning: This class is not thread-safe. If multiple threads access this class
  * concurrently, access must be synchronized externally.
@@ -25,6 +42,60 @@ import java.util.Map;
  * @version Fall 2024
  */
 public class JsonWriter {
+	/** Number of top-level entries serialized together by one task in the parallel writers */
+	public static final int PARALLEL_CHUNK_SIZE = 2048;
+
+	/** Bytes that separate top-level entries */
+	private static final byte[] ENTRY_SEPARATOR = ",\n".getBytes(UTF_8);
+
+	/** File name extension of outputs that are written gzip-compressed */
+	public static final String GZIP_EXTENSION = ".gz";
+
+	/**
+	 * Returns {@code true} if output written to the path should be gzip-compressed
+	 * @param path The file path to check
+	 * @return {@code true} if the file name ends with {@value #GZIP_EXTENSION}
+	 */
+	public static boolean isGzip(Path path) {
+		Path fileName = path.getFileName();
+		return fileName != null && fileName.toString().toLowerCase().endsWith(GZIP_EXTENSION);
+	}
+
+	/**
+	 * Opens the file for writing, compressing with a {@link ParallelGzipOutputStream}
+	 * if the file name ends with {@value #GZIP_EXTENSION}
+	 * @param path The file path to write to
+	 * @return A stream that writes to the file
+	 * @throws IOException If an IO error occurs
+	 */
+	public static OutputStream newOutputStream(Path path) throws IOException {
+		OutputStream output = Files.newOutputStream(path);
+		if (!isGzip(path)) {
+			return output;
+		}
+
+		try {
+			return new ParallelGzipOutputStream(new BufferedOutputStream(output, 1 << 16));
+		} catch (IOException e) {
+			output.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the file for writing UTF-8 text, compressing it if the file name ends with {@value #GZIP_EXTENSION}
+	 * @param path The file path to write to
+	 * @return A writer that writes to the file
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see #newOutputStream(Path)
+	 */
+	public static BufferedWriter newBufferedWriter(Path path) throws IOException {
+		return isGzip(path)
+			? new BufferedWriter(new OutputStreamWriter(newOutputStream(path), UTF_8))
+			: Files.newBufferedWriter(path, UTF_8);
+	}
+
 	/**
 	 * Indents the writer by the specified number of times. Does nothing if the
 	 * indentation level is 0 or less.
@@ -154,7 +225,7 @@ public class JsonWriter {
 	 */
 	public static void writeArray(Collection<? extends Number> elements,
 			Path path) throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+		try (BufferedWriter writer = newBufferedWriter(path)) {
 			writeArray(elements, writer, 0);
 		}
 	}
@@ -241,20 +312,21 @@ public class JsonWriter {
 	}
 
 	/**
-	 * Writes the elements as a pretty JSON object to file.
+	 * Writes the elements as a pretty JSON object to file. Uses a
+	 * {@link JsonStreamWriter}, which produces the same output as
+	 * {@link #writeObject(Map, Writer, int)} without creating intermediate strings.
 	 *
 	 * @param elements the elements to write
 	 * @param path the file path to use
 	 * @throws IOException if an IO error occurs
 	 *
-	 * @see Files#newBufferedReader(Path, java.nio.charset.Charset)
 	 * @see StandardCharsets#UTF_8
-	 * @see #writeObject(Map, Writer, int)
+	 * @see JsonStreamWriter#writeObject(Map, int)
 	 */
 	public static void writeObject(Map<String, ? extends Number> elements,
 			Path path) throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
-			writeObject(elements, writer, 0);
+		try (JsonStreamWriter writer = new JsonStreamWriter(newOutputStream(path))) {
+			writer.writeObject(elements, 0);
 		}
 	}
 
@@ -328,7 +400,7 @@ public class JsonWriter {
 	public static void writeObjectArrays(
 			Map<String, ? extends Collection<? extends Number>> elements, Path path)
 			throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+		try (BufferedWriter writer = newBufferedWriter(path)) {
 			writeObjectArrays(elements, writer, 0);
 		}
 	}
@@ -403,7 +475,7 @@ public class JsonWriter {
 	public static void writeArrayObjects(
 			Collection<? extends Map<String, ? extends Number>> elements, Path path)
 			throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+		try (BufferedWriter writer = newBufferedWriter(path)) {
 			writeArrayObjects(elements, writer, 0);
 		}
 	}
@@ -460,13 +532,192 @@ public class JsonWriter {
 
 	/**
 	 * Writes the elements as a pretty JSON array with nested Maps to file.
+	 * Uses a {@link JsonStreamWriter}, which produces the same output as
+	 * {@link #writeObjectObject(Map, Writer, int)} much faster for large indexes.
 	 * @param elements The elements to write
 	 * @param path The file path to write to
 	 * @throws IOException If an IO error occurs
 	 */
 	public static void writeObjectObject(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements, Path path) throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
-			writeObjectObject(elements, writer, 0);
+		try (JsonStreamWriter writer = new JsonStreamWriter(newOutputStream(path))) {
+			writer.writeObjectObject(elements, 0);
+		}
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON array with nested Maps to file, using the
+	 * work queue to serialize contiguous ranges of entries concurrently. The ranges are
+	 * serialized into separate buffers, a wave of at most one range per worker thread at
+	 * a time, and each wave is written in order with a single gathering write. The file
+	 * is byte-for-byte the same as {@link #writeObjectObject(Map, Path)}. If the file
+	 * name ends with {@value #GZIP_EXTENSION}, the waves are compressed instead.
+	 *
+	 * <p>
+	 * The elements must not be modified until this method returns.
+	 *
+	 * @param elements The elements to write
+	 * @param path The file path to write to
+	 * @param queue The work queue used to serialize ranges of entries
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeObjectObject(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements, Path path, WorkQueue queue) throws IOException {
+		writeParallel(new ArrayList<>(elements.entrySet()), path, queue);
+	}
+
+	/**
+	 * Serializes the entries in waves of contiguous ranges and writes them in order.
+	 *
+	 * @param <V> the type of the nested maps
+	 * @param entries The top-level entries in the order they should be written
+	 * @param path The file path to write to
+	 * @param queue The work queue used to serialize ranges of entries
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see #writeObjectObject(Map, Path, WorkQueue)
+	 */
+	private static <V extends Map<String, ? extends Collection<? extends Number>>> void writeParallel(List<Map.Entry<String, V>> entries, Path path, WorkQueue queue) throws IOException {
+		int chunks = (entries.size() + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+
+		try (WritableByteChannel channel = isGzip(path)
+				? Channels.newChannel(newOutputStream(path))
+				: FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			writeFully(channel, ByteBuffer.wrap("{\n".getBytes(UTF_8)));
+
+			for (int wave = 0; wave < chunks; wave += queue.size()) {
+				int waveSize = Math.min(queue.size(), chunks - wave);
+				List<CompletableFuture<ChunkBuffer>> futures = new ArrayList<>(waveSize);
+
+				for (int i = 0; i < waveSize; i++) {
+					int start = (wave + i) * PARALLEL_CHUNK_SIZE;
+					int end = Math.min(entries.size(), start + PARALLEL_CHUNK_SIZE);
+
+					// Only these chunks are waited on, never the rest of the shared work queue
+					futures.add(CompletableFuture.supplyAsync(() -> writeChunk(entries, start, end), queue::execute));
+				}
+
+				ChunkBuffer[] buffers = joinAll(futures);
+				ByteBuffer[] gather = new ByteBuffer[waveSize * 2];
+				for (int i = 0; i < waveSize; i++) {
+					gather[i * 2] = ByteBuffer.wrap(wave + i == 0 ? new byte[0] : ENTRY_SEPARATOR);
+					gather[i * 2 + 1] = buffers[i].toByteBuffer();
+				}
+
+				writeFully(channel, gather);
+			}
+
+			writeFully(channel, ByteBuffer.wrap((chunks == 0 ? "}" : "\n}").getBytes(UTF_8)));
+		}
+	}
+
+	/**
+	 * Serializes a contiguous range of entries into a buffer
+	 *
+	 * @param <V> the type of the nested maps
+	 * @param entries The top-level entries in the order they should be written
+	 * @param start The index of the first entry to serialize
+	 * @param end The index after the last entry to serialize
+	 * @return The buffer holding the serialized entries
+	 * @throws UncheckedIOException If an IO error occurs
+	 */
+	private static <V extends Map<String, ? extends Collection<? extends Number>>> ChunkBuffer writeChunk(List<Map.Entry<String, V>> entries, int start, int end) {
+		ChunkBuffer buffer = new ChunkBuffer();
+
+		try (JsonStreamWriter writer = new JsonStreamWriter(buffer, 1 << 13)) {
+			for (int j = start; j < end; j++) {
+				if (j > start) {
+					writer.write(ENTRY_SEPARATOR);
+				}
+
+				writer.writeEntry(entries.get(j).getKey(), entries.get(j).getValue(), 1);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * Waits for every chunk of a wave, even if one of them fails, so no chunk is still
+	 * reading the entries once this returns or throws
+	 * @param futures The chunks of the wave, in order
+	 * @return The serialized chunks, in order
+	 * @throws IOException If any chunk failed to serialize
+	 */
+	private static ChunkBuffer[] joinAll(List<CompletableFuture<ChunkBuffer>> futures) throws IOException {
+		ChunkBuffer[] buffers = new ChunkBuffer[futures.size()];
+		Throwable failure = null;
+
+		for (int i = 0; i < buffers.length; i++) {
+			try {
+				buffers[i] = futures.get(i).join();
+			} catch (CompletionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			}
+		}
+
+		if (failure instanceof UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		if (failure instanceof RuntimeException e) {
+			throw e;
+		}
+
+		if (failure instanceof Error e) {
+			throw e;
+		}
+
+		if (failure != null) {
+			throw new IOException("Unable to serialize entries.", failure);
+		}
+
+		return buffers;
+	}
+
+	/**
+	 * Writes every remaining byte of the buffers to the channel, in order, with
+	 * gathering writes if the channel supports them
+	 * @param channel The channel to write to
+	 * @param buffers The buffers to write
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void writeFully(WritableByteChannel channel, ByteBuffer... buffers) throws IOException {
+		if (channel instanceof GatheringByteChannel gathering) {
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+
+			while (remaining > 0) {
+				remaining -= gathering.write(buffers);
+			}
+
+			return;
+		}
+
+		for (ByteBuffer buffer : buffers) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/** Byte array output stream whose contents can be wrapped without copying */
+	private static class ChunkBuffer extends ByteArrayOutputStream {
+		/** Creates an empty buffer */
+		public ChunkBuffer() {
+			super(1 << 16);
+		}
+
+		/**
+		 * Returns a view of the bytes written so far
+		 * @return A view of the bytes written so far
+		 */
+		public ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(this.buf, 0, this.count);
 		}
 	}
 
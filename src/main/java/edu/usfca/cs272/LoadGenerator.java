@@ -0,0 +1,466 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for the web server that replays the lines of a query file against a
+ * search URL, such as {@code /search} or {@code /api/search}. Reports the throughput,
+ * the errors, and the latency percentiles, so runs with different {@link ServerConfig}
+ * settings can be compared.
+ *
+ * <p>Without {@code -rate}, the test is a closed model: a fixed number of clients each
+ * send a search, wait for the response, and send the next search. A slow response
+ * delays the searches its client would have sent meanwhile, which hides exactly the
+ * latency a stall causes (coordinated omission), so the percentiles are reported both
+ * as measured and corrected: every latency longer than the expected interval between
+ * searches adds the latencies the delayed searches would have seen, as HdrHistogram
+ * does.</p>
+ *
+ * <p>With {@code -rate}, the test is an open model: searches are sent at a fixed
+ * rate whether or not earlier searches were answered, and each latency is measured
+ * from when the search was scheduled to be sent, so no correction is needed.</p>
+ *
+ * <pre>
+ * java edu.usfca.cs272.LoadGenerator -url http://localhost:8080/api/search -query queries.txt -clients 64 -seconds 30
+ * java edu.usfca.cs272.LoadGenerator -url http://localhost:8080/search -query queries.txt -rate 500 -seconds 30
+ * </pre>
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class LoadGenerator {
+	/** {@code -url} flag. Next argument is the search URL, which is sent the query as the {@code q} parameter. */
+	public static final String URL = "-url";
+
+	/** Search URL to use if no value after the {@code -url} flag was provided */
+	public static final String DEFAULT_URL = "http://localhost:8080/api/search";
+
+	/** {@code -query} flag. Next argument is the file of queries to send, one per line. */
+	public static final String QUERY = "-query";
+
+	/** {@code -clients} flag. Next argument is the number of concurrent clients of the closed model. */
+	public static final String CLIENTS = "-clients";
+
+	/** Number of concurrent clients if no value after the {@code -clients} flag was provided */
+	public static final int DEFAULT_CLIENTS = 16;
+
+	/** {@code -rate} flag. Next argument is the number of searches sent per second by the open model. */
+	public static final String RATE = "-rate";
+
+	/** {@code -interval} flag. Next argument is the expected microseconds between searches of a closed model client. */
+	public static final String INTERVAL = "-interval";
+
+	/** {@code -seconds} flag. Next argument is how long the test runs after the warmup. */
+	public static final String SECONDS = "-seconds";
+
+	/** Number of seconds the test runs if no value after the {@code -seconds} flag was provided */
+	public static final int DEFAULT_SECONDS = 10;
+
+	/** {@code -warmup} flag. Next argument is the number of seconds of requests that are not measured. */
+	public static final String WARMUP = "-warmup";
+
+	/** Number of seconds of warmup if no value after the {@code -warmup} flag was provided */
+	public static final int DEFAULT_WARMUP = 2;
+
+	/** The URLs to request, one per query */
+	private final List<URI> targets;
+
+	/** The HTTP client shared by every client thread */
+	private final HttpClient client;
+
+	/** Index of the next query to send */
+	private final AtomicLong next;
+
+	/**
+	 * Constructs a load generator for a search URL and queries
+	 * @param url The search URL
+	 * @param queries The queries to send
+	 */
+	public LoadGenerator(String url, List<String> queries) {
+		String separator = url.contains("?") ? "&" : "?";
+		this.targets = new ArrayList<>();
+		for (String query : queries) {
+			if (!query.isBlank()) {
+				this.targets.add(URI.create(url + separator + "q=" + URLEncoder.encode(query.strip(), UTF_8)));
+			}
+		}
+
+		if (this.targets.isEmpty()) {
+			this.targets.add(URI.create(url));
+		}
+
+		this.client = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+		this.next = new AtomicLong();
+	}
+
+	/** Latencies and errors of the measured requests */
+	public static class Recorder {
+		/** Latencies in nanoseconds */
+		private long[] latencies;
+
+		/** Number of latencies recorded */
+		private int size;
+
+		/** Number of failed requests or responses that were not 200 */
+		private long errors;
+
+		/** Number of responses that arrived while measuring, whenever their search was sent */
+		private long completed;
+
+		/** Nanoseconds spent measuring */
+		private long elapsed;
+
+		/**
+		 * Constructs an empty recorder
+		 */
+		public Recorder() {
+			this.latencies = new long[1 << 12];
+			this.size = 0;
+			this.errors = 0;
+			this.completed = 0;
+			this.elapsed = 0;
+		}
+
+		/**
+		 * Records a latency
+		 * @param nanos The latency in nanoseconds
+		 * @param ok Whether the response status was 200
+		 */
+		public synchronized void record(long nanos, boolean ok) {
+			if (this.size == this.latencies.length) {
+				this.latencies = Arrays.copyOf(this.latencies, this.size * 2);
+			}
+
+			this.latencies[this.size++] = nanos;
+			if (!ok) {
+				this.errors++;
+			}
+		}
+
+		/**
+		 * Counts a response that arrived while measuring
+		 */
+		public synchronized void complete() {
+			this.completed++;
+		}
+
+		/**
+		 * Sets how long the responses were counted for
+		 * @param nanos The nanoseconds spent measuring
+		 */
+		public synchronized void setElapsed(long nanos) {
+			this.elapsed = nanos;
+		}
+
+		/**
+		 * Adds the latencies, errors and responses of another recorder
+		 * @param other The recorder to add
+		 */
+		public synchronized void addAll(Recorder other) {
+			synchronized (other) {
+				for (int i = 0; i < other.size; i++) {
+					record(other.latencies[i], true);
+				}
+
+				this.errors += other.errors;
+				this.completed += other.completed;
+				this.elapsed = Math.max(this.elapsed, other.elapsed);
+			}
+		}
+
+		/**
+		 * Returns the number of recorded latencies
+		 * @return The number of measured requests
+		 */
+		public synchronized int size() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the number of failed requests
+		 * @return The number of errors
+		 */
+		public synchronized long getErrors() {
+			return this.errors;
+		}
+
+		/**
+		 * Returns the number of responses that arrived per second while measuring
+		 * @return The throughput in responses per second
+		 */
+		public synchronized double getThroughput() {
+			return this.elapsed > 0 ? this.completed * 1e9 / this.elapsed : 0;
+		}
+
+		/**
+		 * Returns the recorded latencies, sorted
+		 * @return A sorted copy of the latencies in nanoseconds
+		 */
+		public synchronized long[] sorted() {
+			long[] sorted = Arrays.copyOf(this.latencies, this.size);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+
+		/**
+		 * Returns the recorded latencies corrected for coordinated omission. Every latency
+		 * longer than the expected interval adds the latencies of the requests that would
+		 * have been sent during it, each one interval shorter than the last.
+		 * @param interval The expected nanoseconds between requests of a client
+		 * @return The sorted corrected latencies in nanoseconds
+		 */
+		public synchronized long[] corrected(long interval) {
+			Recorder corrected = new Recorder();
+			for (int i = 0; i < this.size; i++) {
+				corrected.record(this.latencies[i], true);
+
+				if (interval > 0) {
+					for (long missing = this.latencies[i] - interval; missing >= interval; missing -= interval) {
+						corrected.record(missing, true);
+					}
+				}
+			}
+
+			return corrected.sorted();
+		}
+	}
+
+	/**
+	 * Runs the closed model: clients that each wait for a response before sending the
+	 * next search, first for the warmup and then for the measured duration
+	 * @param clients The number of concurrent clients
+	 * @param warmup The number of seconds that are not measured
+	 * @param seconds The number of seconds that are measured
+	 * @return The latencies from when each measured search was sent
+	 * @throws InterruptedException If interrupted while waiting for the clients
+	 */
+	public Recorder runClosed(int clients, int warmup, int seconds) throws InterruptedException {
+		long start = System.nanoTime();
+		long measureFrom = start + Duration.ofSeconds(warmup).toNanos();
+		long end = measureFrom + Duration.ofSeconds(seconds).toNanos();
+
+		Recorder[] recorders = new Recorder[clients];
+		Thread[] threads = new Thread[clients];
+
+		for (int i = 0; i < clients; i++) {
+			Recorder recorder = new Recorder();
+			recorders[i] = recorder;
+			threads[i] = Thread.ofPlatform().name("client-" + i).start(() -> {
+				long now;
+				while ((now = System.nanoTime()) < end) {
+					boolean ok = send();
+					long done = System.nanoTime();
+					if (now >= measureFrom) {
+						recorder.record(done - now, ok);
+					}
+
+					if (done >= measureFrom && done < end) {
+						recorder.complete();
+					}
+				}
+			});
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Recorder combined = new Recorder();
+		for (Recorder recorder : recorders) {
+			combined.addAll(recorder);
+		}
+
+		combined.setElapsed(end - measureFrom);
+		return combined;
+	}
+
+	/**
+	 * Runs the open model: searches sent at a fixed rate without waiting for earlier
+	 * responses, first for the warmup and then for the measured duration. Waits for
+	 * every sent search to be answered or to time out. The throughput counts the
+	 * responses that arrived during the measured duration, so it falls below the rate
+	 * when the server or the sender cannot keep up. Searches the sender has not sent
+	 * by the end are not sent at all.
+	 * @param rate The number of searches sent per second
+	 * @param warmup The number of seconds that are not measured
+	 * @param seconds The number of seconds that are measured
+	 * @return The latencies from when each measured search was scheduled to be sent
+	 */
+	public Recorder runOpen(int rate, int warmup, int seconds) {
+		long start = System.nanoTime();
+		long measureFrom = start + Duration.ofSeconds(warmup).toNanos();
+		long end = measureFrom + Duration.ofSeconds(seconds).toNanos();
+		// Never 0, which would keep the send loop from ever reaching the end
+		long interval = Math.max(1, Duration.ofSeconds(1).toNanos() / rate);
+
+		Recorder recorder = new Recorder();
+		List<CompletableFuture<?>> pending = new ArrayList<>();
+
+		for (long scheduled = start; scheduled < end; scheduled += interval) {
+			long now;
+			while ((now = System.nanoTime()) < scheduled) {
+				LockSupport.parkNanos(scheduled - now);
+			}
+
+			// A sender too slow for the rate stops at the end instead of working off its backlog
+			if (now >= end) {
+				break;
+			}
+
+			// Measured from the schedule, so a late send still counts the time it waited
+			long intended = scheduled;
+			pending.add(sendAsync().thenAccept(ok -> {
+				long done = System.nanoTime();
+				if (intended >= measureFrom) {
+					recorder.record(done - intended, ok);
+				}
+
+				if (done >= measureFrom && done < end) {
+					recorder.complete();
+				}
+			}));
+		}
+
+		CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+		recorder.setElapsed(end - measureFrom);
+		return recorder;
+	}
+
+	/**
+	 * Returns the request for the next query
+	 * @return The request
+	 */
+	private HttpRequest nextRequest() {
+		URI target = this.targets.get((int) (this.next.getAndIncrement() % this.targets.size()));
+		return HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(30)).GET().build();
+	}
+
+	/**
+	 * Sends the next query and reads the whole response
+	 * @return {@code true} if the response status was 200
+	 */
+	private boolean send() {
+		try {
+			return this.client.send(nextRequest(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Sends the next query without waiting for the response
+	 * @return Completes with {@code true} once the whole response was read with status 200,
+	 *   or with {@code false} if the request failed
+	 */
+	private CompletableFuture<Boolean> sendAsync() {
+		return this.client.sendAsync(nextRequest(), HttpResponse.BodyHandlers.discarding())
+			.handle((response, error) -> error == null && response.statusCode() == 200);
+	}
+
+	/**
+	 * Returns a percentile of sorted latencies
+	 * @param latencies The sorted latencies
+	 * @param percentile The percentile, from 0 to 100
+	 * @return The latency in milliseconds
+	 */
+	private static double percentile(long[] latencies, double percentile) {
+		if (latencies.length == 0) {
+			return 0;
+		}
+
+		int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+		return latencies[Math.clamp(index, 0, latencies.length - 1)] / 1e6;
+	}
+
+	/**
+	 * Prints the percentiles of sorted latencies
+	 * @param label Describes the latencies and their unit
+	 * @param latencies The sorted latencies
+	 */
+	private static void printPercentiles(String label, long[] latencies) {
+		System.out.printf("%s: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f\n",
+			label,
+			percentile(latencies, 50),
+			percentile(latencies, 90),
+			percentile(latencies, 99),
+			percentile(latencies, 99.9),
+			percentile(latencies, 100)
+		);
+	}
+
+	/**
+	 * Runs a load test with the settings in the command-line arguments and prints the results
+	 * @param args flag/value pairs used to start the load test
+	 */
+	public static void main(String[] args) {
+		ArgumentParser argParser = new ArgumentParser(args);
+		List<String> queries = List.of("");
+
+		if (argParser.hasFlag(QUERY)) {
+			Path location = argParser.getPath(QUERY);
+			try {
+				queries = Files.readAllLines(location, UTF_8);
+			} catch (IOException | NullPointerException e) {
+				System.err.printf("Unable to read queries from: %s\n", location);
+				return;
+			}
+		}
+
+		int clients = Math.max(1, argParser.getInteger(CLIENTS, DEFAULT_CLIENTS));
+		int rate = Math.max(0, argParser.getInteger(RATE, 0));
+		int seconds = Math.max(1, argParser.getInteger(SECONDS, DEFAULT_SECONDS));
+		int warmup = Math.max(0, argParser.getInteger(WARMUP, DEFAULT_WARMUP));
+
+		LoadGenerator generator = new LoadGenerator(argParser.getString(URL, DEFAULT_URL), queries);
+
+		if (rate > 0) {
+			Recorder recorder = generator.runOpen(rate, warmup, seconds);
+			long[] latencies = recorder.sorted();
+
+			System.out.printf("open model at %d requests/s, %d requests in %d s: %.1f responses/s, %d errors (%.2f%%)\n",
+				rate, latencies.length, seconds, recorder.getThroughput(), recorder.getErrors(), 100.0 * recorder.getErrors() / Math.max(1, latencies.length));
+			printPercentiles("latency from schedule ms", latencies);
+			return;
+		}
+
+		Recorder recorder;
+		try {
+			recorder = generator.runClosed(clients, warmup, seconds);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		long[] latencies = recorder.sorted();
+
+		// Without a given interval, a client is expected to send a search every median latency
+		long interval = argParser.hasFlag(INTERVAL)
+			? 1000L * Math.max(0, argParser.getInteger(INTERVAL, 0))
+			: (long) (percentile(latencies, 50) * 1e6);
+
+		System.out.printf("closed model with %d clients, %d requests in %d s: %.1f responses/s, %d errors (%.2f%%)\n",
+			clients, latencies.length, seconds, recorder.getThroughput(), recorder.getErrors(), 100.0 * recorder.getErrors() / Math.max(1, latencies.length));
+		printPercentiles("latency ms", latencies);
+		printPercentiles(String.format("corrected latency ms for a %.2f ms interval", interval / 1e6), recorder.corrected(interval));
+	}
+}
@@ -0,0 +1,408 @@
+package edu.usfca.cs272;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Registry of named counters, gauges, and latency histograms. Recording a value
+ * never locks. The registry can be written as text, one {@code name value} line per
+ * value, and published as a JMX MBean whose attributes are the same values.
+ *
+ * This class is thread safe.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class Metrics {
+	/** The registry shared by the whole program */
+	private static final Metrics SHARED = new Metrics();
+
+	/** The quantiles written for every histogram */
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	/** Counters by name */
+	private final ConcurrentSkipListMap<String, Counter> counters;
+
+	/** Gauges by name */
+	private final ConcurrentSkipListMap<String, LongSupplier> gauges;
+
+	/** Histograms by name */
+	private final ConcurrentSkipListMap<String, Histogram> histograms;
+
+	/** A count that only goes up */
+	public static class Counter {
+		/** The count */
+		private final LongAdder count;
+
+		/**
+		 * Constructs a counter at 0
+		 */
+		public Counter() {
+			this.count = new LongAdder();
+		}
+
+		/**
+		 * Adds one to the count
+		 */
+		public void increment() {
+			this.count.increment();
+		}
+
+		/**
+		 * Adds to the count
+		 * @param amount The amount to add
+		 */
+		public void add(long amount) {
+			this.count.add(amount);
+		}
+
+		/**
+		 * Returns the count
+		 * @return The count
+		 */
+		public long get() {
+			return this.count.sum();
+		}
+	}
+
+	/**
+	 * Histogram of non-negative values with logarithmic buckets. Every power of two is
+	 * split into {@value #SUB_BUCKETS} buckets of equal width, so a quantile is within
+	 * about 6% of the recorded value, the same trade-off HDR histograms make.
+	 */
+	public static class Histogram {
+		/** Number of bits of each value that pick the bucket within its power of two */
+		private static final int SUB_BUCKET_BITS = 4;
+
+		/** Number of buckets within each power of two */
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		/** Number of buckets, enough for every non-negative {@code long} */
+		private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+		/** Number of values in each bucket */
+		private final AtomicLongArray buckets;
+
+		/** Number of values */
+		private final LongAdder count;
+
+		/** Sum of the values */
+		private final LongAdder sum;
+
+		/** Largest value */
+		private final LongAccumulator max;
+
+		/**
+		 * Constructs an empty histogram
+		 */
+		public Histogram() {
+			this.buckets = new AtomicLongArray(BUCKETS);
+			this.count = new LongAdder();
+			this.sum = new LongAdder();
+			this.max = new LongAccumulator(Math::max, 0);
+		}
+
+		/**
+		 * Returns the bucket of a value
+		 * @param value The value, at least 0
+		 * @return The index of the bucket
+		 */
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+
+			int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+			int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+			return (shift + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		/**
+		 * Returns the largest value in a bucket
+		 * @param bucket The index of the bucket
+		 * @return The largest value that falls in the bucket
+		 */
+		private static long highestValue(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+
+			int shift = bucket / SUB_BUCKETS - 1;
+			long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+			return lowest + (1L << shift) - 1;
+		}
+
+		/**
+		 * Records a value
+		 * @param value The value, where negative values are recorded as 0
+		 */
+		public void record(long value) {
+			value = Math.max(0, value);
+			this.buckets.incrementAndGet(bucket(value));
+			this.count.increment();
+			this.sum.add(value);
+			this.max.accumulate(value);
+		}
+
+		/**
+		 * Records the time since a start time
+		 * @param startNanos The start time from {@link System#nanoTime()}
+		 */
+		public void recordSince(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		/**
+		 * Returns the number of recorded values
+		 * @return The number of values
+		 */
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		/**
+		 * Returns the sum of the recorded values
+		 * @return The sum
+		 */
+		public long getSum() {
+			return this.sum.sum();
+		}
+
+		/**
+		 * Returns the largest recorded value
+		 * @return The largest value, or 0 if nothing was recorded
+		 */
+		public long getMax() {
+			return this.max.get();
+		}
+
+		/**
+		 * Returns an upper bound of a quantile of the recorded values
+		 * @param quantile The quantile, from 0 to 1
+		 * @return The largest value in the bucket of the quantile, at most the largest value, or 0 if nothing was recorded
+		 */
+		public long getQuantile(double quantile) {
+			long total = 0;
+			long[] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = this.buckets.get(i);
+				total += counts[i];
+			}
+
+			if (total == 0) {
+				return 0;
+			}
+
+			long rank = Math.max(1, (long) Math.ceil(quantile * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValue(i), getMax());
+				}
+			}
+
+			return getMax();
+		}
+	}
+
+	/**
+	 * Constructs an empty registry
+	 */
+	public Metrics() {
+		this.counters = new ConcurrentSkipListMap<>();
+		this.gauges = new ConcurrentSkipListMap<>();
+		this.histograms = new ConcurrentSkipListMap<>();
+	}
+
+	/**
+	 * Returns the registry shared by the whole program
+	 * @return The shared registry
+	 */
+	public static Metrics shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the counter with the name, creating it if needed
+	 * @param name The name of the counter
+	 * @return The counter
+	 */
+	public Counter counter(String name) {
+		return this.counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * Returns the histogram with the name, creating it if needed
+	 * @param name The name of the histogram
+	 * @return The histogram
+	 */
+	public Histogram histogram(String name) {
+		return this.histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * Adds a gauge, replacing any gauge with the same name
+	 * @param name The name of the gauge
+	 * @param value Supplies the current value whenever the metrics are read
+	 */
+	public void gauge(String name, LongSupplier value) {
+		this.gauges.put(name, value);
+	}
+
+	/**
+	 * Returns every value in the registry by name, in sorted order within counters,
+	 * gauges, and histograms. Each histogram adds its count, sum, maximum, and quantiles.
+	 * @return The values by name
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> values = new LinkedHashMap<>();
+
+		for (var entry : this.counters.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+
+		for (var entry : this.gauges.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().getAsLong());
+		}
+
+		for (var entry : this.histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			values.put(entry.getKey() + "_count", histogram.getCount());
+			values.put(entry.getKey() + "_sum", histogram.getSum());
+			values.put(entry.getKey() + "_max", histogram.getMax());
+
+			for (double quantile : QUANTILES) {
+				values.put(entry.getKey() + "_p" + formatQuantile(quantile), histogram.getQuantile(quantile));
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Formats a quantile as a percentile without the decimal point, such as 99 or 999
+	 * @param quantile The quantile
+	 * @return The formatted quantile
+	 */
+	private static String formatQuantile(double quantile) {
+		String percentile = Double.toString(quantile * 100);
+		return percentile.endsWith(".0") ? percentile.substring(0, percentile.length() - 2) : percentile.replace(".", "");
+	}
+
+	/**
+	 * Returns every value as text, one {@code name value} line per value
+	 * @return The text
+	 */
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		for (var entry : snapshot().entrySet()) {
+			text.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Publishes the registry as a JMX MBean with one read-only attribute per value.
+	 * Does nothing if an MBean with the name is already registered.
+	 * @param name The object name, such as {@code edu.usfca.cs272:type=Metrics}
+	 * @throws JMException If the name is invalid or the MBean cannot be registered
+	 */
+	public void registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(new MetricsMBean(), new ObjectName(name));
+		} catch (InstanceAlreadyExistsException e) {
+			// Already published, for example by an earlier server in the same program
+		}
+	}
+
+	/** Exposes the values of the registry as MBean attributes */
+	private class MetricsMBean implements DynamicMBean {
+		/**
+		 * Constructs an MBean for the enclosing registry
+		 */
+		public MetricsMBean() {
+		}
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Long value = snapshot().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+
+			return value;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Long> values = snapshot();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				Long value = values.get(attribute);
+				if (value != null) {
+					list.add(new Attribute(attribute, value));
+				}
+			}
+
+			return list;
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations: " + actionName);
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+			for (String name : snapshot().keySet()) {
+				attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+			}
+
+			return new MBeanInfo(Metrics.class.getName(), "Search engine metrics", attributes.toArray(MBeanAttributeInfo[]::new), null, null, null);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"Metrics currently has %d counters, %d gauges, and %d histograms.",
+			this.counters.size(),
+			this.gauges.size(),
+			this.histograms.size()
+		);
+	}
+}
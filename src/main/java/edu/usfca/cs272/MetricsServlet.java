@@ -0,0 +1,45 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that serves the metrics registry as plain text, one {@code name value}
+ * line per value, for monitoring systems to scrape.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class MetricsServlet extends HttpServlet {
+	/** Class version for serialization */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The metrics to serve.
+	 * Marked as {@code transient} because this member is not serializable and does not need to be persisted if the servlet is serialized.
+	 */
+	private final transient Metrics metrics;
+
+	/**
+	 * Constructs a {@code MetricsServlet} that serves a metrics registry
+	 * @param metrics The metrics to serve
+	 */
+	public MetricsServlet(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		byte[] text = this.metrics.toText().getBytes(UTF_8);
+
+		response.setContentType("text/plain; charset=UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		response.setContentLength(text.length);
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.getOutputStream().write(text);
+	}
+}
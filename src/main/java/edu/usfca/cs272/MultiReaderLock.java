@@ -49,10 +49,21 @@ public class MultiReaderLock {
 	 */
 	private final Object lock;
 
+	/** Nanoseconds each read lock that had to wait waited to be acquired, or {@code null} to not record them */
+	private final Metrics.Histogram readWait;
+
+	/** Nanoseconds each write lock that had to wait waited to be acquired, or {@code null} to not record them */
+	private final Metrics.Histogram writeWait;
+
 	/**
-	 * Initializes a new simple read/write lock.
+	 * Initializes a new simple read/write lock that records how long locks wait.
+	 * Only locks that had to wait are recorded, so acquiring an uncontended lock
+	 * costs no more than without recording.
+	 *
+	 * @param readWait where to record the nanoseconds each read lock waited, or {@code null}
+	 * @param writeWait where to record the nanoseconds each write lock waited, or {@code null}
 	 */
-	public MultiReaderLock() {
+	public MultiReaderLock(Metrics.Histogram readWait, Metrics.Histogram writeWait) {
 		readerLock = new ReadLock();
 		writerLock = new WriteLock();
 
@@ -62,6 +73,16 @@ public class MultiReaderLock {
 		writers = 0;
 
 		activeWriter = null;
+
+		this.readWait = readWait;
+		this.writeWait = writeWait;
+	}
+
+	/**
+	 * Initializes a new simple read/write lock.
+	 */
+	public MultiReaderLock() {
+		this(null, null);
 	}
 
 	/**
@@ -154,9 +175,16 @@ public class MultiReaderLock {
 		 */
 		@Override
 		public void lock() {
+			boolean waited = false;
+			long start = 0;
 			try {
 				synchronized (lock) {
 					while (writers > 0 && !isActiveWriter()) {
+						if (!waited) {
+							waited = true;
+							start = System.nanoTime();
+						}
+
 						lock.wait();
 					}
 
@@ -167,6 +195,10 @@ public class MultiReaderLock {
 				log.catching(Level.DEBUG, ex);
 				Thread.currentThread().interrupt();
 			}
+
+			if (waited && readWait != null) {
+				readWait.recordSince(start);
+			}
 		}
 
 		/**
@@ -203,9 +235,16 @@ public class MultiReaderLock {
 		 */
 		@Override
 		public void lock() {
+			boolean waited = false;
+			long start = 0;
 			try {
 				synchronized (lock) {
 					while ((readers > 0 || writers > 0) && !isActiveWriter()) {
+						if (!waited) {
+							waited = true;
+							start = System.nanoTime();
+						}
+
 						lock.wait();
 					}
 
@@ -216,6 +255,10 @@ public class MultiReaderLock {
 				log.catching(Level.DEBUG, e);
 				Thread.currentThread().interrupt();
 			}
+
+			if (waited && writeWait != null) {
+				writeWait.recordSince(start);
+			}
 		}
 
 		/**
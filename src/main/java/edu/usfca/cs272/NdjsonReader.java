@@ -0,0 +1,290 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads files written by {@link NdjsonWriter} one line at a time. Only the compact
+ * single-key objects that {@link NdjsonWriter} produces are understood.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class NdjsonReader implements CompactReader {
+	/** The reader to read lines from */
+	private final BufferedReader reader;
+
+	/** The line being parsed */
+	private String line;
+
+	/** Index of the next character of the line to parse */
+	private int index;
+
+	/**
+	 * Opens the file
+	 * @param path The file to read
+	 * @throws IOException If an IO error occurs
+	 */
+	public NdjsonReader(Path path) throws IOException {
+		this.reader = new BufferedReader(new InputStreamReader(CompactReader.newInputStream(path), UTF_8));
+	}
+
+	/**
+	 * Reads the next non-blank line and parses up to the colon after its key
+	 * @return The key of the line, or {@code null} if there are no more lines
+	 * @throws IOException If an IO error occurs or the line is malformed
+	 */
+	private String nextKey() throws IOException {
+		do {
+			this.line = this.reader.readLine();
+			if (this.line == null) {
+				return null;
+			}
+		} while (this.line.isBlank());
+
+		this.index = 0;
+		expect('{');
+		String key = readString();
+		expect(':');
+		return key;
+	}
+
+	/**
+	 * Parses the closing brace of the line
+	 * @throws IOException If the line is malformed
+	 */
+	private void endLine() throws IOException {
+		expect('}');
+		skipWhitespace();
+		if (this.index != this.line.length()) {
+			throw malformed();
+		}
+	}
+
+	@Override
+	public Map.Entry<String, TreeMap<String, List<Integer>>> nextPostings() throws IOException {
+		String word = nextKey();
+		if (word == null) {
+			return null;
+		}
+
+		TreeMap<String, List<Integer>> locations = new TreeMap<>();
+		expect('{');
+		if (!tryExpect('}')) {
+			do {
+				String location = readString();
+				expect(':');
+				expect('[');
+
+				ArrayList<Integer> positions = new ArrayList<>();
+				if (!tryExpect(']')) {
+					do {
+						positions.add((int) readLong());
+					} while (tryExpect(','));
+					expect(']');
+				}
+
+				locations.put(location, positions);
+			} while (tryExpect(','));
+			expect('}');
+		}
+
+		endLine();
+		return Map.entry(word, locations);
+	}
+
+	@Override
+	public Map.Entry<String, Integer> nextCount() throws IOException {
+		String location = nextKey();
+		if (location == null) {
+			return null;
+		}
+
+		int count = (int) readLong();
+		endLine();
+		return Map.entry(location, count);
+	}
+
+	@Override
+	public Map.Entry<String, List<Result>> nextResults() throws IOException {
+		String query = nextKey();
+		if (query == null) {
+			return null;
+		}
+
+		ArrayList<Result> results = new ArrayList<>();
+		expect('[');
+		if (!tryExpect(']')) {
+			do {
+				String location = null;
+				long count = 0;
+				double score = 0;
+
+				expect('{');
+				do {
+					String field = readString();
+					expect(':');
+					switch (field) {
+						case "count" -> count = readLong();
+						case "score" -> score = Double.parseDouble(readNumber());
+						case "where" -> location = readString();
+						default -> throw malformed();
+					}
+				} while (tryExpect(','));
+				expect('}');
+
+				results.add(new Result(location, (int) count, score));
+			} while (tryExpect(','));
+			expect(']');
+		}
+
+		endLine();
+		return Map.entry(query, results);
+	}
+
+	/** Skips spaces and tabs */
+	private void skipWhitespace() {
+		while (this.index < this.line.length() && Character.isWhitespace(this.line.charAt(this.index))) {
+			this.index++;
+		}
+	}
+
+	/**
+	 * Consumes {@code c} if it is the next character
+	 * @param c The expected character
+	 * @return {@code true} if {@code c} was consumed
+	 */
+	private boolean tryExpect(char c) {
+		skipWhitespace();
+		if (this.index < this.line.length() && this.line.charAt(this.index) == c) {
+			this.index++;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Consumes {@code c}, which must be the next character
+	 * @param c The expected character
+	 * @throws IOException If {@code c} is not the next character
+	 */
+	private void expect(char c) throws IOException {
+		if (!tryExpect(c)) {
+			throw malformed();
+		}
+	}
+
+	/**
+	 * Reads a JSON number as text
+	 * @return The text of the number
+	 * @throws IOException If there is no number
+	 */
+	private String readNumber() throws IOException {
+		skipWhitespace();
+		int start = this.index;
+		while (this.index < this.line.length() && "+-.0123456789eE".indexOf(this.line.charAt(this.index)) >= 0) {
+			this.index++;
+		}
+
+		if (start == this.index) {
+			throw malformed();
+		}
+
+		return this.line.substring(start, this.index);
+	}
+
+	/**
+	 * Reads a JSON integer
+	 * @return The integer that was read
+	 * @throws IOException If there is no integer
+	 */
+	private long readLong() throws IOException {
+		try {
+			return Long.parseLong(readNumber());
+		} catch (NumberFormatException e) {
+			throw malformed();
+		}
+	}
+
+	/**
+	 * Reads a JSON string, undoing any escapes
+	 * @return The string that was read
+	 * @throws IOException If there is no string
+	 */
+	private String readString() throws IOException {
+		expect('"');
+		StringBuilder builder = new StringBuilder();
+
+		while (this.index < this.line.length()) {
+			char c = this.line.charAt(this.index++);
+
+			if (c == '"') {
+				return builder.toString();
+			}
+
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+
+			if (this.index >= this.line.length()) {
+				break;
+			}
+
+			char escaped = this.line.charAt(this.index++);
+			switch (escaped) {
+				case 'n' -> builder.append('\n');
+				case 'r' -> builder.append('\r');
+				case 't' -> builder.append('\t');
+				case 'b' -> builder.append('\b');
+				case 'f' -> builder.append('\f');
+				case 'u' -> {
+					if (this.index + 4 > this.line.length()) {
+						throw malformed();
+					}
+
+					try {
+						builder.append((char) Integer.parseInt(this.line.substring(this.index, this.index + 4), 16));
+					} catch (NumberFormatException e) {
+						throw malformed();
+					}
+					this.index += 4;
+				}
+				default -> builder.append(escaped);
+			}
+		}
+
+		throw malformed();
+	}
+
+	/**
+	 * Creates the exception thrown for a line that cannot be parsed
+	 * @return The exception to throw
+	 */
+	private IOException malformed() {
+		return new IOException(String.format("Malformed NDJSON at column %d: %s", this.index, this.line));
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("NDJSON reader last read: %s", this.line == null ? "N/A" : this.line);
+	}
+}
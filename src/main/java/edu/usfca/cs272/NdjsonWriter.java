@@ -0,0 +1,172 @@
+package edu.usfca.cs272;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Outputs the inverted index, word counts, and search results as newline-delimited
+ * JSON. Every top-level entry is written as a compact single-key object on its own
+ * line, so the output can be produced and consumed one entry at a time. Keys and
+ * locations are escaped so every line is valid JSON.
+ *
+ * @see NdjsonReader
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class NdjsonWriter {
+	/**
+	 * Writes one line per location with the number of stems at that location, such as
+	 * {@code {"a.txt":42}}
+	 * @param counts The number of stems at each location
+	 * @param path The file path to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeCounts(Map<String, ? extends Number> counts, Path path) throws IOException {
+		try (JsonStreamWriter writer = new JsonStreamWriter(JsonWriter.newOutputStream(path))) {
+			for (var entry : counts.entrySet()) {
+				writer.write('{');
+				writeString(entry.getKey(), writer);
+				writer.write(':');
+				writer.write(entry.getValue());
+				writer.write('}');
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Writes one line per word with the positions of the word at each location, such as
+	 * {@code {"apple":{"a.txt":[1,7]}}}
+	 * @param index The inverted index to write
+	 * @param path The file path to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeIndex(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> index, Path path) throws IOException {
+		try (JsonStreamWriter writer = new JsonStreamWriter(JsonWriter.newOutputStream(path))) {
+			for (var wordEntry : index.entrySet()) {
+				writer.write('{');
+				writeString(wordEntry.getKey(), writer);
+				writer.write(':');
+				writer.write('{');
+
+				var locations = wordEntry.getValue().entrySet().iterator();
+				while (locations.hasNext()) {
+					var locationEntry = locations.next();
+					writeString(locationEntry.getKey(), writer);
+					writer.write(':');
+					writer.write('[');
+
+					var positions = locationEntry.getValue().iterator();
+					while (positions.hasNext()) {
+						writer.write(positions.next());
+						if (positions.hasNext()) {
+							writer.write(',');
+						}
+					}
+
+					writer.write(']');
+					if (locations.hasNext()) {
+						writer.write(',');
+					}
+				}
+
+				writer.write('}');
+				writer.write('}');
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Writes one line per query with its search results, such as
+	 * {@code {"appl":[{"count":2,"score":0.10000000,"where":"a.txt"}]}}
+	 * @param searchResults The search results of each query
+	 * @param path The file path to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeSearchResults(Map<String, ? extends Collection<SearchResult>> searchResults, Path path) throws IOException {
+		try (JsonStreamWriter writer = new JsonStreamWriter(JsonWriter.newOutputStream(path))) {
+			for (var entry : searchResults.entrySet()) {
+				writeSearchResults(entry.getKey(), entry.getValue(), writer);
+			}
+		}
+	}
+
+	/**
+	 * Writes the line for a single query
+	 * @param query The query string
+	 * @param searchResults The search results of the query
+	 * @param writer The writer to use
+	 * @throws IOException If an IO error occurs
+	 *
+	 * @see #writeSearchResults(Map, Path)
+	 */
+	public static void writeSearchResults(String query, Collection<SearchResult> searchResults, JsonStreamWriter writer) throws IOException {
+		writer.write('{');
+		writeString(query, writer);
+		writer.write(':');
+		writer.write('[');
+
+		var results = searchResults.iterator();
+		while (results.hasNext()) {
+			SearchResult result = results.next();
+			writer.write("{\"count\":");
+			writer.write(result.getCount());
+			writer.write(",\"score\":");
+			writer.write(SearchResultWriter.formatScore(result.getScore()));
+			writer.write(",\"where\":");
+			writeString(result.getLocation(), writer);
+			writer.write('}');
+
+			if (results.hasNext()) {
+				writer.write(',');
+			}
+		}
+
+		writer.write(']');
+		writer.write('}');
+		writer.write('\n');
+	}
+
+	/**
+	 * Writes the text as a JSON string, escaping quotes, backslashes, and control characters
+	 * @param text The text to write
+	 * @param writer The writer to use
+	 * @throws IOException If an IO error occurs
+	 */
+	public static void writeString(String text, JsonStreamWriter writer) throws IOException {
+		writer.write('"');
+
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != '"' && c != '\\' && c >= 0x20) {
+				continue;
+			}
+
+			writer.write(text.substring(start, i));
+			switch (c) {
+				case '"' -> writer.write("\\\"");
+				case '\\' -> writer.write("\\\\");
+				case '\n' -> writer.write("\\n");
+				case '\r' -> writer.write("\\r");
+				case '\t' -> writer.write("\\t");
+				default -> writer.write(String.format("\\u%04x", (int) c));
+			}
+			start = i + 1;
+		}
+
+		writer.write(text.substring(start));
+		writer.write('"');
+	}
+
+	/** No need to instantiate this class because all methods are {@code static} */
+	private NdjsonWriter() {}
+}
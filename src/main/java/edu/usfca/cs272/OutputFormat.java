@@ -0,0 +1,33 @@
+package edu.usfca.cs272;
+
+/**
+ * The formats the inverted index, word counts, and search results can be written in.
+ *
+ * @see JsonWriter
+ * @see NdjsonWriter
+ * @see BinaryWriter
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public enum OutputFormat {
+	/** One pretty JSON object, the default */
+	JSON,
+
+	/** One compact JSON object per line, one line per word, location, or query */
+	NDJSON,
+
+	/** Length-prefixed binary records with varint numbers */
+	BINARY;
+
+	/**
+	 * Returns the format with the given name, ignoring case
+	 * @param name The name of the format, such as {@code ndjson}
+	 * @param backup The format to return if {@code name} is {@code null}
+	 * @return The format with the given name, or {@code backup} if {@code name} is {@code null}
+	 * @throws IllegalArgumentException If there is no format with the given name
+	 */
+	public static OutputFormat of(String name, OutputFormat backup) {
+		return name == null ? backup : valueOf(name.strip().toUpperCase());
+	}
+}
@@ -0,0 +1,255 @@
+package edu.usfca.cs272;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a stream into a single gzip member using several threads, in the
+ * style of pigz. The input is cut into fixed-size blocks and each block is
+ * deflated independently by the work queue, primed with the last 32 KiB of the
+ * previous block as a dictionary so the compression ratio stays close to a
+ * sequential compressor. Every block but the last ends with a sync flush so the
+ * compressed blocks can simply be concatenated, in order, into one valid deflate
+ * stream. The checksum is computed on the writing thread as blocks are handed off.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+	/** Default number of uncompressed bytes per block */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+
+	/** Size of the deflate window, and so of the dictionary carried between blocks */
+	private static final int DICTIONARY_SIZE = 1 << 15;
+
+	/** Gzip header: magic, deflate, no flags, no time, no extra flags, unknown OS */
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	/** Number of blocks per thread that may be compressing at once */
+	private static final int BLOCKS_PER_THREAD = 2;
+
+	/** The threads that compress blocks */
+	private final WorkQueue queue;
+
+	/** The compression level */
+	private final int level;
+
+	/** The block being filled */
+	private byte[] block;
+
+	/** Number of bytes in the block being filled */
+	private int position;
+
+	/** The last full block handed off, used as the dictionary of the next one */
+	private byte[] previous;
+
+	/** Compressed blocks that have not been written yet, oldest first */
+	private final ArrayDeque<CompletableFuture<byte[]>> pending;
+
+	/** Checksum of all uncompressed bytes */
+	private final CRC32 crc;
+
+	/** Number of uncompressed bytes */
+	private long total;
+
+	/** Whether the stream was closed */
+	private boolean closed;
+
+	/**
+	 * Constructs a compressing stream that owns a work queue of the given size
+	 * @param output Where to write the gzip stream
+	 * @param threads The number of compressing threads
+	 * @param level The compression level from 1 to 9
+	 * @throws IOException If unable to write the header
+	 */
+	public ParallelGzipOutputStream(OutputStream output, int threads, int level) throws IOException {
+		super(output);
+		this.queue = new WorkQueue(Math.max(1, threads));
+		this.level = level;
+		this.block = new byte[DEFAULT_BLOCK_SIZE];
+		this.position = 0;
+		this.pending = new ArrayDeque<>();
+		this.crc = new CRC32();
+		this.total = 0;
+		this.closed = false;
+
+		this.out.write(HEADER);
+	}
+
+	/**
+	 * Constructs a compressing stream with one thread per processor and the default level
+	 * @param output Where to write the gzip stream
+	 * @throws IOException If unable to write the header
+	 */
+	public ParallelGzipOutputStream(OutputStream output) throws IOException {
+		this(output, Runtime.getRuntime().availableProcessors(), Deflater.DEFAULT_COMPRESSION);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.position == this.block.length) {
+			handOff(false);
+		}
+
+		this.block[this.position++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (this.position == this.block.length) {
+				handOff(false);
+			}
+
+			int copied = Math.min(length, this.block.length - this.position);
+			System.arraycopy(bytes, offset, this.block, this.position, copied);
+			this.position += copied;
+			offset += copied;
+			length -= copied;
+		}
+	}
+
+	/**
+	 * Hands the current block to the work queue, writing finished blocks first if too many are pending
+	 * @param last Whether this is the final block of the stream
+	 * @throws IOException If an IO error occurs
+	 */
+	private void handOff(boolean last) throws IOException {
+		while (this.pending.size() >= this.queue.size() * BLOCKS_PER_THREAD) {
+			writeOldest();
+		}
+
+		byte[] input = this.block;
+		int length = this.position;
+		byte[] dictionary = this.previous;
+
+		this.crc.update(input, 0, length);
+		this.total += length;
+		this.pending.addLast(CompletableFuture.supplyAsync(() -> deflate(input, length, dictionary, last), this.queue::execute));
+
+		this.previous = input;
+		this.block = new byte[this.block.length];
+		this.position = 0;
+	}
+
+	/**
+	 * Waits for the oldest pending block and writes it
+	 * @throws IOException If an IO error occurs or compression failed
+	 */
+	private void writeOldest() throws IOException {
+		try {
+			this.out.write(this.pending.removeFirst().join());
+		} catch (CompletionException e) {
+			throw new IOException("Unable to compress block.", e.getCause());
+		}
+	}
+
+	/**
+	 * Deflates a single block without a zlib or gzip wrapper
+	 * @param input The uncompressed bytes
+	 * @param length The number of bytes to compress
+	 * @param dictionary The previous block, or {@code null} for the first block
+	 * @param last Whether this is the final block of the stream
+	 * @return The compressed bytes
+	 */
+	private byte[] deflate(byte[] input, int length, byte[] dictionary, boolean last) {
+		Deflater deflater = new Deflater(this.level, true);
+
+		try {
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+			}
+
+			deflater.setInput(input, 0, length);
+			if (last) {
+				deflater.finish();
+			}
+
+			byte[] output = new byte[length + (length >> 3) + 64];
+			int size = 0;
+
+			while (true) {
+				size += deflater.deflate(output, size, output.length - size, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+
+				if (last ? deflater.finished() : size < output.length) {
+					return Arrays.copyOf(output, size);
+				}
+
+				if (size == output.length) {
+					output = Arrays.copyOf(output, output.length * 2);
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Does nothing beyond flushing the underlying stream. Blocks are only compressed
+	 * once they are full, so flushing does not shrink the compression ratio.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	/**
+	 * Compresses the remaining bytes, writes every pending block and the gzip trailer,
+	 * and closes the underlying stream and the work queue
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+
+		this.closed = true;
+
+		try {
+			handOff(true);
+			while (!this.pending.isEmpty()) {
+				writeOldest();
+			}
+
+			writeIntLE((int) this.crc.getValue());
+			writeIntLE((int) this.total);
+		} finally {
+			this.queue.shutdown();
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Writes an integer least significant byte first
+	 * @param value The integer to write
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeIntLE(int value) throws IOException {
+		this.out.write(value);
+		this.out.write(value >>> 8);
+		this.out.write(value >>> 16);
+		this.out.write(value >>> 24);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"Parallel gzip stream has read %d %s with %d %s pending.",
+			this.total,
+			this.total == 1 ? "byte" : "bytes",
+			this.pending.size(),
+			this.pending.size() == 1 ? "block" : "blocks"
+		);
+	}
+}
@@ -0,0 +1,242 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One stage of a pipeline: a bounded queue of items and a fixed number of threads
+ * that take items from it and handle them, usually by putting a result into the
+ * queue of the next stage. Putting an item into a full queue waits until there is
+ * room, so a slow stage holds back the stages before it instead of letting work
+ * pile up in memory.
+ *
+ * <p>
+ * Each stage keeps statistics to find the bottleneck of the pipeline: the number of
+ * items handled, the fraction of time its threads were busy, how full its queue was
+ * on average and at most, and how long producers waited for room in its queue. The
+ * queue size, items handled, and time per item are also added to the shared
+ * {@link Metrics} registry as {@code <name>_queue}, {@code <name>_items}, and
+ * {@code <name>_nanos}.
+ *
+ * @param <T> The type of the items
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class PipelineStage<T> {
+	/**
+	 * Handles the items of a stage
+	 * @param <T> The type of the items
+	 */
+	@FunctionalInterface
+	public interface Handler<T> {
+		/**
+		 * Handles an item
+		 * @param item The item
+		 * @throws InterruptedException If interrupted while waiting for room in the next stage
+		 */
+		void handle(T item) throws InterruptedException;
+	}
+
+	/** The name of the stage */
+	private final String name;
+
+	/** Items waiting to be handled */
+	private final ArrayBlockingQueue<T> queue;
+
+	/** Handles every item */
+	private final Handler<T> handler;
+
+	/** Threads that handle the items */
+	private final Thread[] workers;
+
+	/** Number of items handled by this stage */
+	private final LongAdder handled;
+
+	/** Number of items handled by every stage with the same name */
+	private final Metrics.Counter items;
+
+	/** Nanoseconds spent handling each item */
+	private final Metrics.Histogram itemTime;
+
+	/** Nanoseconds the threads spent handling items */
+	private final LongAdder busyNanos;
+
+	/** Nanoseconds producers spent waiting for room in the queue */
+	private final LongAdder blockedNanos;
+
+	/** Sum of the queue sizes seen by every item put into the queue */
+	private final LongAdder occupancySum;
+
+	/** Number of items put into the queue */
+	private final LongAdder puts;
+
+	/** Largest queue size seen */
+	private final AtomicLong peakOccupancy;
+
+	/** When the stage started, in nanoseconds */
+	private final long start;
+
+	/** When the stage was shut down, in nanoseconds, or 0 if still running */
+	private volatile long end;
+
+	/** Used to signal the workers should terminate */
+	private volatile boolean shutdown;
+
+	/**
+	 * Starts a stage with threads waiting for items
+	 * @param name The name of the stage, which prefixes its metrics
+	 * @param threads The number of threads that handle items
+	 * @param capacity The maximum number of items waiting in the queue
+	 * @param handler Handles every item
+	 */
+	public PipelineStage(String name, int threads, int capacity, Handler<T> handler) {
+		this.name = name;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+		this.handler = handler;
+		this.workers = new Thread[Math.max(1, threads)];
+		this.handled = new LongAdder();
+		this.items = Metrics.shared().counter(name + "_items");
+		this.itemTime = Metrics.shared().histogram(name + "_nanos");
+		this.busyNanos = new LongAdder();
+		this.blockedNanos = new LongAdder();
+		this.occupancySum = new LongAdder();
+		this.puts = new LongAdder();
+		this.peakOccupancy = new AtomicLong();
+		this.start = System.nanoTime();
+		this.end = 0;
+		this.shutdown = false;
+
+		Metrics.shared().gauge(name + "_queue", this.queue::size);
+
+		for (int i = 0; i < this.workers.length; i++) {
+			this.workers[i] = Thread.ofPlatform().daemon().name(name + "-" + i).start(this::work);
+		}
+	}
+
+	/**
+	 * Adds an item to the queue, waiting for room if the queue is full
+	 * @param item The item
+	 * @throws InterruptedException If interrupted while waiting for room
+	 */
+	public void put(T item) throws InterruptedException {
+		if (offer(item)) {
+			return;
+		}
+
+		long waitStart = System.nanoTime();
+		this.queue.put(item);
+		this.blockedNanos.add(System.nanoTime() - waitStart);
+		recordOccupancy();
+	}
+
+	/**
+	 * Adds an item to the queue if there is room, without waiting
+	 * @param item The item
+	 * @return {@code true} if the item was added
+	 */
+	public boolean offer(T item) {
+		if (!this.queue.offer(item)) {
+			return false;
+		}
+
+		recordOccupancy();
+		return true;
+	}
+
+	/** Records the size of the queue after an item was put into it */
+	private void recordOccupancy() {
+		int occupancy = this.queue.size();
+		this.occupancySum.add(occupancy);
+		this.puts.increment();
+		this.peakOccupancy.accumulateAndGet(occupancy, Math::max);
+	}
+
+	/**
+	 * Returns the number of items that can be put into the queue without waiting
+	 * @return The remaining capacity of the queue
+	 */
+	public int remainingCapacity() {
+		return this.queue.remainingCapacity();
+	}
+
+	/** Takes items from the queue and handles them until the stage is shut down */
+	private void work() {
+		while (!this.shutdown) {
+			T item;
+			try {
+				item = this.queue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			long handleStart = System.nanoTime();
+			try {
+				this.handler.handle(item);
+			} catch (InterruptedException e) {
+				break;
+			} catch (RuntimeException e) {
+				// catch runtime exceptions to avoid losing the thread
+				System.err.printf("Error: %s encountered an exception while running: %s\n", Thread.currentThread().getName(), e);
+			} finally {
+				long elapsed = System.nanoTime() - handleStart;
+				this.busyNanos.add(elapsed);
+				this.itemTime.record(elapsed);
+				this.handled.increment();
+				this.items.increment();
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads of the stage, dropping any items still in the queue, and waits
+	 * for the threads to finish the items they are handling
+	 */
+	public void shutdown() {
+		this.end = System.nanoTime();
+		this.shutdown = true;
+		for (Thread worker : this.workers) {
+			worker.interrupt();
+		}
+
+		try {
+			for (Thread worker : this.workers) {
+				worker.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns a line of statistics of the stage: items handled and the rate while it
+	 * was running, how busy its threads were, how full its queue was on average and at
+	 * most, and how long producers waited for room in its queue
+	 * @return The statistics
+	 */
+	public String getStats() {
+		long end = this.end == 0 ? System.nanoTime() : this.end;
+		double seconds = Math.max(1, end - this.start) / 1e9;
+		long handled = this.handled.sum();
+		long count = this.puts.sum();
+
+		return String.format("%-14s %3d threads %8d items %9.1f items/s %5.1f%% busy, queue %5.1f avg %4d max of %4d, producers blocked %.2f s",
+			this.name,
+			this.workers.length,
+			handled,
+			handled / seconds,
+			100 * this.busyNanos.sum() / 1e9 / seconds / this.workers.length,
+			count == 0 ? 0.0 : (double) this.occupancySum.sum() / count,
+			this.peakOccupancy.get(),
+			this.queue.size() + this.queue.remainingCapacity(),
+			this.blockedNanos.sum() / 1e9
+		);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Pipeline stage %s with %d threads and %d of %d items queued",
+			this.name, this.workers.length, this.queue.size(), this.queue.size() + this.queue.remainingCapacity());
+	}
+}
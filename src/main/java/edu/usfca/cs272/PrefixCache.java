@@ -0,0 +1,301 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the expansion of query prefixes for partial searches: every word that
+ * starts with the prefix, with the number of positions at each live location, and
+ * those counts merged by location. A prefix whose shorter prefix is cached is
+ * answered by filtering the shorter expansion instead of scanning the inverted index
+ * again. Only hot prefixes are expanded: the first time a prefix is seen, the caller
+ * scans the inverted index directly, and the expansion is built the next time. Entries
+ * are tagged with the generation of the inverted index they were built at and ignored
+ * once the index changes. The cache is a least-recently-used map bounded by weight,
+ * the number of word and location pairs it holds.
+ *
+ * This class is thread safe.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class PrefixCache {
+	/** Default maximum total weight of the cache */
+	public static final long DEFAULT_MAX_WEIGHT = 1 << 21;
+
+	/** Maximum number of prefixes remembered as seen once before they are forgotten */
+	private static final int MAX_SEEN = 1 << 16;
+
+	/** Every word starting with a prefix and the counts at each location */
+	public static class Expansion {
+		/** The words starting with the prefix, sorted */
+		private final String[] words;
+
+		/** The locations of each word */
+		private final String[][] locations;
+
+		/** The number of positions of each word at each location */
+		private final int[][] counts;
+
+		/** The locations of all words, sorted */
+		private final String[] mergedLocations;
+
+		/** The number of positions of all words at each location */
+		private final int[] mergedCounts;
+
+		/** The generation of the inverted index this expansion was built at */
+		private long generation;
+
+		/**
+		 * Builds an expansion from the words and their counts at each location
+		 * @param postings Maps each word to the number of positions at each location
+		 */
+		public Expansion(TreeMap<String, TreeMap<String, Integer>> postings) {
+			this(
+				postings.keySet().toArray(String[]::new),
+				postings.values().stream().map(counts -> counts.keySet().toArray(String[]::new)).toArray(String[][]::new),
+				postings.values().stream().map(counts -> counts.values().stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new)
+			);
+		}
+
+		/**
+		 * Builds an expansion from parallel arrays and merges the counts by location
+		 * @param words The words starting with the prefix, sorted
+		 * @param locations The locations of each word
+		 * @param counts The number of positions of each word at each location
+		 */
+		private Expansion(String[] words, String[][] locations, int[][] counts) {
+			this.words = words;
+			this.locations = locations;
+			this.counts = counts;
+
+			TreeMap<String, Integer> merged = new TreeMap<>();
+			for (int i = 0; i < words.length; i++) {
+				for (int j = 0; j < locations[i].length; j++) {
+					merged.merge(locations[i][j], counts[i][j], Integer::sum);
+				}
+			}
+
+			this.mergedLocations = merged.keySet().toArray(String[]::new);
+			this.mergedCounts = merged.values().stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		/**
+		 * Filters this expansion down to the words starting with a longer prefix.
+		 * Those words are a contiguous range of the sorted words, so no word is compared
+		 * outside of that range.
+		 * @param prefix A prefix that starts with the prefix of this expansion
+		 * @return The expansion of {@code prefix}
+		 */
+		public Expansion filter(String prefix) {
+			int start = Arrays.binarySearch(this.words, prefix);
+			start = start < 0 ? -start - 1 : start;
+
+			int end = start;
+			while (end < this.words.length && this.words[end].startsWith(prefix)) {
+				end++;
+			}
+
+			return new Expansion(
+				Arrays.copyOfRange(this.words, start, end),
+				Arrays.copyOfRange(this.locations, start, end),
+				Arrays.copyOfRange(this.counts, start, end)
+			);
+		}
+
+		/**
+		 * Returns the number of locations with at least one matching word
+		 * @return The number of merged locations
+		 */
+		public int size() {
+			return this.mergedLocations.length;
+		}
+
+		/**
+		 * Returns the merged location at an index
+		 * @param index The index of the location, in sorted order
+		 * @return The location
+		 */
+		public String getLocation(int index) {
+			return this.mergedLocations[index];
+		}
+
+		/**
+		 * Returns the number of positions of all matching words at the merged location at an index
+		 * @param index The index of the location, in sorted order
+		 * @return The number of positions
+		 */
+		public int getCount(int index) {
+			return this.mergedCounts[index];
+		}
+
+		/**
+		 * Returns the weight of this expansion
+		 * @return The number of word and location pairs plus the number of merged locations
+		 */
+		public long weight() {
+			long weight = this.mergedLocations.length + 1L;
+			for (String[] wordLocations : this.locations) {
+				weight += wordLocations.length;
+			}
+
+			return weight;
+		}
+	}
+
+	/** Cached expansions from least to most recently used */
+	private final LinkedHashMap<String, Expansion> expansions;
+
+	/** Prefixes seen once that are not cached yet */
+	private final HashSet<String> seen;
+
+	/** The current generation of the inverted index */
+	private final LongSupplier generation;
+
+	/** The maximum total weight of the cache */
+	private final long maxWeight;
+
+	/** The total weight of the cache */
+	private long weight;
+
+	/** Number of prefixes answered from the cache */
+	private long hits;
+
+	/** Number of prefixes answered by filtering a shorter cached prefix */
+	private long filtered;
+
+	/** Number of prefixes that had to scan the inverted index */
+	private long misses;
+
+	/** Number of expansions dropped to stay within the weight limit */
+	private long evictions;
+
+	/**
+	 * Constructs an empty cache
+	 * @param generation Supplies the current generation of the inverted index
+	 * @param maxWeight The maximum total weight of the cache
+	 */
+	public PrefixCache(LongSupplier generation, long maxWeight) {
+		this.expansions = new LinkedHashMap<>(16, 0.75f, true);
+		this.seen = new HashSet<>();
+		this.generation = generation;
+		this.maxWeight = Math.max(1, maxWeight);
+	}
+
+	/**
+	 * Returns the expansion of the prefix, building it with {@code expander} only if
+	 * neither the prefix nor a shorter prefix of it is cached for the current generation
+	 * and the prefix was seen before. Expansions are built outside the lock.
+	 * @param prefix The query prefix
+	 * @param expander Builds the expansion of a prefix from the inverted index
+	 * @return The expansion of the prefix, or {@code null} if the prefix is not hot yet
+	 * and the caller should scan the inverted index itself
+	 */
+	public Expansion get(String prefix, Function<String, Expansion> expander) {
+		long current = this.generation.getAsLong();
+		Expansion shorter = null;
+
+		synchronized (this) {
+			Expansion cached = lookup(prefix, current);
+			if (cached != null) {
+				this.hits++;
+				return cached;
+			}
+
+			for (int length = prefix.length() - 1; length > 0 && shorter == null; length--) {
+				shorter = lookup(prefix.substring(0, length), current);
+			}
+
+			if (shorter != null) {
+				this.filtered++;
+			} else {
+				this.misses++;
+
+				if (this.seen.size() >= MAX_SEEN) {
+					this.seen.clear();
+				}
+
+				if (this.seen.add(prefix)) {
+					return null;
+				}
+			}
+		}
+
+		Expansion expansion = shorter != null ? shorter.filter(prefix) : expander.apply(prefix);
+		expansion.generation = current;
+		put(prefix, expansion);
+		return expansion;
+	}
+
+	/**
+	 * Returns the cached expansion of the prefix if it is from the current generation,
+	 * dropping it if it is stale. Must be called while synchronized.
+	 * @param prefix The prefix to look up
+	 * @param current The current generation
+	 * @return The expansion or {@code null}
+	 */
+	private Expansion lookup(String prefix, long current) {
+		Expansion cached = this.expansions.get(prefix);
+		if (cached != null && cached.generation != current) {
+			this.expansions.remove(prefix);
+			this.weight -= cached.weight();
+			return null;
+		}
+
+		return cached;
+	}
+
+	/**
+	 * Adds an expansion, evicting the least recently used expansions until the cache fits.
+	 * Expansions heavier than a quarter of the cache are not cached.
+	 * @param prefix The prefix
+	 * @param expansion The expansion of the prefix
+	 */
+	private synchronized void put(String prefix, Expansion expansion) {
+		long added = expansion.weight();
+		if (added > this.maxWeight / 4) {
+			return;
+		}
+
+		this.seen.remove(prefix);
+		Expansion previous = this.expansions.put(prefix, expansion);
+		if (previous != null) {
+			this.weight -= previous.weight();
+		}
+
+		this.weight += added;
+
+		Iterator<Expansion> iterator = this.expansions.values().iterator();
+		while (this.weight > this.maxWeight && iterator.hasNext()) {
+			this.weight -= iterator.next().weight();
+			iterator.remove();
+			this.evictions++;
+		}
+	}
+
+	/**
+	 * Returns the number of cached prefixes
+	 * @return The number of cached prefixes
+	 */
+	public synchronized int size() {
+		return this.expansions.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+			"Prefix cache has %d %s with %d hits, %d filtered, %d misses, and %d evictions.",
+			this.expansions.size(),
+			this.expansions.size() == 1 ? "prefix" : "prefixes",
+			this.hits,
+			this.filtered,
+			this.misses,
+			this.evictions
+		);
+	}
+}
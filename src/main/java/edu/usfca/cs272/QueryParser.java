@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -38,6 +39,41 @@ public interface QueryParser {
 		}
 	}
 
+	/**
+	 * Gets the search queries from the passed file in batches of {@code batchSize} lines,
+	 * searching each batch at once with {@link #parseBatch(List)}
+	 * @param queryLocation Where to find the query words
+	 * @param batchSize The number of lines per batch
+	 * @throws IOException If an IO error occurs
+	 */
+	default void parseLocation(Path queryLocation, int batchSize) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(queryLocation, UTF_8)) {
+			List<String> batch = new ArrayList<>();
+			String line = null;
+
+			while ((line = reader.readLine()) != null) {
+				batch.add(line);
+				if (batch.size() >= batchSize) {
+					parseBatch(batch);
+					batch = new ArrayList<>();
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				parseBatch(batch);
+			}
+		}
+	}
+
+	/**
+	 * Parses a batch of lines and searches for all of them at once, so each word in the
+	 * inverted index is scanned once per batch instead of once per query
+	 * @param lines The lines to parse
+	 *
+	 * @see InvertedIndex#batchSearch(List, boolean)
+	 */
+	void parseBatch(List<String> lines);
+
 	/**
 	 * Parses a line and performs a search on the inverted index
 	 * @param line The line to parse
@@ -60,6 +96,14 @@ public interface QueryParser {
 	 */
 	void queryJson(Path location) throws IOException;
 
+	/**
+	 * Writes the search results in the given format
+	 * @param location Where to write the results to
+	 * @param format The format to write in
+	 * @throws IOException If an IO error occurs
+	 */
+	void writeResults(Path location, OutputFormat format) throws IOException;
+
 	/**
 	 * Returns a {@code Set} of the query strings in the result map
 	 * @return A {@code Set} of the query strings in the reuslt map
@@ -0,0 +1,414 @@
+package edu.usfca.cs272;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Collects search results for a streaming results mode so that query parsers do
+ * not have to keep every {@link SearchResult} in memory until the end. Each query's
+ * results are formatted in the output format as soon as the query completes and
+ * only the formatted bytes are kept. Once more than a fixed number of queries are
+ * buffered, they are written to a temporary file as a run sorted by query string.
+ * When the results are written, the runs are merged so the output is the same as
+ * writing all the results from a {@code TreeMap}.
+ *
+ * <p>
+ * Queries must be claimed with {@link #claim(String)} before they are added, so
+ * every query string is searched and added at most once.
+ *
+ * This class is thread safe.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class ResultSpool implements Closeable {
+	/** Default maximum number of formatted queries to keep in memory */
+	public static final int DEFAULT_MEMORY_LIMIT = 10000;
+
+	/** The format results are written in */
+	private final OutputFormat format;
+
+	/** The maximum number of formatted queries to keep in memory */
+	private final int memoryLimit;
+
+	/** Directory to create the runs in, or {@code null} for the default temporary directory */
+	private final Path spillDirectory;
+
+	/** Every query string that was claimed */
+	private final HashSet<String> claimed;
+
+	/** Number of queries added, which can be fewer than claimed if a search failed */
+	private int added;
+
+	/** Formatted queries that have not been spilled yet, sorted by query string */
+	private TreeMap<String, byte[]> buffer;
+
+	/** Temporary files holding sorted runs of formatted queries */
+	private final ArrayList<Path> runs;
+
+	/** The first error while formatting or spilling, reported when the results are written */
+	private IOException failure;
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Constructs an empty spool
+	 * @param format The format results are written in
+	 * @param memoryLimit The maximum number of formatted queries to keep in memory
+	 * @param spillDirectory Directory to create the runs in, or {@code null} for the default temporary directory
+	 */
+	public ResultSpool(OutputFormat format, int memoryLimit, Path spillDirectory) {
+		this.format = format;
+		this.memoryLimit = Math.max(1, memoryLimit);
+		this.spillDirectory = spillDirectory;
+		this.claimed = new HashSet<>();
+		this.added = 0;
+		this.buffer = new TreeMap<>();
+		this.runs = new ArrayList<>();
+	}
+
+	/**
+	 * Claims a query string so that only the caller searches and adds it
+	 * @param query The query string
+	 * @return {@code true} if the query was not claimed before
+	 */
+	public synchronized boolean claim(String query) {
+		return this.claimed.add(query);
+	}
+
+	/**
+	 * Formats the results of a claimed query and buffers them, spilling a sorted run
+	 * if the buffer is full. Formatting happens outside the lock.
+	 * @param query The query string
+	 * @param results The search results of the query
+	 */
+	public void add(String query, Collection<SearchResult> results) {
+		byte[] formatted;
+		try {
+			formatted = format(query, results);
+		} catch (IOException e) {
+			fail(e);
+			return;
+		}
+
+		synchronized (this) {
+			if (this.buffer.put(query, formatted) == null) {
+				this.added++;
+			}
+
+			if (this.buffer.size() >= this.memoryLimit) {
+				try {
+					spill();
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Formats the results of a single query in the output format
+	 * @param query The query string
+	 * @param results The search results of the query
+	 * @return The formatted query
+	 * @throws IOException If an IO error occurs
+	 */
+	private byte[] format(String query, Collection<SearchResult> results) throws IOException {
+		switch (this.format) {
+			case NDJSON -> {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (JsonStreamWriter writer = new JsonStreamWriter(bytes, 1 << 12)) {
+					NdjsonWriter.writeSearchResults(query, results, writer);
+				}
+				return bytes.toByteArray();
+			}
+			case BINARY -> {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (DataOutputStream output = new DataOutputStream(bytes)) {
+					BinaryWriter.writeSearchResults(query, results, output);
+				}
+				return bytes.toByteArray();
+			}
+			default -> {
+				StringWriter writer = new StringWriter();
+				SearchResultWriter.writeEntry(query, results, writer, 0);
+				return writer.toString().getBytes(UTF_8);
+			}
+		}
+	}
+
+	/**
+	 * Remembers the first error so it can be thrown when the results are written
+	 * @param e The error
+	 */
+	private synchronized void fail(IOException e) {
+		log.catching(Level.WARN, e);
+		if (this.failure == null) {
+			this.failure = e;
+		}
+	}
+
+	/**
+	 * Writes the buffer to a new run and empties it. Must be called while synchronized.
+	 * @throws IOException If an IO error occurs
+	 */
+	private void spill() throws IOException {
+		if (this.spillDirectory != null) {
+			Files.createDirectories(this.spillDirectory);
+		}
+
+		Path run = this.spillDirectory == null
+			? Files.createTempFile("results", ".run")
+			: Files.createTempFile(this.spillDirectory, "results", ".run");
+		this.runs.add(run);
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+			for (var entry : this.buffer.entrySet()) {
+				writeBytes(entry.getKey().getBytes(UTF_8), output);
+				writeBytes(entry.getValue(), output);
+			}
+		}
+
+		log.debug("Spilled {} formatted queries to {}.", this.buffer.size(), run);
+		this.buffer = new TreeMap<>();
+	}
+
+	/**
+	 * Writes the length of the bytes followed by the bytes
+	 * @param bytes The bytes to write
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private static void writeBytes(byte[] bytes, DataOutputStream output) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Writes every added query in sorted order, merging the spilled runs
+	 * @param location Where to write the results to
+	 * @param format The format the caller expects, which must be the format of this spool
+	 * @throws IOException If an IO error occurs, an earlier query could not be formatted or
+	 * spilled, or the format does not match
+	 */
+	public synchronized void writeTo(Path location, OutputFormat format) throws IOException {
+		if (format != this.format) {
+			throw new IOException(String.format("Streamed results were formatted as %s, not %s.", this.format, format));
+		}
+
+		if (this.failure != null) {
+			throw this.failure;
+		}
+
+		if (!this.runs.isEmpty() && !this.buffer.isEmpty()) {
+			spill();
+		}
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(JsonWriter.newOutputStream(location), 1 << 16))) {
+			writeHeader(output);
+
+			if (this.runs.isEmpty()) {
+				boolean first = true;
+				for (byte[] formatted : this.buffer.values()) {
+					writeSeparator(first, output);
+					output.write(formatted);
+					first = false;
+				}
+			} else {
+				merge(output);
+			}
+
+			writeFooter(output);
+		}
+	}
+
+	/**
+	 * Merges the sorted runs into the output
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private void merge(DataOutputStream output) throws IOException {
+		PriorityQueue<Run> heads = new PriorityQueue<>();
+
+		try {
+			for (Path path : this.runs) {
+				Run run = new Run(path);
+				if (run.advance()) {
+					heads.add(run);
+				} else {
+					run.close();
+				}
+			}
+
+			boolean first = true;
+			while (!heads.isEmpty()) {
+				Run run = heads.poll();
+				writeSeparator(first, output);
+				output.write(run.formatted);
+				first = false;
+
+				if (run.advance()) {
+					heads.add(run);
+				} else {
+					run.close();
+				}
+			}
+		} finally {
+			for (Run run : heads) {
+				run.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes what comes before the first query
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeHeader(DataOutputStream output) throws IOException {
+		switch (this.format) {
+			case NDJSON -> { }
+			case BINARY -> BinaryWriter.writeHeader(BinaryWriter.RESULTS, this.added, output);
+			default -> output.write('{');
+		}
+	}
+
+	/**
+	 * Writes what comes between two queries
+	 * @param first Whether the next query is the first one
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeSeparator(boolean first, DataOutputStream output) throws IOException {
+		if (!first && this.format == OutputFormat.JSON) {
+			output.write(',');
+		}
+	}
+
+	/**
+	 * Writes what comes after the last query
+	 * @param output The stream to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writeFooter(DataOutputStream output) throws IOException {
+		if (this.format == OutputFormat.JSON) {
+			output.write('\n');
+			output.write('}');
+		}
+	}
+
+	/** A sorted run being merged */
+	private static class Run implements Comparable<Run>, Closeable {
+		/** The stream to read the run from */
+		private final DataInputStream input;
+
+		/** The current query string */
+		private String query;
+
+		/** The current formatted query */
+		private byte[] formatted;
+
+		/**
+		 * Opens a run
+		 * @param path The run to read
+		 * @throws IOException If an IO error occurs
+		 */
+		public Run(Path path) throws IOException {
+			this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+		}
+
+		/**
+		 * Reads the next query of the run
+		 * @return {@code true} if a query was read, {@code false} at the end of the run
+		 * @throws IOException If an IO error occurs
+		 */
+		public boolean advance() throws IOException {
+			byte[] key;
+			try {
+				key = readBytes();
+			} catch (EOFException e) {
+				return false;
+			}
+
+			this.query = new String(key, UTF_8);
+			this.formatted = readBytes();
+			return true;
+		}
+
+		/**
+		 * Reads a length followed by that many bytes
+		 * @return The bytes that were read
+		 * @throws IOException If an IO error occurs
+		 */
+		private byte[] readBytes() throws IOException {
+			byte[] bytes = new byte[this.input.readInt()];
+			this.input.readFully(bytes);
+			return bytes;
+		}
+
+		@Override
+		public int compareTo(Run other) {
+			return this.query.compareTo(other.query);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.input.close();
+		}
+	}
+
+	/**
+	 * Deletes the spilled runs and empties the spool
+	 */
+	@Override
+	public synchronized void close() {
+		for (Path run : this.runs) {
+			try {
+				Files.deleteIfExists(run);
+			} catch (IOException e) {
+				log.catching(Level.DEBUG, e);
+			}
+		}
+
+		this.runs.clear();
+		this.buffer.clear();
+		this.claimed.clear();
+		this.added = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+			"Result spool currently has %d %s, %d in memory and %d %s on disk.",
+			this.claimed.size(),
+			this.claimed.size() == 1 ? "query" : "queries",
+			this.buffer.size(),
+			this.runs.size(),
+			this.runs.size() == 1 ? "run" : "runs"
+		);
+	}
+}
@@ -0,0 +1,405 @@
+package edu.usfca.cs272;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+import edu.usfca.cs272.InvertedIndex.TopResults;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of search results keyed by the normalized query stems and the
+ * search mode. Entries remember the {@link ThreadSafeInvertedIndex#getGeneration()}
+ * they were computed at and are discarded as soon as the index changes. The cache
+ * is split into segments, each a least-recently-used map with its own lock and an
+ * equal share of the total weight, where the weight of an entry is its number of
+ * results plus one. An entry can hold only the best results of a query, which answer
+ * any request for at most that many results. Concurrent misses on the same key,
+ * limit, and generation share a single search.
+ *
+ * This class is thread safe.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class SearchCache {
+	/** Default maximum total weight of the cache */
+	public static final long DEFAULT_MAX_WEIGHT = 1 << 20;
+
+	/** Number of independently locked segments */
+	private static final int SEGMENTS = 16;
+
+	/** The inverted index to search */
+	private final ThreadSafeInvertedIndex invertedIndex;
+
+	/** The segments of the cache */
+	private final Segment[] segments;
+
+	/** Searches in progress, keyed by cache key and generation */
+	private final ConcurrentHashMap<String, CompletableFuture<TopResults>> inFlight;
+
+	/** The newest generation seen, so stale entries can be dropped all at once */
+	private volatile long generation;
+
+	/** Number of lookups answered from the cache */
+	private final LongAdder hits;
+
+	/** Number of lookups that had to search */
+	private final LongAdder misses;
+
+	/** Number of lookups that waited for another thread's search */
+	private final LongAdder collapsed;
+
+	/** Number of entries dropped to stay within the weight limit */
+	private final LongAdder evictions;
+
+	/** Number of entries dropped because the index changed */
+	private final LongAdder invalidations;
+
+	/** A cached search and the generation it was computed at */
+	private static class Entry {
+		/** The generation of the index the results were computed at */
+		private final long generation;
+
+		/** The best search results and the number of matching locations */
+		private final TopResults results;
+
+		/**
+		 * Constructs a cache entry
+		 * @param generation The generation of the index the results were computed at
+		 * @param results The best search results and the number of matching locations
+		 */
+		public Entry(long generation, TopResults results) {
+			this.generation = generation;
+			this.results = results;
+		}
+
+		/**
+		 * Returns whether this entry holds the best {@code limit} results
+		 * @param limit The number of results needed
+		 * @return {@code true} if no search is needed for {@code limit} results
+		 */
+		public boolean covers(int limit) {
+			return this.results.isComplete() || this.results.getResults().size() >= limit;
+		}
+
+		/**
+		 * Returns the weight of this entry
+		 * @return The number of results plus one
+		 */
+		public long weight() {
+			return this.results.getResults().size() + 1L;
+		}
+	}
+
+	/** A least-recently-used map with its own lock and weight limit */
+	private class Segment {
+		/** Entries from least to most recently used */
+		private final LinkedHashMap<String, Entry> entries;
+
+		/** The maximum total weight of this segment */
+		private final long maxWeight;
+
+		/** The total weight of this segment */
+		private long weight;
+
+		/**
+		 * Constructs an empty segment
+		 * @param maxWeight The maximum total weight of this segment
+		 */
+		public Segment(long maxWeight) {
+			this.entries = new LinkedHashMap<>(16, 0.75f, true);
+			this.maxWeight = Math.max(1, maxWeight);
+			this.weight = 0;
+		}
+
+		/**
+		 * Returns the entry for the key if it is from the given generation and holds enough results
+		 * @param key The cache key
+		 * @param generation The current generation
+		 * @param limit The number of results needed
+		 * @return The cached results or {@code null}
+		 */
+		public synchronized TopResults get(String key, long generation, int limit) {
+			Entry entry = this.entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+
+			if (entry.generation != generation) {
+				this.entries.remove(key);
+				this.weight -= entry.weight();
+				invalidations.increment();
+				return null;
+			}
+
+			return entry.covers(limit) ? entry.results : null;
+		}
+
+		/**
+		 * Adds an entry, evicting the least recently used entries until the segment fits
+		 * @param key The cache key
+		 * @param entry The entry to add
+		 */
+		public synchronized void put(String key, Entry entry) {
+			if (entry.weight() > this.maxWeight) {
+				return;
+			}
+
+			// Keep a current entry that already holds at least as many results
+			Entry previous = this.entries.get(key);
+			if (previous != null && previous.generation == entry.generation && previous.weight() >= entry.weight()) {
+				return;
+			}
+
+			this.entries.put(key, entry);
+			if (previous != null) {
+				this.weight -= previous.weight();
+			}
+
+			this.weight += entry.weight();
+
+			Iterator<Entry> iterator = this.entries.values().iterator();
+			while (this.weight > this.maxWeight && iterator.hasNext()) {
+				this.weight -= iterator.next().weight();
+				iterator.remove();
+				evictions.increment();
+			}
+		}
+
+		/**
+		 * Removes every entry
+		 * @return The number of entries removed
+		 */
+		public synchronized int clear() {
+			int size = this.entries.size();
+			this.entries.clear();
+			this.weight = 0;
+			return size;
+		}
+
+		/**
+		 * Returns the number of entries
+		 * @return The number of entries
+		 */
+		public synchronized int size() {
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * Constructs an empty cache
+	 * @param invertedIndex The inverted index to search
+	 * @param maxWeight The maximum total weight, roughly the number of cached search results
+	 */
+	public SearchCache(ThreadSafeInvertedIndex invertedIndex, long maxWeight) {
+		this.invertedIndex = invertedIndex;
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			this.segments[i] = new Segment(maxWeight / SEGMENTS);
+		}
+
+		this.inFlight = new ConcurrentHashMap<>();
+		this.generation = invertedIndex.getGeneration();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.collapsed = new LongAdder();
+		this.evictions = new LongAdder();
+		this.invalidations = new LongAdder();
+	}
+
+	/**
+	 * Constructs an empty cache with the default maximum weight
+	 * @param invertedIndex The inverted index to search
+	 */
+	public SearchCache(ThreadSafeInvertedIndex invertedIndex) {
+		this(invertedIndex, DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * Returns the search results for the query stems, searching the index only if the
+	 * results are not cached for the current generation and no other thread is already
+	 * searching for them
+	 * @param queryStems The normalized query stems
+	 * @param isExactSearch {@code true} for an exact search, {@code false} for a partial search
+	 * @return An unmodifiable list of search results
+	 */
+	public List<SearchResult> search(Set<String> queryStems, boolean isExactSearch) {
+		return search(queryStems, isExactSearch, Integer.MAX_VALUE).getResults();
+	}
+
+	/**
+	 * Returns the best {@code limit} search results for the query stems and the number of
+	 * matching locations, searching the index only if no cached entry of the current
+	 * generation holds at least that many results and no other thread is already
+	 * searching for them
+	 * @param queryStems The normalized query stems
+	 * @param isExactSearch {@code true} for an exact search, {@code false} for a partial search
+	 * @param limit The maximum number of results to return
+	 * @return The best results, as an unmodifiable list, and the number of matching locations
+	 */
+	public TopResults search(Set<String> queryStems, boolean isExactSearch, int limit) {
+		long current = this.invertedIndex.getGeneration();
+		if (current != this.generation) {
+			invalidate(current);
+		}
+
+		String key = (isExactSearch ? "exact:" : "partial:") + QueryParser.extractQueryString(queryStems);
+		Segment segment = this.segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+
+		TopResults cached = segment.get(key, current, limit);
+		if (cached != null) {
+			this.hits.increment();
+			return truncate(cached, limit);
+		}
+
+		String flightKey = current + ":" + limit + ":" + key;
+		CompletableFuture<TopResults> future = new CompletableFuture<>();
+		CompletableFuture<TopResults> existing = this.inFlight.putIfAbsent(flightKey, future);
+
+		if (existing != null) {
+			this.collapsed.increment();
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException cause ? cause : e;
+			}
+		}
+
+		this.misses.increment();
+		try {
+			TopResults found = this.invertedIndex.search(queryStems, isExactSearch, limit);
+			TopResults results = new TopResults(Collections.unmodifiableList(found.getResults()), found.getTotal());
+
+			segment.put(key, new Entry(current, results));
+			future.complete(results);
+
+			// Only the caller that searched gets the timings of the search
+			return new TopResults(results.getResults(), results.getTotal(), found.getLookupNanos(), found.getSortNanos());
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(flightKey, future);
+		}
+	}
+
+	/**
+	 * Returns at most {@code limit} of the cached results
+	 * @param cached The cached results
+	 * @param limit The maximum number of results to return
+	 * @return The best {@code limit} cached results
+	 */
+	private static TopResults truncate(TopResults cached, int limit) {
+		List<SearchResult> results = cached.getResults();
+		if (results.size() <= limit) {
+			return cached;
+		}
+
+		return new TopResults(results.subList(0, limit), cached.getTotal());
+	}
+
+	/**
+	 * Drops every cached entry once the index has moved past the newest generation seen
+	 * @param current The current generation of the index
+	 */
+	private synchronized void invalidate(long current) {
+		if (current == this.generation) {
+			return;
+		}
+
+		this.generation = current;
+		for (Segment segment : this.segments) {
+			this.invalidations.add(segment.clear());
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache
+	 * @return The number of hits
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that had to search the index
+	 * @return The number of misses
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that waited for another thread's search instead of searching
+	 * @return The number of collapsed misses
+	 */
+	public long getCollapsed() {
+		return this.collapsed.sum();
+	}
+
+	/**
+	 * Returns the number of entries dropped to stay within the weight limit
+	 * @return The number of evictions
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	/**
+	 * Returns the number of entries dropped because the index changed
+	 * @return The number of invalidations
+	 */
+	public long getInvalidations() {
+		return this.invalidations.sum();
+	}
+
+	/**
+	 * Returns the number of cached entries
+	 * @return The number of cached entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			size += segment.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Returns the hit, miss, and eviction counts as a map, in a fixed order
+	 * @return The cache statistics
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("hits", getHits());
+		stats.put("misses", getMisses());
+		stats.put("collapsed", getCollapsed());
+		stats.put("evictions", getEvictions());
+		stats.put("invalidations", getInvalidations());
+		stats.put("entries", (long) size());
+		return stats;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"Search cache has %d %s with %d hits, %d misses, %d collapsed, %d evictions, and %d invalidations.",
+			size(),
+			size() == 1 ? "entry" : "entries",
+			getHits(),
+			getMisses(),
+			getCollapsed(),
+			getEvictions(),
+			getInvalidations()
+		);
+	}
+}
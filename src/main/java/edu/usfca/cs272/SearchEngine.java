@@ -1,10 +1,16 @@
 package edu.usfca.cs272;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executors;
+
+import javax.management.JMException;
 
 import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
 import org.eclipse.jetty.ee10.servlet.ServletHolder;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 
 /**
@@ -21,6 +27,15 @@ public class SearchEngine {
 	/** The port to use */
 	private final int port;
 
+	/** Caches search results until the inverted index changes */
+	private final SearchCache cache;
+
+	/** Settings of the thread pool and connector */
+	private final ServerConfig config;
+
+	/** Completes the words typed into the search box */
+	private final CompletionTrie completions;
+
 	/** Path for all HTML files */
 	public static final Path template = Path.of("project-sghahghahi", "src", "main", "resources");
 
@@ -30,8 +45,40 @@ public class SearchEngine {
 	 * @param port The port to use
 	 */
 	public SearchEngine(ThreadSafeInvertedIndex invertedIndex, int port) {
+		this(invertedIndex, port, SearchCache.DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * Constructs a {@code SearchEngine} object with a thread safe inverted index, port number, and cache size.
+	 * @param invertedIndex The inverted index to search through
+	 * @param port The port to use
+	 * @param cacheWeight The maximum number of search results to cache
+	 */
+	public SearchEngine(ThreadSafeInvertedIndex invertedIndex, int port, long cacheWeight) {
+		this(invertedIndex, port, cacheWeight, new ServerConfig());
+	}
+
+	/**
+	 * Constructs a {@code SearchEngine} object with a thread safe inverted index, port number, cache size, and server settings.
+	 * @param invertedIndex The inverted index to search through
+	 * @param port The port to use
+	 * @param cacheWeight The maximum number of search results to cache
+	 * @param config The settings of the thread pool and connector
+	 */
+	public SearchEngine(ThreadSafeInvertedIndex invertedIndex, int port, long cacheWeight, ServerConfig config) {
 		this.invertedIndex = invertedIndex;
 		this.port = port;
+		this.cache = new SearchCache(invertedIndex, cacheWeight);
+		this.config = config;
+		this.completions = new CompletionTrie(invertedIndex);
+	}
+
+	/**
+	 * Returns the cache of search results, for example to read its hit and miss counts
+	 * @return The cache of search results
+	 */
+	public SearchCache getCache() {
+		return this.cache;
 	}
 
 	/**
@@ -39,16 +86,72 @@ public class SearchEngine {
 	 * @throws Exception If an error occurs
 	 */
 	public void launchServer() throws Exception {
-		Server server = new Server(this.port);
+		// Read the pages once so that requests never touch the template files
+		HtmlTemplates templates = new HtmlTemplates(template);
+
+		QueuedThreadPool threadPool = new QueuedThreadPool(this.config.getMaxThreads(), this.config.getMinThreads(), this.config.getIdleTimeout());
+		threadPool.setName("search");
+		if (this.config.isVirtualThreads()) {
+			// Pooled threads only accept and select connections, so requests never wait for a free pooled thread
+			threadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		}
+
+		Server server = new Server(threadPool);
+
+		ServerConnector connector = new ServerConnector(server, this.config.getAcceptors(), this.config.getSelectors());
+		connector.setPort(this.port);
+		connector.setIdleTimeout(this.config.getIdleTimeout());
+		connector.setAcceptQueueSize(this.config.getAcceptQueueSize());
+		server.addConnector(connector);
+
+		registerMetrics(Metrics.shared(), threadPool);
 
 		ServletContextHandler handler = new ServletContextHandler();
-		handler.addServlet(new ServletHolder(new HomeServlet()), "/");
-		handler.addServlet(new ServletHolder(new SearchServlet(this.invertedIndex)), "/search");
+		handler.addServlet(new ServletHolder(new HomeServlet(templates)), "/");
+		handler.addServlet(new ServletHolder(new SearchServlet(this.invertedIndex, this.cache, templates)), "/search");
+		handler.addServlet(new ServletHolder(new ApiSearchServlet(this.invertedIndex, this.cache)), "/api/search");
+		handler.addServlet(new ServletHolder(new SuggestServlet(this.completions)), "/suggest");
+		handler.addServlet(new ServletHolder(new MetricsServlet(Metrics.shared())), "/metrics");
 
-		server.setHandler(handler);
+		if (this.config.isGzip()) {
+			GzipHandler gzipHandler = new GzipHandler();
+			gzipHandler.setMinGzipSize(this.config.getGzipMinSize());
+			gzipHandler.setHandler(handler);
+			server.setHandler(gzipHandler);
+		} else {
+			server.setHandler(handler);
+		}
 
 		server.start();
 		System.err.printf("Server started at localhost:%d\n", this.port);
 		server.join();
 	}
+
+	/**
+	 * Adds gauges for the inverted index, the search cache, the completions, and the thread pool, and
+	 * publishes the metrics as the JMX MBean {@code edu.usfca.cs272:type=Metrics}
+	 * @param metrics The registry to add the gauges to
+	 * @param threadPool The thread pool of the server
+	 * @throws JMException If the MBean cannot be registered
+	 */
+	private void registerMetrics(Metrics metrics, QueuedThreadPool threadPool) throws JMException {
+		metrics.gauge("index_words", this.invertedIndex::numWords);
+		metrics.gauge("index_locations", this.invertedIndex::numCounts);
+		metrics.gauge("index_generation", this.invertedIndex::getGeneration);
+
+		metrics.gauge("search_cache_hits", this.cache::getHits);
+		metrics.gauge("search_cache_misses", this.cache::getMisses);
+		metrics.gauge("search_cache_collapsed", this.cache::getCollapsed);
+		metrics.gauge("search_cache_evictions", this.cache::getEvictions);
+		metrics.gauge("search_cache_invalidations", this.cache::getInvalidations);
+		metrics.gauge("search_cache_entries", this.cache::size);
+
+		metrics.gauge("suggest_rebuilds", this.completions::getRebuilds);
+
+		metrics.gauge("server_threads", threadPool::getThreads);
+		metrics.gauge("server_busy_threads", threadPool::getBusyThreads);
+		metrics.gauge("server_queued_jobs", threadPool::getQueueSize);
+
+		metrics.registerMBean("edu.usfca.cs272:type=Metrics");
+	}
 }
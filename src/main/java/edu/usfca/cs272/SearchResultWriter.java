@@ -7,9 +7,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.text.DecimalFormat;
 
@@ -18,7 +16,8 @@ import java.util.Map;
 import java.util.TreeMap;
 
 /**
- * Class responsible for writing {@code SearchResult} objects as pretty JSON objects
+ * Class responsible for writing {@code SearchResult} objects as pretty JSON objects.
+ * All methods may be called from several threads at once.
  *
  * @author Shyon Ghahghahi
  * @author CS 272 Software Development (University of San Francisco)
@@ -26,8 +25,8 @@ import java.util.TreeMap;
  */
 public class SearchResultWriter {
 
-	/** Format {@code double}s to 8 decimals */
-	private static final DecimalFormat FORMATTER = new DecimalFormat("0.00000000");
+	/** Formats {@code double}s to 8 decimals. {@link DecimalFormat} is not thread-safe, so each thread gets its own. */
+	private static final ThreadLocal<DecimalFormat> FORMATTER = ThreadLocal.withInitial(() -> new DecimalFormat("0.00000000"));
 
 	/**
 	 * Writes search results as pretty JSON obejcts
@@ -56,13 +55,13 @@ public class SearchResultWriter {
 	}
 
 	/**
-	 * Writes search results as pretty JSON objects
+	 * Writes search results as pretty JSON objects, gzip-compressed if the location ends with {@code .gz}
 	 * @param searchResults - The search results to write
 	 * @param location - Where to write the search results
 	 * @throws IOException If an IO error occurs
 	 */
 	public static void writeSearchResults(Map<String, ? extends Collection<SearchResult>> searchResults, Path location) throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(location, UTF_8)) {
+		try (BufferedWriter writer = newBufferedWriter(location)) {
 			writeSearchResults(searchResults, writer, 0);
 		}
 	}
@@ -122,11 +121,20 @@ public class SearchResultWriter {
 	public  static void writeSearchResult(SearchResult result, Writer writer, int indent) throws IOException {
 		TreeMap<String, String> map = new TreeMap<>();
 		map.put("count", Integer.toString(result.getCount()));
-		map.put("score", FORMATTER.format(result.getScore()));
+		map.put("score", formatScore(result.getScore()));
 		map.put("where", "\"" + result.getLocation()+ "\"");
 		writeStringObject(map, writer, indent);
 	}
 
+	/**
+	 * Formats a score to 8 decimals
+	 * @param score - The score to format
+	 * @return The formatted score
+	 */
+	public static String formatScore(double score) {
+		return FORMATTER.get().format(score);
+	}
+
 	/** Default constructor to prevent instantiation since all methods are {@code static} */
 	private SearchResultWriter() {}
 }
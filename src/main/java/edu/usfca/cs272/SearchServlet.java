@@ -1,9 +1,7 @@
 package edu.usfca.cs272;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.apache.commons.text.StringEscapeUtils;
@@ -22,39 +20,127 @@ public class SearchServlet extends HttpServlet {
 	/**  */
 	private static final long serialVersionUID = 1L;
 
+	/** Number of results on a page if the request does not choose a size */
+	public static final int DEFAULT_PAGE_SIZE = 50;
+
+	/** Largest number of results on a page */
+	public static final int MAX_PAGE_SIZE = 500;
+
+	/** Response header with the number of locations that matched the query */
+	public static final String RESULT_COUNT_HEADER = "X-Result-Count";
+
+	/** Number of rows written before the response is first flushed */
+	private static final int FIRST_FLUSH_ROWS = 10;
+
+	/** Nanoseconds spent on each request */
+	private static final Metrics.Histogram REQUEST_TIME = Metrics.shared().histogram("search_request_nanos");
+
+	/** Number of locations that matched each request */
+	private static final Metrics.Histogram RESULT_COUNTS = Metrics.shared().histogram("search_results");
+
 	/**
 	 * The inverted index to search through.
 	 * Marked as {@code transient} because this member is not serializable and does not need to be persisted if the servlet is serialized.
 	 */
 	private final transient ThreadSafeInvertedIndex invertedIndex;
 
+	/**
+	 * Caches the results of popular queries until the inverted index changes.
+	 * Marked as {@code transient} for the same reason as the inverted index.
+	 */
+	private final transient SearchCache cache;
+
+	/**
+	 * The preloaded HTML pages.
+	 * Marked as {@code transient} for the same reason as the inverted index.
+	 */
+	private final transient HtmlTemplates templates;
+
 	/**
 	 * Constructs a {@code SearchServlet} object with a thread save inverted index to search through.
 	 * @param invertedIndex The inverted index to search through
+	 * @param cache The cache of search results to use
+	 * @param templates The preloaded HTML pages
 	 */
-	public SearchServlet(ThreadSafeInvertedIndex invertedIndex) {
+	public SearchServlet(ThreadSafeInvertedIndex invertedIndex, SearchCache cache, HtmlTemplates templates) {
 		this.invertedIndex = invertedIndex;
+		this.cache = cache;
+		this.templates = templates;
+	}
+
+	/**
+	 * Constructs a {@code SearchServlet} object with a thread save inverted index to search through.
+	 * @param invertedIndex The inverted index to search through
+	 * @param templates The preloaded HTML pages
+	 */
+	public SearchServlet(ThreadSafeInvertedIndex invertedIndex, HtmlTemplates templates) {
+		this(invertedIndex, new SearchCache(invertedIndex), templates);
 	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		String htmlTop = Files.readString(SearchEngine.template.resolve("searchTop.html"), UTF_8);
-		String htmlBottom = Files.readString(SearchEngine.template.resolve("searchBottom.html"), UTF_8);
+		long start = System.nanoTime();
+		try {
+			writePage(request, response);
+		} finally {
+			REQUEST_TIME.recordSince(start);
+		}
+	}
+
+	/**
+	 * Searches for the query in the request and writes the requested page of results
+	 * @param request The request
+	 * @param response The response to write to
+	 * @throws IOException If an IO error occurs
+	 */
+	private void writePage(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String rawQuery = request.getParameter("q");
+		rawQuery = rawQuery == null ? "" : rawQuery;
+		String query = StringEscapeUtils.escapeHtml4(rawQuery);
+
+		int page = parsePositive(request.getParameter("page"), 1, Integer.MAX_VALUE);
+		int size = parsePositive(request.getParameter("size"), DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+		int offset = (int) Math.min((long) (page - 1) * size, Integer.MAX_VALUE - size);
 
-		String query = request.getParameter("q");
-		query = query == null ? "" : StringEscapeUtils.escapeHtml4(query);
+		// Only the results up to the end of this page are sorted
+		InvertedIndex.TopResults topResults = this.cache.search(FileStemmer.uniqueStems(query), false, offset + size);
+		List<InvertedIndex.SearchResult> searchResults = topResults.getResults();
+		RESULT_COUNTS.record(topResults.getTotal());
 
-		List<InvertedIndex.SearchResult> searchResults = this.invertedIndex.partialSearch(FileStemmer.uniqueStems(query));
-		StringBuilder resultHtml = new StringBuilder(htmlTop);
+		response.setContentType("text/html; charset=UTF-8");
+		response.setIntHeader(RESULT_COUNT_HEADER, topResults.getTotal());
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		// Rows go straight to the response buffer instead of being built into one string first
+		OutputStream output = response.getOutputStream();
+		this.templates.writeSearchTop(output);
 
-		for (var searchResult : searchResults) {
-			resultHtml.append(String.format("<a href=\"%s\" class=\"list-group-item list-group-item-action\">%s</a>", searchResult.getLocation(), searchResult.getLocation()));
+		for (int i = offset; i < searchResults.size(); i++) {
+			this.templates.writeSearchRow(searchResults.get(i).getLocation(), output);
+
+			if (i == offset + FIRST_FLUSH_ROWS - 1) {
+				// Send the top of the page and the first rows before the rest are written
+				response.flushBuffer();
+			}
 		}
 
-		resultHtml.append(htmlBottom);
+		this.templates.writeSearchPager(rawQuery, page, size, offset + size < topResults.getTotal(), output);
+		this.templates.writeSearchBottom(output);
+	}
 
-		response.setContentType("text/html");
-		response.setStatus(HttpServletResponse.SC_OK);
-		response.getWriter().println(resultHtml.toString());
+	/**
+	 * Parses a positive integer request parameter
+	 * @param value The parameter value, or {@code null}
+	 * @param defaultValue The value to use if the parameter is missing or invalid
+	 * @param max The largest value allowed
+	 * @return The parsed value, at most {@code max}
+	 */
+	private static int parsePositive(String value, int defaultValue, int max) {
+		try {
+			int parsed = Integer.parseInt(value);
+			return parsed > 0 ? Math.min(parsed, max) : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 }
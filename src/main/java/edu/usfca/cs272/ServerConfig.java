@@ -0,0 +1,271 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Settings of the web server's thread pool and connector. Every setting starts at
+ * the value Jetty uses by default and can be read from a properties file, with
+ * keys named after the setters, such as {@code maxThreads=400} or
+ * {@code virtualThreads=true}.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class ServerConfig {
+	/** Default minimum number of pooled threads */
+	public static final int DEFAULT_MIN_THREADS = 8;
+
+	/** Default maximum number of pooled threads */
+	public static final int DEFAULT_MAX_THREADS = 200;
+
+	/** Default number of milliseconds a connection or pooled thread may stay idle */
+	public static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+	/** Default smallest response in bytes that is gzipped */
+	public static final int DEFAULT_GZIP_MIN_SIZE = 32;
+
+	/** Minimum number of pooled threads */
+	private int minThreads;
+
+	/** Maximum number of pooled threads */
+	private int maxThreads;
+
+	/** Whether requests are handled by virtual threads instead of pooled threads */
+	private boolean virtualThreads;
+
+	/** Number of threads accepting connections, or -1 to let Jetty choose */
+	private int acceptors;
+
+	/** Number of threads selecting ready connections, or -1 to let Jetty choose */
+	private int selectors;
+
+	/** Number of milliseconds a connection or pooled thread may stay idle */
+	private int idleTimeout;
+
+	/** Number of connections waiting to be accepted, or 0 for the operating system default */
+	private int acceptQueueSize;
+
+	/** Whether responses are gzipped for clients that accept it */
+	private boolean gzip;
+
+	/** Smallest response in bytes that is gzipped */
+	private int gzipMinSize;
+
+	/**
+	 * Constructs the settings Jetty uses by default
+	 */
+	public ServerConfig() {
+		this.minThreads = DEFAULT_MIN_THREADS;
+		this.maxThreads = DEFAULT_MAX_THREADS;
+		this.virtualThreads = false;
+		this.acceptors = -1;
+		this.selectors = -1;
+		this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		this.acceptQueueSize = 0;
+		this.gzip = false;
+		this.gzipMinSize = DEFAULT_GZIP_MIN_SIZE;
+	}
+
+	/**
+	 * Reads the settings in a properties file, keeping the default for any setting it does not have
+	 * @param path The properties file
+	 * @return The settings
+	 * @throws IOException If the file cannot be read
+	 * @throws IllegalArgumentException If a value is not a valid number
+	 */
+	public static ServerConfig load(Path path) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(path)) {
+			properties.load(reader);
+		}
+
+		ServerConfig config = new ServerConfig();
+		config.setMinThreads(getInteger(properties, "minThreads", config.minThreads));
+		config.setMaxThreads(getInteger(properties, "maxThreads", config.maxThreads));
+		config.setVirtualThreads(Boolean.parseBoolean(properties.getProperty("virtualThreads", String.valueOf(config.virtualThreads)).trim()));
+		config.setAcceptors(getInteger(properties, "acceptors", config.acceptors));
+		config.setSelectors(getInteger(properties, "selectors", config.selectors));
+		config.setIdleTimeout(getInteger(properties, "idleTimeout", config.idleTimeout));
+		config.setAcceptQueueSize(getInteger(properties, "acceptQueueSize", config.acceptQueueSize));
+		config.setGzip(Boolean.parseBoolean(properties.getProperty("gzip", String.valueOf(config.gzip)).trim()));
+		config.setGzipMinSize(getInteger(properties, "gzipMinSize", config.gzipMinSize));
+		return config;
+	}
+
+	/**
+	 * Returns an integer property
+	 * @param properties The properties to read
+	 * @param key The key of the property
+	 * @param backup The value to return if the property is missing
+	 * @return The value of the property or {@code backup}
+	 * @throws NumberFormatException If the value is not an integer
+	 */
+	private static int getInteger(Properties properties, String key, int backup) throws NumberFormatException {
+		String value = properties.getProperty(key);
+		return value == null ? backup : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * Returns the minimum number of pooled threads
+	 * @return The minimum number of pooled threads
+	 */
+	public int getMinThreads() {
+		return this.minThreads;
+	}
+
+	/**
+	 * Sets the minimum number of pooled threads
+	 * @param minThreads The minimum number of pooled threads, at least 1
+	 */
+	public void setMinThreads(int minThreads) {
+		this.minThreads = Math.max(1, minThreads);
+	}
+
+	/**
+	 * Returns the maximum number of pooled threads, which is never less than the minimum
+	 * @return The maximum number of pooled threads
+	 */
+	public int getMaxThreads() {
+		return Math.max(this.minThreads, this.maxThreads);
+	}
+
+	/**
+	 * Sets the maximum number of pooled threads
+	 * @param maxThreads The maximum number of pooled threads
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = Math.max(1, maxThreads);
+	}
+
+	/**
+	 * Returns whether requests are handled by virtual threads
+	 * @return {@code true} if requests are handled by virtual threads
+	 */
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Sets whether requests are handled by virtual threads. The pooled threads still
+	 * accept and select connections.
+	 * @param virtualThreads {@code true} to handle requests with virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Returns the number of threads accepting connections
+	 * @return The number of acceptors, or -1 to let Jetty choose
+	 */
+	public int getAcceptors() {
+		return this.acceptors;
+	}
+
+	/**
+	 * Sets the number of threads accepting connections
+	 * @param acceptors The number of acceptors, or a negative number to let Jetty choose
+	 */
+	public void setAcceptors(int acceptors) {
+		this.acceptors = Math.max(-1, acceptors);
+	}
+
+	/**
+	 * Returns the number of threads selecting ready connections
+	 * @return The number of selectors, or -1 to let Jetty choose
+	 */
+	public int getSelectors() {
+		return this.selectors;
+	}
+
+	/**
+	 * Sets the number of threads selecting ready connections
+	 * @param selectors The number of selectors, or 0 or less to let Jetty choose
+	 */
+	public void setSelectors(int selectors) {
+		this.selectors = selectors > 0 ? selectors : -1;
+	}
+
+	/**
+	 * Returns the number of milliseconds a connection or pooled thread may stay idle
+	 * @return The idle timeout in milliseconds
+	 */
+	public int getIdleTimeout() {
+		return this.idleTimeout;
+	}
+
+	/**
+	 * Sets the number of milliseconds a connection or pooled thread may stay idle
+	 * @param idleTimeout The idle timeout in milliseconds, at least 1
+	 */
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = Math.max(1, idleTimeout);
+	}
+
+	/**
+	 * Returns the number of connections waiting to be accepted
+	 * @return The accept queue size, or 0 for the operating system default
+	 */
+	public int getAcceptQueueSize() {
+		return this.acceptQueueSize;
+	}
+
+	/**
+	 * Sets the number of connections waiting to be accepted
+	 * @param acceptQueueSize The accept queue size, or 0 for the operating system default
+	 */
+	public void setAcceptQueueSize(int acceptQueueSize) {
+		this.acceptQueueSize = Math.max(0, acceptQueueSize);
+	}
+
+	/**
+	 * Returns whether responses are gzipped for clients that accept it
+	 * @return {@code true} if responses are gzipped
+	 */
+	public boolean isGzip() {
+		return this.gzip;
+	}
+
+	/**
+	 * Sets whether responses are gzipped for clients that accept it
+	 * @param gzip {@code true} to gzip responses
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Returns the smallest response in bytes that is gzipped
+	 * @return The minimum gzip size
+	 */
+	public int getGzipMinSize() {
+		return this.gzipMinSize;
+	}
+
+	/**
+	 * Sets the smallest response in bytes that is gzipped
+	 * @param gzipMinSize The minimum gzip size
+	 */
+	public void setGzipMinSize(int gzipMinSize) {
+		this.gzipMinSize = Math.max(0, gzipMinSize);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"Server uses %d to %d %s threads, %d acceptors, %d selectors, a %d ms idle timeout, an accept queue of %d, and %s.",
+			this.minThreads,
+			getMaxThreads(),
+			this.virtualThreads ? "pooled and virtual request" : "pooled",
+			this.acceptors,
+			this.selectors,
+			this.idleTimeout,
+			this.acceptQueueSize,
+			this.gzip ? "gzip" : "no gzip"
+		);
+	}
+}
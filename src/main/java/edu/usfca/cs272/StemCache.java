@@ -0,0 +1,199 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+/**
+ * Thread-safe, bounded cache of cleaned words to their stems. Each thread reuses
+ * its own {@link SnowballStemmer}, and every stem handed out is a canonical
+ * {@code String} instance so that equal terms share the same object no matter
+ * which word or thread produced them. Every stem handed out, cached word or not,
+ * is looked up in the canonical stems, which keeps stems in use from being
+ * evicted. Only a stem that was not handed out for a whole generation can be
+ * replaced by a new canonical instance.
+ *
+ * <p>
+ * Eviction is generational: entries live in a young generation until it fills up
+ * to half the capacity, at which point it becomes the old generation and the
+ * previous old generation is dropped. Entries found in the old generation are
+ * promoted back into the young one, so frequently used words survive.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class StemCache implements Stemmer {
+	/** Default maximum number of words to cache */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	/** Cache shared by all indexers, query parsers, and servlets */
+	private static final StemCache SHARED = new StemCache(DEFAULT_CAPACITY);
+
+	/** One stemmer per thread since {@link SnowballStemmer} is not thread-safe */
+	private final ThreadLocal<SnowballStemmer> stemmer;
+
+	/** Maps cleaned words to their canonical stems */
+	private final Generations words;
+
+	/** Maps stems to their canonical instance */
+	private final Generations stems;
+
+	/**
+	 * Constructs a stem cache that holds at most {@code capacity} words
+	 * @param capacity The maximum number of words to cache
+	 */
+	public StemCache(int capacity) {
+		int generation = Math.max(1, capacity / 2);
+		this.stemmer = ThreadLocal.withInitial(() -> new SnowballStemmer(ENGLISH));
+		this.words = new Generations(generation);
+		this.stems = new Generations(generation);
+	}
+
+	/**
+	 * Returns the stem cache shared by the whole application
+	 * @return The shared stem cache
+	 */
+	public static StemCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the canonical stem of a cleaned word, stemming it only on a cache miss
+	 * @param word The cleaned word to stem
+	 * @return The canonical stem of {@code word}
+	 */
+	@Override
+	public String stem(CharSequence word) {
+		String key = word.toString();
+		String stem = this.words.get(key);
+
+		if (stem == null) {
+			stem = this.stemmer.get().stem(key).toString();
+			stem = this.stems.putIfAbsent(stem, stem);
+			this.words.putIfAbsent(key, stem);
+		} else {
+			// The words rotate separately from the stems, so the stem cached for a word may not be the canonical one anymore
+			String canonical = this.stems.get(stem);
+			stem = canonical != null ? canonical : this.stems.putIfAbsent(stem, stem);
+		}
+
+		return stem;
+	}
+
+	/**
+	 * Returns the number of words currently cached
+	 * @return The number of words currently cached
+	 */
+	public int size() {
+		return this.words.size();
+	}
+
+	/** Removes every cached word and stem */
+	public void clear() {
+		this.words.clear();
+		this.stems.clear();
+	}
+
+	@Override
+	public String toString() {
+		int size = size();
+		return String.format(
+			"Stem cache currently has %d %s stored.",
+			size,
+			size == 1 ? "word" : "words"
+		);
+	}
+
+	/** Pair of concurrent maps that rotate once the young generation fills up */
+	private static class Generations {
+		/** The number of entries after which the young generation is retired */
+		private final int limit;
+
+		/** Recently added or used entries */
+		private volatile ConcurrentHashMap<String, String> young;
+
+		/** Entries from the previous generation, dropped on the next rotation */
+		private volatile ConcurrentHashMap<String, String> old;
+
+		/**
+		 * Constructs empty generations
+		 * @param limit The number of entries after which the young generation is retired
+		 */
+		public Generations(int limit) {
+			this.limit = limit;
+			this.young = new ConcurrentHashMap<>();
+			this.old = new ConcurrentHashMap<>();
+		}
+
+		/**
+		 * Returns the value for {@code key}, promoting it out of the old generation if necessary
+		 * @param key The key to look up
+		 * @return The cached value or {@code null} if not cached
+		 */
+		public String get(String key) {
+			String value = this.young.get(key);
+			if (value == null) {
+				value = this.old.get(key);
+				if (value != null) {
+					value = putIfAbsent(key, value);
+				}
+			}
+
+			return value;
+		}
+
+		/**
+		 * Adds {@code key} to the young generation unless it already holds a value,
+		 * reusing the value from the old generation if there is one
+		 * @param key The key to add
+		 * @param value The value to add
+		 * @return The value now associated with {@code key}
+		 */
+		public String putIfAbsent(String key, String value) {
+			String retired = this.old.get(key);
+			if (retired != null) {
+				value = retired;
+			}
+
+			ConcurrentHashMap<String, String> current = this.young;
+			String existing = current.putIfAbsent(key, value);
+
+			if (existing != null) {
+				return existing;
+			}
+
+			if (current.size() >= this.limit) {
+				rotate(current);
+			}
+
+			return value;
+		}
+
+		/**
+		 * Retires the full young generation unless another thread already has
+		 * @param full The young generation observed to be full
+		 */
+		private synchronized void rotate(ConcurrentHashMap<String, String> full) {
+			if (this.young == full) {
+				this.old = full;
+				this.young = new ConcurrentHashMap<>();
+			}
+		}
+
+		/**
+		 * Returns the approximate number of entries across both generations
+		 * @return The approximate number of entries
+		 */
+		public int size() {
+			return this.young.size() + this.old.size();
+		}
+
+		/** Drops both generations */
+		public synchronized void clear() {
+			this.old = new ConcurrentHashMap<>();
+			this.young = new ConcurrentHashMap<>();
+		}
+	}
+}
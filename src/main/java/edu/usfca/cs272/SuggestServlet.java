@@ -0,0 +1,101 @@
+package edu.usfca.cs272;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that completes the last word of a partly typed query as JSON, so the
+ * search box can suggest words on every keystroke without running a search. Accepts
+ * the typed text as {@code prefix} and the number of completions as {@code limit}.
+ * The typed word is completed before stemming, to words as they were written in the
+ * indexed documents, so a completion can replace the typed word as is. Each completion
+ * stands for a different stem, and they are ordered by the number of locations of
+ * their stems.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class SuggestServlet extends HttpServlet {
+	/** Class version for serialization */
+	private static final long serialVersionUID = 1L;
+
+	/** How long clients may reuse completions before asking again */
+	private static final String CACHE_CONTROL = "public, max-age=60";
+
+	/** Nanoseconds spent on each request */
+	private static final Metrics.Histogram REQUEST_TIME = Metrics.shared().histogram("suggest_request_nanos");
+
+	/**
+	 * The completions of the words of the inverted index.
+	 * Marked as {@code transient} because this member is not serializable and does not need to be persisted if the servlet is serialized.
+	 */
+	private final transient CompletionTrie completions;
+
+	/**
+	 * Constructs a {@code SuggestServlet} that completes words with the trie
+	 * @param completions The completions of the words of the inverted index
+	 */
+	public SuggestServlet(CompletionTrie completions) {
+		this.completions = completions;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		long start = System.nanoTime();
+
+		String typed = request.getParameter("prefix");
+		typed = typed == null ? "" : typed;
+
+		int limit = this.completions.getLimit();
+		String value = request.getParameter("limit");
+		if (value != null && !value.isBlank()) {
+			try {
+				limit = Math.clamp(Integer.parseInt(value.trim()), 0, limit);
+			} catch (NumberFormatException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The limit must be an integer.");
+				return;
+			}
+		}
+
+		// Only the word being typed is completed, and a trailing space means it is finished
+		String[] words = FileStemmer.parse(typed);
+		boolean typing = words.length > 0 && !Character.isWhitespace(typed.charAt(typed.length() - 1));
+		String prefix = typing ? words[words.length - 1] : "";
+
+		List<CompletionTrie.Completion> suggestions = this.completions.complete(prefix, limit);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JsonStreamWriter writer = new JsonStreamWriter(bytes, 1 << 10)) {
+			writer.write("{\"prefix\":");
+			NdjsonWriter.writeString(prefix, writer);
+			writer.write(",\"suggestions\":[");
+
+			for (int i = 0; i < suggestions.size(); i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+
+				writer.write("{\"word\":");
+				NdjsonWriter.writeString(suggestions.get(i).getWord(), writer);
+				writer.write(",\"locations\":");
+				writer.write(suggestions.get(i).getFrequency());
+				writer.write('}');
+			}
+
+			writer.write("]}");
+		}
+
+		byte[] json = bytes.toByteArray();
+		response.setContentType("application/json; charset=UTF-8");
+		response.setHeader("Cache-Control", CACHE_CONTROL);
+		response.setContentLength(json.length);
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.getOutputStream().write(json);
+		REQUEST_TIME.recordSince(start);
+	}
+}
@@ -0,0 +1,123 @@
+package edu.usfca.cs272;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Thread-safe dictionary of the cleaned words that were indexed before stemming,
+ * each with its stem and the number of documents it was found in. The inverted
+ * index only keeps stems, so this is what lets a partly typed word be completed to
+ * a word someone actually wrote instead of a stem like {@code univers}.
+ *
+ * <p>
+ * Documents are only ever added, so the counts of words whose documents were later
+ * removed or indexed again are overestimates. They are only used to choose between
+ * the words sharing a stem.
+ *
+ * @author Shyon Ghahghahi
+ * @version Fall 2024
+ */
+public class SurfaceForms {
+	/** Dictionary shared by all indexers and the completion trie */
+	private static final SurfaceForms SHARED = new SurfaceForms();
+
+	/** Maps cleaned words to their stem and document count */
+	private final ConcurrentHashMap<String, Form> forms;
+
+	/** A cleaned word as it was indexed */
+	private static class Form {
+		/** The stem the word was indexed under */
+		private final String stem;
+
+		/** The number of documents the word was found in */
+		private final AtomicInteger documents;
+
+		/**
+		 * Constructs a word found in no documents yet
+		 * @param stem The stem the word was indexed under
+		 */
+		public Form(String stem) {
+			this.stem = stem;
+			this.documents = new AtomicInteger();
+		}
+	}
+
+	/** Constructs an empty dictionary */
+	public SurfaceForms() {
+		this.forms = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the dictionary shared by the whole application
+	 * @return The shared dictionary
+	 */
+	public static SurfaceForms shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Counts one more document for each distinct cleaned word of a document
+	 * @param words The distinct cleaned words of the document
+	 * @param stemmer The stemmer the document was indexed with
+	 */
+	public void addDocument(Collection<String> words, Stemmer stemmer) {
+		for (String word : words) {
+			this.forms.computeIfAbsent(word, key -> new Form(stemmer.stem(key).toString())).documents.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns every word whose stem is one of {@code stems}, sorted, mapped to its stem
+	 * @param stems The stems to find the words of
+	 * @return The words and their stems
+	 */
+	public TreeMap<String, String> getWords(Set<String> stems) {
+		TreeMap<String, String> words = new TreeMap<>();
+		for (Map.Entry<String, Form> entry : this.forms.entrySet()) {
+			if (stems.contains(entry.getValue().stem)) {
+				words.put(entry.getKey(), entry.getValue().stem);
+			}
+		}
+
+		return words;
+	}
+
+	/**
+	 * Returns the number of documents a word was found in
+	 * @param word The cleaned word
+	 * @return The number of documents, or 0 if the word was never indexed
+	 */
+	public int getDocuments(String word) {
+		Form form = this.forms.get(word);
+		return form == null ? 0 : form.documents.get();
+	}
+
+	/**
+	 * Returns the number of words in the dictionary
+	 * @return The number of words
+	 */
+	public int size() {
+		return this.forms.size();
+	}
+
+	/** Removes every word */
+	public void clear() {
+		this.forms.clear();
+	}
+
+	@Override
+	public String toString() {
+		int size = size();
+		return String.format(
+			"Surface forms currently has %d %s stored.",
+			size,
+			size == 1 ? "word" : "words"
+		);
+	}
+}
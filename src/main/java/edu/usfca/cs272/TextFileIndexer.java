@@ -3,13 +3,16 @@ package edu.usfca.cs272;
 import java.io.BufferedReader;
 import java.io.IOException;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import opennlp.tools.stemmer.Stemmer;
 
 /** Class that handles anything I/O related. */
 /**
@@ -35,12 +38,15 @@ public class TextFileIndexer {
 	/**
 	 * Reads file from {@code path}.
 	 * Adds {@code path} and word counts to {@code this.wordStems} to be written to a file later.
+	 * The words before stemming are added to {@link SurfaceForms#shared()} once the whole file is read.
 	 * @param path File path to read from
 	 * @param invertedIndex The {@link InvertedIndex} object where we can access the word stems data structure from
 	 * @throws IOException If an IO error occurs
 	 */
 	public static void indexFile(Path path, InvertedIndex invertedIndex) throws IOException {
-		SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.shared();
+
+		HashSet<String> words = new HashSet<>();
 
 		try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
 			int wordPosition = 1;
@@ -52,12 +58,15 @@ public class TextFileIndexer {
 
 				for (String cleanWord : cleanedWords) {
 					invertedIndex.addWordPosition(
-						snowballStemmer.stem(cleanWord).toString(),
+						stemmer.stem(cleanWord).toString(),
 						location, wordPosition++
 					);
+					words.add(cleanWord);
 				}
 			}
 		}
+
+		SurfaceForms.shared().addDocument(words, stemmer);
 	}
 
 	/**
@@ -73,6 +82,28 @@ public class TextFileIndexer {
 		indexFile(path, this.invertedIndex);
 	}
 
+	/**
+	 * Reads every file in {@code paths}. A file that cannot be read does not stop the
+	 * rest of the files from being read.
+	 *
+	 * @see #indexFile(Path)
+	 *
+	 * @param paths File paths to read from
+	 * @return The files that could not be read, some of whose words may have been added already
+	 */
+	public Set<Path> indexFiles(Collection<Path> paths) {
+		HashSet<Path> failed = new HashSet<>();
+		for (Path path : paths) {
+			try {
+				indexFile(path);
+			} catch (IOException e) {
+				failed.add(path);
+			}
+		}
+
+		return failed;
+	}
+
 	/**
 	 * Recursively reads all files and subdirectories from {@code dirLocation}.
 	 * Only reads files if they end in {@code .txt} or {@code .text} (case-insensitive).
@@ -1,10 +1,13 @@
 package edu.usfca.cs272;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.usfca.cs272.MultiReaderLock.SimpleLock;
 
@@ -21,14 +24,42 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	/** The conditional lock used for writing */
 	private final SimpleLock writeLock;
 
+	/** Incremented by every write, so readers can tell whether results computed earlier are still current */
+	private final AtomicLong generation;
+
+	/** Expansions of recently searched prefixes, used by partial searches until the next write */
+	private final PrefixCache prefixCache;
+
 	/**
 	 * Initializes a new read lock and write lock
+	 * @param prefixCacheWeight The maximum total weight of the prefix cache, roughly the number of cached word locations
 	 */
-	public ThreadSafeInvertedIndex() {
+	public ThreadSafeInvertedIndex(long prefixCacheWeight) {
 		super();
-		this.lock = new MultiReaderLock();
+		this.lock = new MultiReaderLock(
+			Metrics.shared().histogram("index_read_lock_wait_nanos"),
+			Metrics.shared().histogram("index_write_lock_wait_nanos")
+		);
 		this.readLock = this.lock.readLock();
 		this.writeLock = this.lock.writeLock();
+		this.generation = new AtomicLong();
+		this.prefixCache = new PrefixCache(this.generation::get, prefixCacheWeight);
+	}
+
+	/**
+	 * Initializes a new read lock and write lock with the default prefix cache weight
+	 */
+	public ThreadSafeInvertedIndex() {
+		this(PrefixCache.DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * Returns the generation of this index, which changes after every write.
+	 * Results computed while the generation stayed the same are still current.
+	 * @return The generation of this index
+	 */
+	public long getGeneration() {
+		return this.generation.get();
 	}
 
 	@Override
@@ -45,7 +76,55 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	public List<InvertedIndex.SearchResult> partialSearch(Set<String> queryStems) {
 		this.readLock.lock();
 		try {
-			return super.partialSearch(queryStems);
+			return super.partialSearch(queryStems, this.prefixCache);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> partialSearch(Set<String> queryStems, PrefixCache cache) {
+		this.readLock.lock();
+		try {
+			return super.partialSearch(queryStems, cache);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the cache of prefix expansions used by partial searches
+	 * @return The prefix cache
+	 */
+	public PrefixCache getPrefixCache() {
+		return this.prefixCache;
+	}
+
+	@Override
+	public TopResults search(Set<String> queryStems, boolean isExactSearch, int limit) {
+		this.readLock.lock();
+		try {
+			return super.search(queryStems, isExactSearch, limit, this.prefixCache);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	@Override
+	public TopResults search(Set<String> queryStems, boolean isExactSearch, int limit, PrefixCache cache) {
+		this.readLock.lock();
+		try {
+			return super.search(queryStems, isExactSearch, limit, cache);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	@Override
+	public List<List<InvertedIndex.SearchResult>> batchSearch(List<? extends Set<String>> queries, boolean isExactSearch) {
+		this.readLock.lock();
+		try {
+			return super.batchSearch(queries, isExactSearch);
 		} finally {
 			this.readLock.unlock();
 		}
@@ -57,6 +136,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		try {
 			return super.addWords(stemmedWords, location, wordPosition);
 		} finally {
+			this.generation.incrementAndGet();
 			this.writeLock.unlock();
 		}
 	}
@@ -67,6 +147,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		try {
 			return super.addWordPosition(word, location, wordPosition);
 		} finally {
+			this.generation.incrementAndGet();
 			this.writeLock.unlock();
 		}
 	}
@@ -76,6 +157,56 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		this.writeLock.lock();
 		try {
 			super.addAll(indexToAdd);
+		} finally {
+			this.generation.incrementAndGet();
+			this.writeLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean removeLocation(String location) {
+		this.writeLock.lock();
+		try {
+			return super.removeLocation(location);
+		} finally {
+			this.generation.incrementAndGet();
+			this.writeLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean replaceLocation(String location, InvertedIndex replacement) {
+		this.writeLock.lock();
+		try {
+			return super.replaceLocation(location, replacement);
+		} finally {
+			this.generation.incrementAndGet();
+			this.writeLock.unlock();
+		}
+	}
+
+	@Override
+	public int compact() {
+		this.writeLock.lock();
+		try {
+			return super.compact();
+		} finally {
+			this.generation.incrementAndGet();
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Compacts the inverted index while holding the write lock, then trades it for the
+	 * read lock without letting another writer in, so the inverted index can be written
+	 * out without any tombstones and without blocking searches while it is written.
+	 * The caller must unlock the read lock.
+	 */
+	private void lockCompacted() {
+		this.writeLock.lock();
+		try {
+			super.compact();
+			this.readLock.lock();
 		} finally {
 			this.writeLock.unlock();
 		}
@@ -153,7 +284,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 
 	@Override
 	public void indexJson(Path location) throws IOException {
-		this.readLock.lock();
+		lockCompacted();
 		try {
 			super.indexJson(location);
 		} finally {
@@ -161,6 +292,47 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public void indexJson(Path location, WorkQueue queue) throws IOException {
+		lockCompacted();
+		try {
+			super.indexJson(location, queue);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	@Override
+	public void writeCounts(Path location, OutputFormat format) throws IOException {
+		this.readLock.lock();
+		try {
+			super.writeCounts(location, format);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	@Override
+	public void writeIndex(Path location, OutputFormat format) throws IOException {
+		lockCompacted();
+		try {
+			super.writeIndex(location, format);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	// saveIndex(Path) opens the file and calls this, so it is not overridden as well
+	@Override
+	public void saveIndex(DataOutputStream output) throws IOException {
+		lockCompacted();
+		try {
+			super.saveIndex(output);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 	@Override
 	public int numLocations(String word) {
 		this.readLock.lock();
@@ -171,6 +343,16 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public TreeMap<String, Integer> getDocumentFrequencies() {
+		this.readLock.lock();
+		try {
+			return super.getDocumentFrequencies();
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 	@Override
 	public int numPositions(String word, String location) {
 		this.readLock.lock();
@@ -4,38 +4,45 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 import java.util.Set;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Function;
 
 import edu.usfca.cs272.InvertedIndex.SearchResult;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 /**
  * Thread-safe version of {@link DefaultQueryParser}.
  * Uses a work queue to allow a multithreaded parsing process.
+ * Results are kept in concurrent sorted maps, and a query that is already being
+ * searched by another task is skipped instead of being searched again.
  *
  * @author Shyon Ghahghahi
  * @version Fall 2024
  */
 public class ThreadSafeQueryParser implements QueryParser {
 	/** Maps each query string to a {@code List} of search results */
-	private final TreeMap<String, List<InvertedIndex.SearchResult>> exactSearchResults;
+	private final ConcurrentSkipListMap<String, List<InvertedIndex.SearchResult>> exactSearchResults;
 
 	/** Maps each query string to a {@code List} of search results */
-	private final TreeMap<String, List<InvertedIndex.SearchResult>> partialSearchResults;
+	private final ConcurrentSkipListMap<String, List<InvertedIndex.SearchResult>> partialSearchResults;
+
+	/** Searches in progress, keyed by search mode and query string, so duplicates can skip or wait for them */
+	private final ConcurrentHashMap<String, CompletableFuture<List<InvertedIndex.SearchResult>>> inFlight;
 
 	/** Initialized and populated thread-safe inverted index to reference */
 	private final ThreadSafeInvertedIndex invertedIndex;
 
 	/** Search {@code Function} that will be dynamically assigned */
-	private Function<Set<String>, List<InvertedIndex.SearchResult>> searchMode;
+	private volatile Function<Set<String>, List<InvertedIndex.SearchResult>> searchMode;
 
 	/** {@code Map} to store either partial or exact search results */
-	private TreeMap<String, List<InvertedIndex.SearchResult>> resultMap;
+	private volatile ConcurrentSkipListMap<String, List<InvertedIndex.SearchResult>> resultMap;
 
 	/** Flag to keep track of current search mode */
 	private volatile boolean isExactSearch;
@@ -43,52 +50,198 @@ public class ThreadSafeQueryParser implements QueryParser {
 	/** The work queue to assign tasks to */
 	private final WorkQueue queue;
 
+	/** Where results are streamed to instead of the result map, or {@code null} to keep them in memory */
+	private final ResultSpool spool;
+
 	/**
 	 * Constructor that initializes our search result metadata data tructure to an empty {@code TreeMap}
 	 * @param invertedIndex The populated inverted index object to reference
 	 * @param queue The work queue to assign tasks to
+	 * @param spool Where to stream search results instead of keeping them in memory, or {@code null} to keep them in memory.
+	 * Streamed results are not available from {@link #getSearchResults(String)}.
 	 */
-	public ThreadSafeQueryParser(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue) {
-		this.exactSearchResults = new TreeMap<>();
-		this.partialSearchResults = new TreeMap<>();
+	public ThreadSafeQueryParser(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue, ResultSpool spool) {
+		this.exactSearchResults = new ConcurrentSkipListMap<>();
+		this.partialSearchResults = new ConcurrentSkipListMap<>();
+		this.inFlight = new ConcurrentHashMap<>();
 		this.invertedIndex = invertedIndex;
 		this.queue = queue;
+		this.spool = spool;
 		setSearchMode(true);
 	}
 
+	/**
+	 * Constructor that initializes our search result metadata data tructure to an empty {@code TreeMap}
+	 * @param invertedIndex The populated inverted index object to reference
+	 * @param queue The work queue to assign tasks to
+	 */
+	public ThreadSafeQueryParser(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue) {
+		this(invertedIndex, queue, null);
+	}
+
 	/** Nested class that represents a task for a thread to do */
 	private class Work implements Runnable {
 		/** The line to parse */
 		private final String line;
 
+		/** The search mode when the task was created */
+		private final boolean isExactSearch;
+
+		/** The search to run */
+		private final Function<Set<String>, List<InvertedIndex.SearchResult>> searchMode;
+
+		/** Where to store the search results */
+		private final ConcurrentSkipListMap<String, List<InvertedIndex.SearchResult>> resultMap;
+
 		/**
-		 * Constructs a new task
+		 * Constructs a new task that uses the current search mode
 		 * @param line The line to parse
 		 */
 		public Work(String line) {
-			this.line = line;
+			synchronized (ThreadSafeQueryParser.this) {
+				this.line = line;
+				this.isExactSearch = ThreadSafeQueryParser.this.isExactSearch;
+				this.searchMode = ThreadSafeQueryParser.this.searchMode;
+				this.resultMap = ThreadSafeQueryParser.this.resultMap;
+			}
 		}
 
 		@Override
 		public void run() {
-			SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
-			Set<String> queryStems = FileStemmer.uniqueStems(line, snowballStemmer);
+			Set<String> queryStems = FileStemmer.uniqueStems(line, StemCache.shared());
 			String queryString = QueryParser.extractQueryString(queryStems);
 
-			synchronized (resultMap) {
-				if (queryString.isBlank() || resultMap.containsKey(queryString)) {
-					return;
+			if (spool != null) {
+				// The spool is thread safe and formats the results in this thread
+				if (!queryString.isBlank() && spool.claim(queryString)) {
+					spool.add(queryString, searchMode.apply(queryStems));
 				}
+				return;
+			}
+
+			if (queryString.isBlank() || resultMap.containsKey(queryString)) {
+				return;
 			}
 
-			List<InvertedIndex.SearchResult> searchResults = searchMode.apply(queryStems);
+			String key = flightKey(isExactSearch, queryString);
+			CompletableFuture<List<InvertedIndex.SearchResult>> future = new CompletableFuture<>();
 
-			synchronized (resultMap) {
+			// Another task is searching for this query, or finished between the checks above and below
+			if (inFlight.putIfAbsent(key, future) != null || resultMap.containsKey(queryString)) {
+				inFlight.remove(key, future);
+				future.complete(resultMap.get(queryString));
+				return;
+			}
+
+			try {
+				List<InvertedIndex.SearchResult> searchResults = searchMode.apply(queryStems);
 				resultMap.put(queryString, searchResults);
+				future.complete(searchResults);
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+				throw e;
+			} finally {
+				inFlight.remove(key, future);
+			}
+		}
+	}
+
+	/** Nested class that represents a batch of lines for a thread to search at once */
+	private class BatchWork implements Runnable {
+		/** The lines to parse */
+		private final List<String> lines;
+
+		/** The search mode when the task was created */
+		private final boolean isExactSearch;
+
+		/** Where to store the search results */
+		private final ConcurrentSkipListMap<String, List<InvertedIndex.SearchResult>> resultMap;
+
+		/**
+		 * Constructs a new task that uses the current search mode
+		 * @param lines The lines to parse
+		 */
+		public BatchWork(List<String> lines) {
+			synchronized (ThreadSafeQueryParser.this) {
+				this.lines = lines;
+				this.isExactSearch = ThreadSafeQueryParser.this.isExactSearch;
+				this.resultMap = ThreadSafeQueryParser.this.resultMap;
+			}
+		}
+
+		@Override
+		public void run() {
+			LinkedHashMap<String, Set<String>> queries = new LinkedHashMap<>();
+			LinkedHashMap<String, CompletableFuture<List<InvertedIndex.SearchResult>>> futures = new LinkedHashMap<>();
+
+			for (String line : this.lines) {
+				Set<String> queryStems = FileStemmer.uniqueStems(line, StemCache.shared());
+				String queryString = QueryParser.extractQueryString(queryStems);
+
+				if (queryString.isBlank() || queries.containsKey(queryString)) {
+					continue;
+				}
+
+				if (spool != null) {
+					if (spool.claim(queryString)) {
+						queries.put(queryString, queryStems);
+					}
+					continue;
+				}
+
+				if (this.resultMap.containsKey(queryString)) {
+					continue;
+				}
+
+				// Same single-flight registration as Work, so batches and single lines never search twice
+				String key = flightKey(this.isExactSearch, queryString);
+				CompletableFuture<List<InvertedIndex.SearchResult>> future = new CompletableFuture<>();
+				if (inFlight.putIfAbsent(key, future) != null || this.resultMap.containsKey(queryString)) {
+					inFlight.remove(key, future);
+					continue;
+				}
+
+				queries.put(queryString, queryStems);
+				futures.put(queryString, future);
+			}
+
+			try {
+				List<List<InvertedIndex.SearchResult>> searchResults = invertedIndex.batchSearch(new ArrayList<>(queries.values()), this.isExactSearch);
+
+				int i = 0;
+				for (String queryString : queries.keySet()) {
+					List<InvertedIndex.SearchResult> results = searchResults.get(i++);
+
+					if (spool != null) {
+						spool.add(queryString, results);
+					} else {
+						this.resultMap.put(queryString, results);
+						futures.get(queryString).complete(results);
+					}
+				}
+			} catch (RuntimeException e) {
+				for (var future : futures.values()) {
+					future.completeExceptionally(e);
+				}
+				throw e;
+			} finally {
+				for (var entry : futures.entrySet()) {
+					inFlight.remove(flightKey(this.isExactSearch, entry.getKey()), entry.getValue());
+				}
 			}
 		}
 	}
 
+	/**
+	 * Returns the key of a search in progress
+	 * @param isExactSearch The search mode
+	 * @param queryString The normalized query string
+	 * @return The key of the search in progress
+	 */
+	private static String flightKey(boolean isExactSearch, String queryString) {
+		return (isExactSearch ? "exact:" : "partial:") + queryString;
+	}
+
 	@Override
 	public final void setSearchMode(boolean isExactSearch) {
 		// No need to synchronize because of volatile keyword
@@ -106,23 +259,45 @@ public class ThreadSafeQueryParser implements QueryParser {
 		this.queue.finish();
 	}
 
+	@Override
+	public void parseLocation(Path queryLocation, int batchSize) throws IOException {
+		QueryParser.super.parseLocation(queryLocation, batchSize);
+		this.queue.finish();
+	}
+
 	@Override
 	public void parseLine(String line) {
 		this.queue.execute(new Work(line));
 	}
 
+	@Override
+	public void parseBatch(List<String> lines) {
+		this.queue.execute(new BatchWork(lines));
+	}
+
 	@Override
 	public void queryJson(Path location) throws IOException {
-		synchronized (this.resultMap) {
-			SearchResultWriter.writeSearchResults(this.resultMap, location);
+		writeResults(location, OutputFormat.JSON);
+	}
+
+	@Override
+	public void writeResults(Path location, OutputFormat format) throws IOException {
+		if (this.spool != null) {
+			this.spool.writeTo(location, format);
+			return;
+		}
+
+		// Concurrent maps iterate in sorted order without locking
+		switch (format) {
+			case NDJSON -> NdjsonWriter.writeSearchResults(this.resultMap, location);
+			case BINARY -> BinaryWriter.writeSearchResults(this.resultMap, location);
+			default -> SearchResultWriter.writeSearchResults(this.resultMap, location);
 		}
 	}
 
 	@Override
 	public Set<String> getQueryStrings() {
-		synchronized (this.resultMap) {
-			return Collections.unmodifiableSet(this.resultMap.keySet());
-		}
+		return Collections.unmodifiableSet(this.resultMap.keySet());
 	}
 
 	@Override
@@ -133,13 +308,19 @@ public class ThreadSafeQueryParser implements QueryParser {
 
 	@Override
 	public List<SearchResult> getSearchResults(String queryString) {
-		SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
-		Set<String> queryStems = FileStemmer.uniqueStems(queryString, snowballStemmer);
+		Set<String> queryStems = FileStemmer.uniqueStems(queryString, StemCache.shared());
 		String joinedQuerySring = QueryParser.extractQueryString(queryStems);
 
-		List<InvertedIndex.SearchResult> searchResults = null;
-		synchronized (this.resultMap) {
-			searchResults = this.resultMap.get(joinedQuerySring);
+		List<InvertedIndex.SearchResult> searchResults = this.resultMap.get(joinedQuerySring);
+
+		if (searchResults == null) {
+			// Wait for the search if it is still in progress
+			var future = this.inFlight.get(flightKey(this.isExactSearch, joinedQuerySring));
+			try {
+				searchResults = future == null ? null : future.join();
+			} catch (CompletionException e) {
+				searchResults = null;
+			}
 		}
 
 		return searchResults == null ? Collections.emptyList() : Collections.unmodifiableList(searchResults);
@@ -147,20 +328,17 @@ public class ThreadSafeQueryParser implements QueryParser {
 
 	@Override
 	public int numQueryStrings() {
-		synchronized (this.resultMap) {
-			return this.resultMap.size();
-		}
+		return this.resultMap.size();
 	}
 
 	@Override
 	public String toString() {
-		synchronized (this.resultMap) {
-			return String.format(
-				"Query parser currently has %d %s search %s stored.",
-				this.resultMap.size(),
-				this.isExactSearch ? "exact" : "partial",
-				this.resultMap.size() == 1 ? "result" : "results"
-			);
-		}
+		int size = this.resultMap.size();
+		return String.format(
+			"Query parser currently has %d %s search %s stored.",
+			size,
+			this.isExactSearch ? "exact" : "partial",
+			size == 1 ? "result" : "results"
+		);
 	}
 }
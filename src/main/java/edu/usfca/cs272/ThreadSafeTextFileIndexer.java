@@ -3,6 +3,9 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Thread-safe version of {@link TextFileIndexer} */
 public class ThreadSafeTextFileIndexer extends TextFileIndexer {
@@ -28,12 +31,17 @@ public class ThreadSafeTextFileIndexer extends TextFileIndexer {
 		/** The file location to index */
 		private final Path location;
 
+		/** Where to add the location if it cannot be read, or {@code null} to throw instead */
+		private final Set<Path> failed;
+
 		/**
 		 * Constructs a new task
 		 * @param location The file location to index
+		 * @param failed Where to add the location if it cannot be read, or {@code null} to throw instead
 		 */
-		public Work(Path location) {
+		public Work(Path location, Set<Path> failed) {
 			this.location = location;
+			this.failed = failed;
 		}
 
 		@Override
@@ -41,9 +49,13 @@ public class ThreadSafeTextFileIndexer extends TextFileIndexer {
 			try {
 				InvertedIndex localIndex = new InvertedIndex();
 				TextFileIndexer.indexFile(this.location, localIndex);
-				invertedIndex.addAll(localIndex);
+				invertedIndex.replaceLocation(this.location.toString(), localIndex);
 			} catch (IOException e) {
-				throw new UncheckedIOException(e);
+				if (this.failed == null) {
+					throw new UncheckedIOException(e);
+				}
+
+				this.failed.add(this.location);
 			}
 		}
 	}
@@ -55,7 +67,24 @@ public class ThreadSafeTextFileIndexer extends TextFileIndexer {
 	 */
 	@Override
 	public void indexFile(Path path) throws IOException {
-		this.queue.execute(new Work(path));
+		this.queue.execute(new Work(path, null));
+	}
+
+	/**
+	 * Reads every file in {@code paths} and waits for them to be indexed.
+	 * A file that cannot be read is left out of the inverted index.
+	 * @param paths File paths to read from
+	 * @return The files that could not be read
+	 */
+	@Override
+	public Set<Path> indexFiles(Collection<Path> paths) {
+		Set<Path> failed = ConcurrentHashMap.newKeySet();
+		for (Path path : paths) {
+			this.queue.execute(new Work(path, failed));
+		}
+
+		this.queue.finish();
+		return failed;
 	}
 
 	/**
@@ -1,43 +1,221 @@
 package edu.usfca.cs272;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import opennlp.tools.stemmer.Stemmer;
 
 /**
  * Class responsible for web crawling starting from a specific seed URI.
  * Builds an inverted index from the seed URI.
  * This class is thread safe.
  *
+ * <p>
+ * Links waiting to be crawled are kept in a {@link CrawlFrontier} that spills to
+ * disk once it outgrows its memory budget, and only a few links per worker thread
+ * are handed to the work queue at a time. Every link found is still remembered in
+ * memory to avoid crawling it twice, so memory grows with the maximum number of URLs
+ * to crawl; the spill only keeps the queue of waiting links from adding to it. If a checkpoint directory is provided,
+ * the crawled links, the frontier, and the index built so far are saved every
+ * {@value #CHECKPOINT_INTERVAL} pages so the crawl can be resumed after a restart.
+ * Checkpoints are written by a thread of their own, and the index is saved as an
+ * {@link IndexLog}, so each checkpoint only appends the pages indexed since the last one.
+ *
+ * <p>
+ * By default each worker thread fetches its page with a blocking socket, so only as
+ * many pages are fetched at once as there are threads. If a number of pages in flight
+ * is provided, pages are instead fetched without blocking by an {@link HttpClient}
+ * on a couple of threads, and each fetched page is handed to the work queue only to
+ * be cleaned, have its links extracted, and be stemmed and indexed. The crawl can
+ * also be split into a pipeline of stages with their own threads and bounded queues,
+ * to find and size the slowest stage.
+ *
  * @author Shyon Ghahghahi
  * @author CS 272 Software Development (University of San Francisco)
  * @version Fall 2024
  */
 public class WebCrawler {
+	/** File name of the saved crawled links and frontier inside the checkpoint directory */
+	public static final String CRAWL_STATE = "crawl.txt";
+
+	/** Number of crawled pages between checkpoints */
+	public static final int CHECKPOINT_INTERVAL = 100;
+
+	/** Default maximum number of pages fetched at once without blocking */
+	public static final int DEFAULT_IN_FLIGHT = 256;
+
+	/** Number of links per worker thread handed to the work queue at a time */
+	private static final int TASKS_PER_THREAD = 2;
+
+	/** Number of threads of the client that fetches pages without blocking */
+	private static final int FETCH_THREADS = 2;
+
+	/** Default number of threads of the fetch, extract, stem, and merge stages of the pipeline */
+	public static final String DEFAULT_STAGES = "8,2,2,1";
+
+	/** Default maximum number of pages waiting in the queue of each stage of the pipeline */
+	public static final int DEFAULT_STAGE_CAPACITY = 64;
+
 	/** The inverted index to add to */
 	private final ThreadSafeInvertedIndex invertedIndex;
 
 	/** The maximum number of redirects allowed */
 	private static final int MAX_REDIRECTS = 3;
 
+	/** Nanoseconds spent fetching each page, whether or not it could be fetched */
+	private static final Metrics.Histogram FETCH_TIME = Metrics.shared().histogram("crawl_fetch_nanos");
+
+	/** Number of pages that could not be fetched */
+	private static final Metrics.Counter FETCH_FAILURES = Metrics.shared().counter("crawl_fetch_failures");
+
+	/** Number of pages added to the inverted index */
+	private static final Metrics.Counter PAGES_INDEXED = Metrics.shared().counter("crawl_pages_indexed");
+
 	/** The work queue to assign tasks to */
 	private final WorkQueue queue;
 
+	/** Fetches pages without blocking, or {@code null} if worker threads fetch pages themselves */
+	private final HttpClient client;
+
+	/** The maximum number of pages fetched at once without blocking */
+	private final int inFlight;
+
+	/** Number of threads of each stage of the pipeline, or {@code null} to crawl without the pipeline */
+	private int[] stageThreads;
+
+	/** Maximum number of pages waiting in the queue of each stage of the pipeline */
+	private int stageCapacity;
+
+	/** The stages of the current or last crawl, or {@code null} if crawled without the pipeline */
+	private Pipeline pipeline;
+
 	/** {@code Set} to keep track of already crawled links */
 	private final HashSet<URI> crawledLinks;
 
+	/** Links that have been found but not handed to the work queue yet */
+	private final CrawlFrontier frontier;
+
+	/** Links handed to the work queue that are not finished yet */
+	private final HashSet<URI> inProgress;
+
+	/** Where checkpoints are saved, or {@code null} if checkpoints are disabled */
+	private final Path checkpointDirectory;
+
+	/** Saves the index built so far in the checkpoint directory, or {@code null} if checkpoints are disabled */
+	private final IndexLog indexLog;
+
+	/** Records of indexed pages and checkpoint requests waiting for the checkpoint thread */
+	private final LinkedBlockingQueue<byte[]> checkpointQueue;
+
+	/** Asks the checkpoint thread to write a checkpoint, compared by identity */
+	private static final byte[] CHECKPOINT = new byte[0];
+
+	/** Asks the checkpoint thread to write a last checkpoint and stop, compared by identity */
+	private static final byte[] STOP = new byte[0];
+
+	/** The maximum number of URLs to crawl */
+	private int maxCrawls;
+
+	/** Number of pages finished since the crawl started */
+	private int finished;
+
 	/**
 	 * Constructs a web crawler with a thread-safe inverted index and work queue
 	 * @param invertedIndex The inverted index to add to
 	 * @param queue The work queue to assign tasks to
+	 * @param checkpointDirectory Where checkpoints are saved, or {@code null} to disable checkpoints
+	 * @param frontierLimit The maximum number of links waiting to be crawled to keep in memory
+	 * @param inFlight The maximum number of pages fetched at once without blocking, or 0 for worker threads to fetch pages themselves
 	 */
-	public WebCrawler(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue) {
+	public WebCrawler(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue, Path checkpointDirectory, int frontierLimit, int inFlight) {
 		this.invertedIndex = invertedIndex;
 		this.queue = queue;
+		this.inFlight = Math.max(0, inFlight);
+		this.client = this.inFlight == 0 ? null : HttpClient.newBuilder()
+			// Negotiates HTTP/2 where the server supports it and falls back to HTTP/1.1
+			.version(HttpClient.Version.HTTP_2)
+			// Redirects are followed by HtmlFetcher to keep its limit
+			.followRedirects(HttpClient.Redirect.NEVER)
+			.connectTimeout(Duration.ofMillis(ConnectionPool.TIMEOUT_MILLIS))
+			.executor(Executors.newFixedThreadPool(FETCH_THREADS, Thread.ofPlatform().daemon().name("crawl-fetch-", 0).factory()))
+			.build();
 		this.crawledLinks = new HashSet<>();
+		this.frontier = new CrawlFrontier(frontierLimit, checkpointDirectory);
+		this.inProgress = new HashSet<>();
+		this.checkpointDirectory = checkpointDirectory;
+		this.indexLog = checkpointDirectory == null ? null : new IndexLog(invertedIndex, checkpointDirectory);
+		this.checkpointQueue = new LinkedBlockingQueue<>();
+		this.finished = 0;
+		this.stageThreads = null;
+		this.stageCapacity = DEFAULT_STAGE_CAPACITY;
+		this.pipeline = null;
+	}
+
+	/**
+	 * Constructs a web crawler whose worker threads fetch pages themselves
+	 * @param invertedIndex The inverted index to add to
+	 * @param queue The work queue to assign tasks to
+	 * @param checkpointDirectory Where checkpoints are saved, or {@code null} to disable checkpoints
+	 * @param frontierLimit The maximum number of links waiting to be crawled to keep in memory
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue, Path checkpointDirectory, int frontierLimit) {
+		this(invertedIndex, queue, checkpointDirectory, frontierLimit, 0);
+	}
+
+	/**
+	 * Constructs a web crawler with a thread-safe inverted index and work queue
+	 * @param invertedIndex The inverted index to add to
+	 * @param queue The work queue to assign tasks to
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex invertedIndex, WorkQueue queue) {
+		this(invertedIndex, queue, null, CrawlFrontier.DEFAULT_MEMORY_LIMIT);
+	}
+
+	/**
+	 * Crawls with a pipeline of stages instead of the work queue: fetching pages,
+	 * extracting their links and text, stemming, and merging into the inverted index.
+	 * Each stage has its own threads and a bounded queue, so a slow stage holds back
+	 * the stages before it. Pages are fetched by the threads of the fetch stage, so the
+	 * maximum number of pages in flight does not apply. Must be called before crawling.
+	 * @param threads The number of threads of the fetch, extract, stem, and merge stages
+	 * @param capacity The maximum number of pages waiting in the queue of each stage
+	 * @throws IllegalArgumentException If there are not four thread counts
+	 */
+	public void setStages(int[] threads, int capacity) throws IllegalArgumentException {
+		if (threads.length != 4) {
+			throw new IllegalArgumentException("Expected the threads of 4 stages but got " + threads.length);
+		}
+
+		synchronized (this.crawledLinks) {
+			this.stageThreads = threads.clone();
+			this.stageCapacity = capacity;
+		}
+	}
+
+	/**
+	 * Returns the throughput, busy time, and queue occupancy of every stage of the
+	 * pipeline during the last crawl, one stage per line
+	 * @return The statistics, or an empty string if the last crawl did not use the pipeline
+	 */
+	public String getStageStats() {
+		synchronized (this.crawledLinks) {
+			return this.pipeline == null ? "" : this.pipeline.toString();
+		}
 	}
 
 	/** Nested class that represents a task for a thread to do */
@@ -48,6 +226,12 @@ public class WebCrawler {
 		/** The maximum number of URLs to crawl */
 		private final int maxCrawls;
 
+		/** Whether the link has already been fetched */
+		private final boolean fetched;
+
+		/** The fetched HTML, or {@code null} if not fetched yet or unable to fetch */
+		private final String html;
+
 		/**
 		 * Constructs a task for a thread to do
 		 * @param link The link to download, process, and add to the inverted index
@@ -56,46 +240,359 @@ public class WebCrawler {
 		public Work(URI link, int maxCrawls) {
 			this.maxCrawls = maxCrawls;
 			this.link = link;
+			this.fetched = false;
+			this.html = null;
+		}
+
+		/**
+		 * Constructs a task for a thread to do with a page that was already fetched
+		 * @param link The link the page was fetched from
+		 * @param maxCrawls The maximum number of URLs to crawl
+		 * @param html The fetched HTML, or {@code null} if unable to fetch
+		 */
+		public Work(URI link, int maxCrawls, String html) {
+			this.maxCrawls = maxCrawls;
+			this.link = link;
+			this.fetched = true;
+			this.html = html;
 		}
 
 		@Override
 		public void run() {
-			String html = HtmlFetcher.fetch(this.link, MAX_REDIRECTS);
+			try {
+				if (this.fetched) {
+					process(this.html);
+				} else {
+					long start = System.nanoTime();
+					String html = HtmlFetcher.fetch(this.link, MAX_REDIRECTS);
+					FETCH_TIME.recordSince(start);
+					process(html);
+				}
+			} finally {
+				finish(this.link);
+			}
+		}
 
+		/**
+		 * Queues the links found in the page and adds its words to the inverted index
+		 * @param html The fetched HTML, or {@code null} if unable to fetch
+		 */
+		private void process(String html) {
 			if (html == null) {
-				System.err.printf("Could not start crawl at %s\n", this.link);
+				fetchFailed(this.link);
 				return;
 			}
 
 			html = HtmlCleaner.stripBlockElements(html);
-			ArrayList<URI> hyperlinks = LinkFinder.listUris(this.link, html);
+			addLinks(this.link, html, this.maxCrawls);
+			merge(this.link, indexText(this.link, extractText(html)));
+		}
+	}
 
-			synchronized (crawledLinks) {
-				for (URI hyperLink : hyperlinks) {
-					if (crawledLinks.size() >= maxCrawls) {
-						break;
-					}
+	/** A page on its way through the stages of the pipeline */
+	private static class Page {
+		/** The link the page was fetched from */
+		private final URI link;
+
+		/** The HTML of the page, then its visible text */
+		private String text;
+
+		/** The words of the page once stemmed */
+		private InvertedIndex index;
+
+		/**
+		 * Constructs a fetched page
+		 * @param link The link the page was fetched from
+		 * @param html The HTML of the page
+		 */
+		public Page(URI link, String html) {
+			this.link = link;
+			this.text = html;
+			this.index = null;
+		}
+	}
+
+	/**
+	 * The crawl split into stages that each have their own threads and a bounded queue:
+	 * fetching pages, extracting their links and text, stemming the text into a local
+	 * index, and merging the local index into the inverted index. A link stays in
+	 * progress until its page is merged or dropped.
+	 */
+	private class Pipeline {
+		/** Fetches pages */
+		private final PipelineStage<URI> fetch;
+
+		/** Queues the links of pages and strips them to their visible text */
+		private final PipelineStage<Page> extract;
+
+		/** Stems the text of pages into local indexes */
+		private final PipelineStage<Page> stem;
+
+		/** Merges local indexes into the inverted index */
+		private final PipelineStage<Page> merge;
+
+		/**
+		 * Starts the threads of every stage
+		 * @param threads The number of threads of the fetch, extract, stem, and merge stages
+		 * @param capacity The maximum number of pages waiting in the queue of each stage
+		 */
+		public Pipeline(int[] threads, int capacity) {
+			// Started last stage first so each stage can hand pages to the next one
+			this.merge = new PipelineStage<>("crawl_merge", threads[3], capacity, page -> guard(page.link, () -> {
+				merge(page.link, page.index);
+				return true;
+			}));
+
+			this.stem = new PipelineStage<>("crawl_stem", threads[2], capacity, page -> guard(page.link, () -> {
+				page.index = indexText(page.link, page.text);
+				page.text = null;
+				this.merge.put(page);
+				return false;
+			}));
+
+			this.extract = new PipelineStage<>("crawl_extract", threads[1], capacity, page -> guard(page.link, () -> {
+				String html = HtmlCleaner.stripBlockElements(page.text);
+				addLinks(page.link, html, maxCrawls);
+				synchronized (crawledLinks) {
+					schedule();
+				}
+
+				page.text = extractText(html);
+				this.stem.put(page);
+				return false;
+			}));
+
+			this.fetch = new PipelineStage<>("crawl_fetch", threads[0], capacity, link -> guard(link, () -> {
+				long start = System.nanoTime();
+				String html = HtmlFetcher.fetch(link, MAX_REDIRECTS);
+				FETCH_TIME.recordSince(start);
+
+				if (html == null) {
+					fetchFailed(link);
+					return true;
+				}
+
+				this.extract.put(new Page(link, html));
+				return false;
+			}));
+		}
+
+		/**
+		 * Runs the work of a stage for a page, finishing the page if the work is the
+		 * last for the page or fails, so the crawl does not wait for it forever. The
+		 * page is finished outside of the guarded work, so it is finished only once
+		 * even if finishing it fails.
+		 * @param link The link of the page
+		 * @param work The work of the stage
+		 * @throws InterruptedException If interrupted while waiting for room in the next stage
+		 */
+		private void guard(URI link, Stage work) throws InterruptedException {
+			boolean done;
+			try {
+				done = work.run();
+			} catch (RuntimeException e) {
+				finish(link);
+				throw e;
+			}
+
+			if (done) {
+				finish(link);
+			}
+		}
+
+		/** Stops the threads of every stage */
+		public void shutdown() {
+			this.fetch.shutdown();
+			this.extract.shutdown();
+			this.stem.shutdown();
+			this.merge.shutdown();
+		}
+
+		@Override
+		public String toString() {
+			return String.join("\n", this.fetch.getStats(), this.extract.getStats(), this.stem.getStats(), this.merge.getStats()) + "\n";
+		}
+	}
+
+	/** The work of a pipeline stage for one page */
+	@FunctionalInterface
+	private interface Stage {
+		/**
+		 * Runs the work
+		 * @return {@code true} if the page is done, or {@code false} if it was handed to the next stage
+		 * @throws InterruptedException If interrupted while waiting for room in the next stage
+		 */
+		boolean run() throws InterruptedException;
+	}
+
+	/**
+	 * Counts and reports a page that could not be fetched
+	 * @param link The link of the page
+	 */
+	private static void fetchFailed(URI link) {
+		FETCH_FAILURES.increment();
+		System.err.printf("Could not start crawl at %s\n", link);
+	}
+
+	/**
+	 * Adds the links of a page to the frontier if they were not crawled before, until
+	 * the maximum number of URLs to crawl have been found
+	 * @param link The link of the page
+	 * @param html The HTML of the page, without block elements
+	 * @param maxCrawls The maximum number of URLs to crawl
+	 */
+	private void addLinks(URI link, String html, int maxCrawls) {
+		ArrayList<URI> hyperlinks = LinkFinder.listUris(link, html);
 
-					if (crawledLinks.add(hyperLink)) {
-						queue.execute(new Work(hyperLink, this.maxCrawls));
+		synchronized (this.crawledLinks) {
+			for (URI hyperLink : hyperlinks) {
+				if (this.crawledLinks.size() >= maxCrawls) {
+					break;
+				}
+
+				if (this.crawledLinks.add(hyperLink)) {
+					try {
+						this.frontier.add(hyperLink);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
 					}
 				}
 			}
+		}
+	}
+
+	/**
+	 * Strips the tags and entities of a page, leaving its visible text
+	 * @param html The HTML of the page, without block elements
+	 * @return The visible text
+	 */
+	private static String extractText(String html) {
+		String cleanedHtml = HtmlCleaner.stripTags(html);
+		return HtmlCleaner.stripEntities(cleanedHtml);
+	}
 
-			String cleanedHtml = HtmlCleaner.stripTags(html);
-			cleanedHtml = HtmlCleaner.stripEntities(cleanedHtml);
+	/**
+	 * Stems the visible text of a page into a local index, adding its words before
+	 * stemming to {@link SurfaceForms#shared()}
+	 * @param link The link of the page
+	 * @param text The visible text of the page
+	 * @return The local index of the page
+	 */
+	private static InvertedIndex indexText(URI link, String text) {
+		Stemmer stemmer = StemCache.shared();
+		String[] words = FileStemmer.parse(text);
+		ArrayList<String> stems = new ArrayList<>(words.length);
+		for (String word : words) {
+			stems.add(stemmer.stem(word).toString());
+		}
 
-			SnowballStemmer snowballStemmer = new SnowballStemmer(ENGLISH);
-			ArrayList<String> stems = FileStemmer.listStems(cleanedHtml, snowballStemmer);
+		SurfaceForms.shared().addDocument(new HashSet<>(Arrays.asList(words)), stemmer);
 
-			InvertedIndex localIndex = new InvertedIndex();
-			localIndex.addWords(stems, this.link.toString(), 1);
+		InvertedIndex localIndex = new InvertedIndex();
+		localIndex.addWords(stems, link.toString(), 1);
+		return localIndex;
+	}
 
-			// No need to synchronize because invertedIndex is thread safe
-			invertedIndex.addAll(localIndex);
+	/**
+	 * Replaces the words of a page in the inverted index with its local index
+	 * @param link The link of the page
+	 * @param localIndex The local index of the page
+	 */
+	private void merge(URI link, InvertedIndex localIndex) {
+		// Encoded before merging, since the local index may share its positions with the inverted index afterwards
+		byte[] record = null;
+		if (this.indexLog != null) {
+			try {
+				record = IndexLog.encode(link.toString(), localIndex);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// No need to synchronize because invertedIndex is thread safe
+		this.invertedIndex.replaceLocation(link.toString(), localIndex);
+		PAGES_INDEXED.increment();
+
+		// Only logged once merged, so a snapshot of the inverted index includes every logged page
+		if (record != null) {
+			this.checkpointQueue.add(record);
 		}
 	}
 
+	/**
+	 * Marks {@code link} as done, hands more links to the work queue, and asks the
+	 * checkpoint thread for a checkpoint if enough pages have been finished since the last one
+	 * @param link The link that was processed
+	 */
+	private void finish(URI link) {
+		synchronized (this.crawledLinks) {
+			this.inProgress.remove(link);
+			this.finished++;
+			schedule();
+
+			if (this.checkpointDirectory != null && this.finished % CHECKPOINT_INTERVAL == 0) {
+				this.checkpointQueue.add(CHECKPOINT);
+			}
+
+			if (this.inProgress.isEmpty()) {
+				this.crawledLinks.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Hands links from the frontier to the work queue until there are enough tasks for every
+	 * worker, or starts fetching them until the maximum number of pages are in flight.
+	 * Must be called while synchronized on {@code crawledLinks}.
+	 */
+	private void schedule() {
+		try {
+			URI link = null;
+			if (this.pipeline != null) {
+				// Only added here while synchronized, so there is always room once checked
+				while (this.pipeline.fetch.remainingCapacity() > 0 && (link = this.frontier.poll()) != null) {
+					this.inProgress.add(link);
+					this.pipeline.fetch.offer(link);
+				}
+
+				return;
+			}
+
+			int limit = this.client == null ? this.queue.size() * TASKS_PER_THREAD : this.inFlight;
+			while (this.inProgress.size() < limit && (link = this.frontier.poll()) != null) {
+				this.inProgress.add(link);
+				if (this.client == null) {
+					this.queue.execute(new Work(link, this.maxCrawls));
+				} else {
+					fetch(link);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Starts fetching the link without blocking, and hands the page to the work queue once fetched.
+	 * The link stays in progress until the page is processed, so the pages in flight and the
+	 * pages waiting to be processed together never exceed the maximum number in flight.
+	 * @param link The link to fetch
+	 */
+	private void fetch(URI link) {
+		long start = System.nanoTime();
+		int maxCrawls = this.maxCrawls;
+
+		HtmlFetcher.fetchAsync(this.client, link, MAX_REDIRECTS).thenAccept(html -> {
+			FETCH_TIME.recordSince(start);
+			try {
+				this.queue.execute(new Work(link, maxCrawls, html));
+			} catch (IllegalStateException e) {
+				// The work queue was shut down, so the page is dropped
+				finish(link);
+			}
+		});
+	}
+
 	/**
 	 * Starts crawling from the seed URI.
 	 * Adds words and their locations to the inverted index.
@@ -103,18 +600,224 @@ public class WebCrawler {
 	 * @param maxCrawls The maximum number of URLs to crawl
 	 */
 	public void crawl(URI seedURI, int maxCrawls) {
-		this.crawledLinks.add(seedURI);
-		this.queue.execute(new Work(seedURI, maxCrawls));
+		synchronized (this.crawledLinks) {
+			if (this.checkpointDirectory != null && this.crawledLinks.isEmpty()) {
+				// Starts over, so a crash before the first checkpoint does not resume an older crawl
+				try {
+					Files.deleteIfExists(this.checkpointDirectory.resolve(CRAWL_STATE));
+					this.indexLog.clear();
+				} catch (IOException e) {
+					System.err.printf("Unable to clear crawl checkpoint in location: %s\n", this.checkpointDirectory);
+				}
+			}
+
+			if (this.crawledLinks.add(seedURI)) {
+				try {
+					this.frontier.add(seedURI);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		run(maxCrawls);
+	}
+
+	/**
+	 * Continues the crawl saved in the checkpoint directory, loading the index built so far
+	 * into the inverted index and crawling every link that was still waiting. Pages indexed
+	 * after the last checkpoint are crawled again.
+	 * @param maxCrawls The maximum number of URLs to crawl
+	 * @return {@code true} if a checkpoint was found and resumed
+	 * @throws IOException If unable to read the checkpoint
+	 */
+	public boolean resume(int maxCrawls) throws IOException {
+		if (this.checkpointDirectory == null) {
+			return false;
+		}
+
+		Path statePath = this.checkpointDirectory.resolve(CRAWL_STATE);
+		if (!Files.isRegularFile(statePath)) {
+			return false;
+		}
+
+		synchronized (this.crawledLinks) {
+			try (BufferedReader reader = Files.newBufferedReader(statePath, UTF_8)) {
+				boolean waiting = false;
+				String line = null;
+
+				// crawled links come first, then a blank line, then the links still waiting
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty()) {
+						waiting = true;
+						continue;
+					}
+
+					URI link = URI.create(line);
+					this.crawledLinks.add(link);
+
+					if (waiting) {
+						this.frontier.add(link);
+					}
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Malformed crawl checkpoint: " + statePath, e);
+			}
+		}
+
+		this.indexLog.load();
+		run(maxCrawls);
+		return true;
+	}
+
+	/**
+	 * Crawls every link in the frontier and waits for the crawl to finish
+	 * @param maxCrawls The maximum number of URLs to crawl
+	 */
+	private void run(int maxCrawls) {
+		Thread checkpointer = this.checkpointDirectory == null ? null
+			: Thread.ofPlatform().daemon().name("crawl-checkpoint").start(this::checkpoints);
+
+		synchronized (this.crawledLinks) {
+			this.maxCrawls = maxCrawls;
+			this.pipeline = this.stageThreads == null ? null : new Pipeline(this.stageThreads, this.stageCapacity);
+			schedule();
+
+			// Pages being fetched without blocking or in the pipeline are not in the work queue
+			while (!this.inProgress.isEmpty()) {
+				try {
+					this.crawledLinks.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
+		// Not synchronized, since shutting down waits for the stage threads
+		if (this.pipeline != null) {
+			this.pipeline.shutdown();
+		}
+
 		this.queue.finish();
+
+		if (checkpointer != null) {
+			this.checkpointQueue.add(STOP);
+			try {
+				checkpointer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Deletes the spill file, which the last checkpoint no longer needs
+		synchronized (this.crawledLinks) {
+			try {
+				this.frontier.close();
+			} catch (IOException e) {
+				System.err.printf("Unable to delete the crawl frontier spill file: %s\n", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Run by the checkpoint thread: appends the records of indexed pages to the log as
+	 * they arrive, and writes a checkpoint whenever one is asked for, until asked to stop
+	 */
+	private void checkpoints() {
+		byte[] record = null;
+
+		while (record != STOP) {
+			try {
+				record = this.checkpointQueue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			try {
+				if (record == CHECKPOINT || record == STOP) {
+					checkpoint();
+				} else {
+					this.indexLog.append(record);
+				}
+			} catch (IOException e) {
+				System.err.printf("Unable to save crawl checkpoint to location: %s\n", this.checkpointDirectory);
+			}
+		}
+
+		try {
+			this.indexLog.close();
+		} catch (IOException e) {
+			System.err.printf("Unable to save crawl checkpoint to location: %s\n", this.checkpointDirectory);
+		}
+	}
+
+	/**
+	 * Saves the crawled links, the links still waiting to be crawled, and the index built so far.
+	 * Links that are in progress are saved as waiting, so they are crawled again on resume.
+	 * The crawl state is saved first, then every page indexed so far is appended to the log,
+	 * and only once the log is on disk is the crawl state moved into place, so a crash never
+	 * leaves a finished page unaccounted for. Run by the checkpoint thread.
+	 * @throws IOException If unable to write the crawl state or the log
+	 */
+	private void checkpoint() throws IOException {
+		Files.createDirectories(this.checkpointDirectory);
+		Path stateTemp = this.checkpointDirectory.resolve(CRAWL_STATE + ".tmp");
+
+		ArrayList<URI> crawled;
+		ArrayList<URI> waiting;
+		CrawlFrontier.Snapshot frontierSnapshot;
+
+		// Only copy the crawl state under the lock, so the crawl is not held up while it is written
+		synchronized (this.crawledLinks) {
+			crawled = new ArrayList<>(this.crawledLinks);
+			waiting = new ArrayList<>(this.inProgress);
+			frontierSnapshot = this.frontier.snapshot();
+		}
+
+		try (frontierSnapshot; BufferedWriter writer = Files.newBufferedWriter(stateTemp, UTF_8)) {
+			for (URI link : crawled) {
+				writer.write(link.toString());
+				writer.write('\n');
+			}
+
+			writer.write('\n');
+
+			for (URI link : waiting) {
+				writer.write(link.toString());
+				writer.write('\n');
+			}
+
+			frontierSnapshot.writeTo(writer);
+		}
+
+		// Pages finished before the crawl state was saved were queued before this point
+		ArrayList<byte[]> records = new ArrayList<>();
+		this.checkpointQueue.drainTo(records);
+
+		for (byte[] record : records) {
+			if (record == STOP) {
+				// Handled by the checkpoint thread once this checkpoint is written
+				this.checkpointQueue.add(STOP);
+			} else if (record != CHECKPOINT) {
+				this.indexLog.append(record);
+			}
+		}
+
+		this.indexLog.checkpoint();
+		Files.move(stateTemp, this.checkpointDirectory.resolve(CRAWL_STATE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 
 	@Override
 	public String toString() {
-		return String.format(
-			"Web crawler started at %s and has crawled %d %s\n",
-			this.crawledLinks.isEmpty() ? "N/A" : this.crawledLinks.iterator().next(),
-			this.crawledLinks.size(),
-			this.crawledLinks.size() == 1 ? "URL" : "URLs"
-		);
+		synchronized (this.crawledLinks) {
+			return String.format(
+				"Web crawler started at %s and has crawled %d %s\n",
+				this.crawledLinks.isEmpty() ? "N/A" : this.crawledLinks.iterator().next(),
+				this.crawledLinks.size(),
+				this.crawledLinks.size() == 1 ? "URL" : "URLs"
+			);
+		}
 	}
 }
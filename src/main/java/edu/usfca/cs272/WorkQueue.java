@@ -157,6 +157,16 @@ public class WorkQueue {
 		log.debug("Work queue shutdown triggered.");
 	}
 
+	/**
+	 * Returns the number of tasks that were executed but have not finished yet,
+	 * including tasks that are still waiting for a worker.
+	 *
+	 * @return number of pending tasks
+	 */
+	public synchronized int pending() {
+		return this.pending;
+	}
+
 	/**
 	 * Returns the number of worker threads being used by the work queue.
 	 *